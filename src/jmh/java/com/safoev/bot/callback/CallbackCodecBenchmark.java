@@ -0,0 +1,94 @@
+package com.safoev.bot.callback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Разбор callback_data и выбор обработчика: кодек + таблица маршрутов против прежней цепочки
+// startsWith/switch по строкам. Поврежденные и устаревшие данные идут в обе стороны, как и рабочие.
+// Запуск: ./gradlew jmh -PjmhInclude=CallbackCodecBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CallbackCodecBenchmark {
+
+    @Param({"menu", "viewOrder", "malformed", "stale"})
+    private String payload;
+
+    private CallbackCodec callbackCodec;
+    private final CallbackRoute[] routes = new CallbackRoute[CallbackAction.values().length];
+    private String encoded;
+    private String legacy;
+    private long routed;
+
+    @Setup
+    public void setUp() {
+        callbackCodec = new CallbackCodec();
+        // Обработчики только отмечают, куда попали: сравнивается разбор и выбор, а не сама обработка
+        for (CallbackAction action : CallbackAction.values()) {
+            routes[action.ordinal()] = (query, data, context) ->
+                    routed = data.action().getArity() > 0 ? data.arg(0) : data.action().getId();
+        }
+
+        switch (payload) {
+            case "menu" -> {
+                encoded = callbackCodec.encode(CallbackAction.MY_ORDERS);
+                legacy = "my_orders";
+            }
+            case "viewOrder" -> {
+                encoded = callbackCodec.encode(CallbackAction.VIEW_ORDER, 1_234_567);
+                legacy = "view_order_ORD-20260102-000123";
+            }
+            case "malformed" -> {
+                encoded = "%%not-base64%%";
+                legacy = "%%not-base64%%";
+            }
+            // Кнопка из старого сообщения: для кодека - прежний строковый формат,
+            // для строковой цепочки - действие, которого больше нет
+            case "stale" -> {
+                encoded = "confirm_cancel_ORD-20260102-000123";
+                legacy = "order_history";
+            }
+            default -> throw new IllegalArgumentException(payload);
+        }
+    }
+
+    @Benchmark
+    public long codecRouteTable() {
+        CallbackData data = callbackCodec.decode(encoded);
+        if (data == null) {
+            return -1;
+        }
+        routes[data.action().ordinal()].handle(null, data, null);
+        return routed;
+    }
+
+    @Benchmark
+    public long legacyStringChain() {
+        String data = legacy;
+        if (data.startsWith("view_order_")) {
+            return data.substring(11).hashCode();
+        } else if (data.startsWith("confirm_cancel_")) {
+            return data.substring(15).hashCode();
+        }
+
+        return switch (data) {
+            case "registration" -> 1;
+            case "non_registration" -> 2;
+            case "cancel_registration" -> 3;
+            case "new_order" -> 4;
+            case "my_orders" -> 5;
+            case "my_profile" -> 6;
+            case "help" -> 7;
+            case "back_to_menu" -> 8;
+            default -> -1;
+        };
+    }
+}
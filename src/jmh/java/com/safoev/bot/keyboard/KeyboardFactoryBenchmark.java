@@ -0,0 +1,95 @@
+package com.safoev.bot.keyboard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Готовые клавиатуры против сборки на каждый вызов (как было до реестра).
+// Запуск: ./gradlew jmh -PjmhInclude=KeyboardFactoryBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyboardFactoryBenchmark {
+
+    private ObjectMapper objectMapper;
+    private CallbackCodec callbackCodec;
+    private KeyboardFactory keyboardFactory;
+    private OrderPage page;
+    private String menuJson;
+    private long orderId;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        callbackCodec = new CallbackCodec();
+        keyboardFactory = new KeyboardFactory(callbackCodec, objectMapper);
+        OrderCursor cursor = new OrderCursor(false, LocalDateTime.of(2026, 1, 2, 3, 4, 5), 123_456, 6);
+        page = OrderPage.builder().items(List.of()).newer(cursor).older(cursor).build();
+        menuJson = keyboardFactory.toJson(keyboardFactory.createMainMenuForAuthorized());
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup mainMenuShared() {
+        return keyboardFactory.createMainMenuForAuthorized();
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup mainMenuBuiltPerCall() {
+        return new InlineKeyboardMarkup(List.of(
+                new InlineKeyboardRow(button("📦 Создать заказ", callbackCodec.encode(CallbackAction.NEW_ORDER))),
+                new InlineKeyboardRow(button("📋 Мои заказы", callbackCodec.encode(CallbackAction.MY_ORDERS))),
+                new InlineKeyboardRow(button("👤 Мой профиль", callbackCodec.encode(CallbackAction.MY_PROFILE))),
+                new InlineKeyboardRow(button("ℹ️ Помощь", callbackCodec.encode(CallbackAction.HELP)))
+        ));
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup confirmCancel() {
+        return keyboardFactory.createConfirmCancelKeyboard(++orderId);
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup ordersPage() {
+        return keyboardFactory.createOrdersPageKeyboard(page);
+    }
+
+    @Benchmark
+    public String menuJsonCached() {
+        return keyboardFactory.toJson(keyboardFactory.createMainMenuForAuthorized());
+    }
+
+    @Benchmark
+    public String menuJsonSerialized() throws Exception {
+        return objectMapper.writeValueAsString(mainMenuBuiltPerCall());
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup menuFromJsonCached() {
+        return keyboardFactory.fromJson(menuJson);
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup menuFromJsonParsed() throws Exception {
+        return objectMapper.readValue(menuJson, InlineKeyboardMarkup.class);
+    }
+
+    private static InlineKeyboardButton button(String text, String callbackData) {
+        return InlineKeyboardButton.builder().text(text).callbackData(callbackData).build();
+    }
+}
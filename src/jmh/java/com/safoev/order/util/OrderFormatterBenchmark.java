@@ -0,0 +1,111 @@
+package com.safoev.order.util;
+
+import com.safoev.bot.template.DateFormats;
+import com.safoev.order.domain.dto.OrderPage;
+import com.safoev.order.domain.dto.response.OrderDetailDto;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import com.safoev.order.domain.enums.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Разобранные заранее шаблоны против String.format, который разбирает формат на каждый вызов.
+// Запуск: ./gradlew jmh -PjmhInclude=OrderFormatterBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderFormatterBenchmark {
+
+    private static final String DETAILS_FORMAT = """
+            🆔 Номер: %s
+            📅 Дата: %s
+            📊 Статус: %s
+            👤 Клиент: %s
+            📞 Телефон: %s
+            📝 Услуга: %s
+            """;
+
+    private static final String LIST_ITEM_FORMAT = """
+            %d. 🆔 %s
+               📊 %s
+               📝 %s
+               📅 %s
+            
+            """;
+
+    private OrderFormatter orderFormatter;
+    private OrderDetailDto details;
+    private OrderPage page;
+
+    @Setup
+    public void setUp() {
+        orderFormatter = new OrderFormatter();
+        LocalDateTime createdAt = LocalDateTime.of(2026, 1, 2, 3, 4, 5);
+        details = OrderDetailDto.builder()
+                .id(1L)
+                .orderNumber("ORD-7KQ2M9X4P1")
+                .customerName("Иван Петров")
+                .customerPhone("+79991234567")
+                .orderDetails("Доставка документов до офиса на Тверской")
+                .status(OrderStatus.NEW)
+                .createdAt(createdAt)
+                .build();
+        List<OrderListItemDto> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(OrderListItemDto.builder()
+                    .id((long) i)
+                    .orderNumber("ORD-7KQ2M9X4P" + i)
+                    .orderDetails("Доставка документов до офиса на Тверской")
+                    .status(OrderStatus.NEW)
+                    .createdAt(createdAt.minusDays(i))
+                    .build());
+        }
+        page = OrderPage.builder().items(items).firstPosition(1).build();
+    }
+
+    @Benchmark
+    public String detailsTemplate() {
+        return orderFormatter.formatOrderDetails(details);
+    }
+
+    @Benchmark
+    public String detailsStringFormat() {
+        return String.format(DETAILS_FORMAT,
+                details.getOrderNumber(),
+                DateFormats.dateTime(details.getCreatedAt()),
+                details.getStatus().getDisplayName(),
+                details.getCustomerName(),
+                details.getCustomerPhone(),
+                details.getOrderDetails());
+    }
+
+    @Benchmark
+    public String pageTemplate() {
+        return orderFormatter.formatOrdersPage(page);
+    }
+
+    @Benchmark
+    public String pageStringFormat() {
+        StringBuilder message = new StringBuilder("📋 Ваши заказы:\n\n");
+        int position = page.getFirstPosition();
+        for (OrderListItemDto order : page.getItems()) {
+            message.append(String.format(LIST_ITEM_FORMAT,
+                    position++,
+                    order.getOrderNumber(),
+                    order.getStatus().getDisplayName(),
+                    order.getOrderDetails(),
+                    DateFormats.dateTime(order.getCreatedAt())));
+        }
+        message.append("Чтобы посмотреть детали заказа, введите его номер:");
+        return message.toString();
+    }
+}
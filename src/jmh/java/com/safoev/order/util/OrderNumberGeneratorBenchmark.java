@@ -0,0 +1,46 @@
+package com.safoev.order.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+// Выдача номера: один поток и борьба за CAS нескольких потоков одного узла; разбор введенного номера.
+// Запуск: ./gradlew jmh -PjmhInclude=OrderNumberGeneratorBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderNumberGeneratorBenchmark {
+
+    private OrderNumberGenerator generator;
+    private String typed;
+
+    @Setup
+    public void setUp() {
+        generator = new OrderNumberGenerator(1L, "worker");
+        // Так номер вводят руками: нижний регистр, O вместо 0
+        typed = generator.next().toLowerCase().replace('0', 'o');
+    }
+
+    @Benchmark
+    public String next() {
+        return generator.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextContended() {
+        return generator.next();
+    }
+
+    @Benchmark
+    public String normalize() {
+        return OrderNumberGenerator.normalize(typed);
+    }
+}
@@ -4,16 +4,35 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.TelegramUrl;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.net.URI;
+
 @Configuration
 public class TelegramBotConfig {
 
     @Value("${telegram.bot.token}")
     private String botToken;
 
+    // Адрес Bot API; можно указать локальную заглушку, например http://localhost:8081
+    @Value("${telegram.bot.api-url:}")
+    private String apiUrl;
+
     @Bean
     public TelegramClient telegramClient() {
-        return new OkHttpTelegramClient(botToken);
+        if (apiUrl.isBlank()) {
+            return new OkHttpTelegramClient(botToken);
+        }
+
+        URI uri = URI.create(apiUrl);
+        int port = uri.getPort() != -1 ? uri.getPort() : ("https".equals(uri.getScheme()) ? 443 : 80);
+        TelegramUrl telegramUrl = TelegramUrl.builder()
+                .schema(uri.getScheme())
+                .host(uri.getHost())
+                .port(port)
+                .build();
+
+        return new OkHttpTelegramClient(botToken, telegramUrl);
     }
-}
\ No newline at end of file
+}
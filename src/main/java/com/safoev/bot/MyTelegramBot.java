@@ -3,12 +3,14 @@ package com.safoev;
 import com.safoev.bot.UpdateConsumer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
 import org.telegram.telegrambots.longpolling.starter.SpringLongPollingBot;
 
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "telegram.bot", name = "mode", havingValue = "longpolling", matchIfMissing = true)
 public class MyTelegramBot implements SpringLongPollingBot {
 
     @Value("${telegram.bot.token}")
@@ -1,31 +1,196 @@
 package com.safoev.bot;
 
+import com.safoev.bot.context.SqlStatementCounter;
+import com.safoev.bot.context.UpdateContext;
+import com.safoev.bot.context.UpdateContextFactory;
+import com.safoev.bot.dispatch.UpdateDispatcher;
 import com.safoev.bot.handler.CallbackHandler;
 import com.safoev.bot.handler.MessageHandler;
+import com.safoev.bot.handler.MessageSender;
+import com.safoev.bot.outbound.ResponseBuffer;
+import com.safoev.update.domain.service.UpdateProcessingService;
+import com.safoev.update.domain.service.UpdateQueue;
+import com.safoev.update.domain.service.UpdateQueue.QueuedUpdate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
+import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Прием обновлений. Роль standalone - обработка в этом же процессе,
+// ingress - только запись в update_queue, обработкой занимаются worker-узлы (UpdateQueueWorker)
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class UpdateConsumer implements LongPollingSingleThreadUpdateConsumer {
+public class UpdateConsumer implements LongPollingUpdateConsumer {
 
     private final MessageHandler messageHandler;
     private final CallbackHandler callbackHandler;
+    private final MessageSender messageSender;
+    private final UpdateDispatcher updateDispatcher;
+    private final UpdateProcessingService updateProcessingService;
+    private final ResponseBuffer responseBuffer;
+    private final UpdateQueue updateQueue;
+    private final UpdateContextFactory updateContextFactory;
+    private final SqlStatementCounter sqlStatementCounter;
+
+    @Value("${telegram.bot.role:standalone}")
+    private String role;
 
     @Override
-    public void consume(Update update) {
+    public void consume(List<Update> updates) {
+        if (isIngress()) {
+            appendToQueue(updates);
+            return;
+        }
+        for (Update update : updates) {
+            Long chatId = resolveChatId(update);
+            if (chatId == null) {
+                log.debug("Пропущено обновление {} без чата", update.getUpdateId());
+                continue;
+            }
+            // Обновления одного чата обрабатываются строго по порядку, разных чатов - параллельно
+            updateProcessingService.accepted(update.getUpdateId());
+            if (!updateDispatcher.submit(chatId, () -> process(update, chatId))) {
+                updateProcessingService.finished(update.getUpdateId());
+                log.warn("Обновление {} не принято: идет остановка", update.getUpdateId());
+            }
+        }
+    }
+
+    // Прием обновления из webhook: не блокирует, false - очередь переполнена
+    public boolean offer(Update update) {
+        Long chatId = resolveChatId(update);
+        if (chatId == null) {
+            log.debug("Пропущено обновление {} без чата", update.getUpdateId());
+            return true;
+        }
+        if (isIngress()) {
+            // При ошибке Telegram повторит доставку сам, смещение webhook не держит
+            updateProcessingService.accepted(update.getUpdateId());
+            try {
+                return tryAppend(List.of(QueuedUpdate.of(chatId, update)));
+            } finally {
+                updateProcessingService.finished(update.getUpdateId());
+            }
+        }
+        updateProcessingService.accepted(update.getUpdateId());
+        if (!updateDispatcher.trySubmit(chatId, () -> process(update, chatId))) {
+            updateProcessingService.finished(update.getUpdateId());
+            return false;
+        }
+        return true;
+    }
+
+    // Обновление из update_queue (роль worker); future завершается после обработки
+    public CompletableFuture<Void> dispatch(Update update, long chatId) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        updateProcessingService.accepted(update.getUpdateId());
+        boolean submitted = updateDispatcher.submit(chatId, () -> {
+            try {
+                process(update, chatId);
+            } finally {
+                done.complete(null);
+            }
+        });
+        if (!submitted) {
+            updateProcessingService.finished(update.getUpdateId());
+            done.completeExceptionally(new IllegalStateException("Диспетчер остановлен"));
+        }
+        return done;
+    }
+
+    // Long polling: пачка пишется в очередь целиком; при недоступности БД поток приема
+    // ждет и повторяет - следующие getUpdates не запрашиваются, обновления не теряются
+    private void appendToQueue(List<Update> updates) {
+        List<QueuedUpdate> queued = new ArrayList<>(updates.size());
+        for (Update update : updates) {
+            Long chatId = resolveChatId(update);
+            if (chatId == null || updateProcessingService.isDuplicate(update.getUpdateId())) {
+                continue;
+            }
+            queued.add(QueuedUpdate.of(chatId, update));
+            updateProcessingService.accepted(update.getUpdateId());
+        }
+
+        // Пока пачка не записана, смещение не сохраняется дальше ее первого обновления
+        long backoffMillis = 500;
+        while (!tryAppend(queued)) {
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, 30_000);
+        }
+        queued.forEach(q -> updateProcessingService.finished(q.update().getUpdateId()));
+    }
+
+    private boolean tryAppend(List<QueuedUpdate> queued) {
         try {
-            if (update.hasMessage()) {
-                messageHandler.handle(update.getMessage());
-            } else if (update.hasCallbackQuery()) {
-                callbackHandler.handle(update.getCallbackQuery());
+            updateQueue.append(queued);
+            return true;
+        } catch (Exception e) {
+            log.error("Не удалось записать {} обновлений в очередь: {}", queued.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isIngress() {
+        return "ingress".equals(role);
+    }
+
+    private void process(Update update, long chatId) {
+        long updateId = update.getUpdateId();
+        UpdateContext[] context = new UpdateContext[1];
+        sqlStatementCounter.begin();
+        try {
+            // На нажатие кнопки отвечаем до транзакции и сборки контекста, чтобы у клиента
+            // не висел индикатор загрузки; повтор того же обновления получает ответ тоже
+            if (update.hasCallbackQuery()) {
+                messageSender.answerCallback(chatId, update.getCallbackQuery().getId());
             }
+            // Ответы отправляются одним пакетом после фиксации транзакции обновления;
+            // при ошибке обработчика транзакция откатывается, а ответы отбрасываются
+            responseBuffer.collect(() -> {
+                if (updateProcessingService.isDuplicate(updateId)
+                        || !updateProcessingService.processOnce(updateId, chatId, () -> route(update, chatId, context))) {
+                    log.debug("Обновление {} уже обработано, пропускаем", updateId);
+                }
+            });
         } catch (Exception e) {
-            log.error("Ошибка обработки: {}", e.getMessage(), e);
+            log.error("Ошибка обработки обновления {}: {}", updateId, e.getMessage(), e);
+        } finally {
+            sqlStatementCounter.end(context[0] != null ? context[0].getRoute() : "duplicate");
+            updateProcessingService.finished(updateId);
+        }
+    }
+
+    // Контекст собирается один раз и передается обработчикам; holder[0] - для учета запросов по маршруту.
+    // Исключение обработчика не глотается: оно откатывает транзакцию обновления
+    private void route(Update update, long chatId, UpdateContext[] holder) {
+        if (update.hasMessage()) {
+            holder[0] = updateContextFactory.create(update.getUpdateId(), chatId, update.getMessage().getFrom());
+            messageHandler.handle(update.getMessage(), holder[0]);
+        } else if (update.hasCallbackQuery()) {
+            holder[0] = updateContextFactory.create(update.getUpdateId(), chatId, update.getCallbackQuery().getFrom());
+            callbackHandler.handle(update.getCallbackQuery(), holder[0]);
+        }
+    }
+
+    private Long resolveChatId(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        } else if (update.hasCallbackQuery()) {
+            // CallbackHandler отвечает в чат отправителя
+            return update.getCallbackQuery().getFrom().getId();
         }
+        return null;
     }
-}
\ No newline at end of file
+}
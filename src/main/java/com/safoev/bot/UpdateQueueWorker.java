@@ -0,0 +1,147 @@
+package com.safoev.bot;
+
+import com.safoev.update.domain.service.PartitionLeases;
+import com.safoev.update.domain.service.UpdateQueue;
+import com.safoev.update.domain.service.UpdateQueue.QueuedUpdate;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Роль worker: обработка обновлений из update_queue по арендованным партициям.
+// Один поток узла: heartbeat/перераспределение -> пачка из своих партиций -> обработка
+// в UpdateDispatcher (чаты параллельно, внутри чата по порядку) -> удаление пачки.
+// Следующая пачка берется только после завершения предыдущей, поэтому порядок чата сохраняется
+// и при смене владельца партиции; повторная обработка после сбоя отсекается processed_updates.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot", name = "role", havingValue = "worker")
+public class UpdateQueueWorker {
+
+    private final UpdateConsumer updateConsumer;
+    private final UpdateQueue updateQueue;
+    private final PartitionLeases partitionLeases;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long heartbeatIntervalNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public UpdateQueueWorker(UpdateConsumer updateConsumer,
+                             UpdateQueue updateQueue,
+                             PartitionLeases partitionLeases,
+                             @Value("${telegram.bot.queue.batch-size:200}") int batchSize,
+                             @Value("${telegram.bot.queue.poll-interval-ms:100}") long pollIntervalMillis,
+                             @Value("${telegram.bot.queue.heartbeat-interval:2s}") Duration heartbeatInterval) {
+        this.updateConsumer = updateConsumer;
+        this.updateQueue = updateQueue;
+        this.partitionLeases = partitionLeases;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.heartbeatIntervalNanos = heartbeatInterval.toNanos();
+        this.thread = new Thread(this::run, "update-queue-worker");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        partitionLeases.initialize();
+        thread.start();
+    }
+
+    private void run() {
+        int[] owned = new int[0];
+        long nextHeartbeat = System.nanoTime();
+
+        while (running) {
+            try {
+                if (System.nanoTime() >= nextHeartbeat) {
+                    owned = partitionLeases.rebalance();
+                    nextHeartbeat = System.nanoTime() + heartbeatIntervalNanos;
+                }
+                if (!partitionLeases.isValid()) {
+                    Thread.sleep(pollIntervalMillis);
+                    continue;
+                }
+
+                List<QueuedUpdate> batch = updateQueue.poll(owned, batchSize);
+                if (batch.isEmpty()) {
+                    Thread.sleep(pollIntervalMillis);
+                    continue;
+                }
+                updateQueue.acknowledge(process(batch));
+                nextHeartbeat = Math.min(nextHeartbeat, System.nanoTime() + heartbeatIntervalNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка обработки очереди обновлений: {}", e.getMessage(), e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    // Возвращает id обработанных записей; пока пачка в работе, аренда только продлевается
+    private List<Long> process(List<QueuedUpdate> batch) throws InterruptedException {
+        List<Long> done = new ArrayList<>(batch.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batch.size());
+        List<Long> submittedIds = new ArrayList<>(batch.size());
+
+        for (QueuedUpdate queued : batch) {
+            if (queued.update() == null) {
+                // Нечитаемая запись - удаляем, чтобы не блокировать партицию
+                done.add(queued.id());
+                continue;
+            }
+            futures.add(updateConsumer.dispatch(queued.update(), queued.chatId()));
+            submittedIds.add(queued.id());
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+        while (true) {
+            try {
+                all.get(heartbeatIntervalNanos, TimeUnit.NANOSECONDS);
+                break;
+            } catch (TimeoutException e) {
+                partitionLeases.renew();
+            } catch (ExecutionException e) {
+                // Диспетчер остановлен - необработанные записи останутся в очереди
+                break;
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<Void> future = futures.get(i);
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                done.add(submittedIds.get(i));
+            }
+        }
+        return done;
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(30));
+        partitionLeases.releaseAll();
+    }
+}
@@ -0,0 +1,47 @@
+package com.safoev.bot.callback;
+
+// Действия inline-кнопок. id записывается в callback_data и не должен меняться,
+// arity - число числовых аргументов действия.
+public enum CallbackAction {
+    REGISTRATION(1, 0),
+    NON_REGISTRATION(2, 0),
+    CANCEL_REGISTRATION(3, 0),
+    NEW_ORDER(4, 0),
+    MY_ORDERS(5, 0),
+    MY_PROFILE(6, 0),
+    HELP(7, 0),
+    BACK_TO_MENU(8, 0),
+    VIEW_ORDER(9, 1),
+    CONFIRM_CANCEL(10, 1),
+    // [список по username (0/1), created_at в микросекундах, id, номер в списке] - курсор страницы заказов
+    ORDERS_NEWER(11, 4),
+    ORDERS_OLDER(12, 4);
+
+    private static final CallbackAction[] BY_ID = new CallbackAction[128];
+
+    static {
+        for (CallbackAction action : values()) {
+            BY_ID[action.id] = action;
+        }
+    }
+
+    private final int id;
+    private final int arity;
+
+    CallbackAction(int id, int arity) {
+        this.id = id;
+        this.arity = arity;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public static CallbackAction byId(int id) {
+        return id > 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+}
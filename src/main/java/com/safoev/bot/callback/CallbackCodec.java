@@ -0,0 +1,129 @@
+package com.safoev.bot.callback;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+// Компактный формат callback_data (Telegram ограничивает его 64 байтами):
+// base64url без паддинга от [версия][id действия][число аргументов] + аргументы в varint.
+// Заголовок ровно 3 байта, поэтому его base64 (4 символа) вычисляется один раз,
+// а аргументы кодируются отдельно и просто дописываются.
+@Component
+public class CallbackCodec {
+
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3;
+    private static final int MAX_DATA_LENGTH = 64;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final String[] headers = new String[CallbackAction.values().length];
+
+    public CallbackCodec() {
+        for (CallbackAction action : CallbackAction.values()) {
+            byte[] header = {(byte) VERSION, (byte) action.getId(), (byte) action.getArity()};
+            headers[action.ordinal()] = ENCODER.encodeToString(header);
+        }
+    }
+
+    public String encode(CallbackAction action, long... args) {
+        if (args.length != action.getArity()) {
+            throw new IllegalArgumentException("Действие " + action + " ожидает " + action.getArity() + " аргументов");
+        }
+        String header = headers[action.ordinal()];
+        if (args.length == 0) {
+            return header;
+        }
+
+        byte[] buffer = new byte[args.length * 10];
+        int length = 0;
+        for (long arg : args) {
+            length = writeVarLong(buffer, length, arg);
+        }
+        return header + ENCODER.encodeToString(Arrays.copyOf(buffer, length));
+    }
+
+    // null - данные повреждены, устарели (другая версия или старый строковый формат) или неизвестны
+    public CallbackData decode(String data) {
+        if (data == null || data.length() < 4 || data.length() > MAX_DATA_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = decodeBase64(data);
+        if (bytes == null || bytes.length < HEADER_SIZE || bytes[0] != VERSION) {
+            return null;
+        }
+
+        CallbackAction action = CallbackAction.byId(bytes[1]);
+        if (action == null || bytes[2] != action.getArity()) {
+            return null;
+        }
+
+        long[] args = new long[action.getArity()];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (position >= bytes.length || shift > 63) {
+                    return null;
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+                shift += 7;
+            }
+            args[i] = value;
+        }
+
+        return position == bytes.length ? new CallbackData(action, args) : null;
+    }
+
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    // Декодирование без исключений: на мусорных данных просто возвращает null
+    private static byte[] decodeBase64(String data) {
+        int length = data.length();
+        if (length % 4 == 1) {
+            return null;
+        }
+
+        byte[] out = new byte[length * 3 / 4];
+        int bits = 0;
+        int bitCount = 0;
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            char c = data.charAt(i);
+            int value = c < 128 ? DECODE_TABLE[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[position++] = (byte) (bits >> bitCount);
+            }
+        }
+        return out;
+    }
+}
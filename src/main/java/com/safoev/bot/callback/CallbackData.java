@@ -0,0 +1,8 @@
+package com.safoev.bot.callback;
+
+public record CallbackData(CallbackAction action, long[] args) {
+
+    public long arg(int index) {
+        return args[index];
+    }
+}
@@ -0,0 +1,9 @@
+package com.safoev.bot.callback;
+
+import com.safoev.bot.context.UpdateContext;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+
+@FunctionalInterface
+public interface CallbackRoute {
+    void handle(CallbackQuery callbackQuery, CallbackData data, UpdateContext context);
+}
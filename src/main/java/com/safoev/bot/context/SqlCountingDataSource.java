@@ -0,0 +1,69 @@
+package com.safoev.bot.context;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Обертка пула: каждое выполнение запроса (execute*, executeBatch) засчитывается в SqlStatementCounter.
+// unwrap и isWrapperFor уходят в пул, поэтому PGConnection и метрики Hikari доступны как раньше
+public class SqlCountingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    public SqlCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(Connection.class, super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(Connection.class, super.getConnection(username, password));
+    }
+
+    // Пул закрывается вместе с контекстом, как и без обертки
+    @Override
+    public void close() throws Exception {
+        if (obtainTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static <T> T wrap(Class<T> type, T target) {
+        return type.cast(Proxy.newProxyInstance(SqlCountingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> {
+                        if (target instanceof Statement && method.getName().startsWith("execute")) {
+                            SqlStatementCounter.executed();
+                        }
+                        Object result = invoke(target, method, args);
+                        // createStatement, prepareStatement, prepareCall: тип возврата - нужный интерфейс
+                        yield result instanceof Statement statement && target instanceof Connection
+                                ? wrapStatement(method.getReturnType(), statement)
+                                : result;
+                    }
+                }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Statement wrapStatement(Class<?> type, Statement statement) {
+        return wrap((Class<Statement>) type, statement);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
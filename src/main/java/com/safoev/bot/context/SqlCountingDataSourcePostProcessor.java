@@ -0,0 +1,20 @@
+package com.safoev.bot.context;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+// Оборачивает пул приложения в SqlCountingDataSource: запросы считаются на уровне JDBC,
+// независимо от того, кто их выполняет (Hibernate, JdbcTemplate, Flyway)
+@Component
+public class SqlCountingDataSourcePostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof SqlCountingDataSource)) {
+            return new SqlCountingDataSource(dataSource);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,62 @@
+package com.safoev.bot.context;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Число обращений к БД за обработку одного обновления, по маршрутам.
+// Считаются выполнения JDBC-запросов (SqlCountingDataSource): Hibernate, JdbcTemplate, очередь, outbox;
+// JDBC batch - одно обращение. Запросы других потоков (групповая запись заказов, сброс диалогов)
+// сюда не входят. Превышение бюджета пишется в лог - так заметны регрессии.
+@Slf4j
+@Component
+public class SqlStatementCounter {
+
+    private static final ThreadLocal<int[]> CURRENT = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+    private final int maxStatementsPerUpdate;
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public SqlStatementCounter(MeterRegistry meterRegistry,
+                               @Value("${telegram.bot.sql.max-statements-per-update:8}") int maxStatementsPerUpdate) {
+        this.meterRegistry = meterRegistry;
+        this.maxStatementsPerUpdate = maxStatementsPerUpdate;
+    }
+
+    // Вызывается из SqlCountingDataSource в потоке, выполняющем запрос
+    static void executed() {
+        int[] counter = CURRENT.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+    }
+
+    public void begin() {
+        CURRENT.set(new int[1]);
+    }
+
+    public void end(String route) {
+        int[] counter = CURRENT.get();
+        CURRENT.remove();
+        if (counter == null) {
+            return;
+        }
+
+        summaries.computeIfAbsent(route, name -> DistributionSummary.builder("bot.update.sql.statements")
+                        .description("SQL-запросы за обработку одного обновления")
+                        .tag("route", name)
+                        .register(meterRegistry))
+                .record(counter[0]);
+
+        if (counter[0] > maxStatementsPerUpdate) {
+            log.warn("Маршрут {} выполнил {} SQL-запросов за обновление (бюджет {})",
+                    route, counter[0], maxStatementsPerUpdate);
+        }
+    }
+}
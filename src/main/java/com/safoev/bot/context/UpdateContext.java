@@ -0,0 +1,89 @@
+package com.safoev.bot.context;
+
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.order.domain.dto.OrderStatistics;
+import com.safoev.user.domain.db.UserEntity;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.function.Supplier;
+
+// Факты об обновлении, которые нужны обработчикам: id обновления, чат, отправитель,
+// зарегистрированный пользователь, активный диалог. Собирается один раз в начале обработки (UpdateContextFactory) и передается
+// по цепочке вместо пары chatId/User, чтобы обработчики не выясняли одно и то же повторно.
+// Отражает состояние на начало обновления; живет в одном потоке.
+public final class UpdateContext {
+
+    private final long updateId;
+    private final long chatId;
+    private final User telegramUser;
+    private final UserEntity user;
+    private final Conversation conversation;
+    private final Supplier<OrderStatistics> statsLoader;
+    private OrderStatistics stats;
+    private String route = "unrouted";
+
+    UpdateContext(long updateId, long chatId, User telegramUser, UserEntity user, Conversation conversation,
+                  Supplier<OrderStatistics> statsLoader) {
+        this.updateId = updateId;
+        this.chatId = chatId;
+        this.telegramUser = telegramUser;
+        this.user = user;
+        this.conversation = conversation;
+        this.statsLoader = statsLoader;
+    }
+
+    // Ключ идемпотентности для записей, которые нельзя повторить при повторной доставке обновления
+    public long getUpdateId() {
+        return updateId;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public User getTelegramUser() {
+        return telegramUser;
+    }
+
+    public String getTelegramUsername() {
+        return telegramUser != null ? telegramUser.getUserName() : null;
+    }
+
+    public boolean isRegistered() {
+        return user != null;
+    }
+
+    // null - пользователь не зарегистрирован
+    public UserEntity getUser() {
+        return user;
+    }
+
+    // null - в чате нет активного диалога
+    public Conversation getConversation() {
+        return conversation;
+    }
+
+    // Статистика заказов нужна только профилю: загружается при первом обращении
+    public OrderStatistics getStats() {
+        if (stats == null) {
+            stats = statsLoader.get();
+        }
+        return stats;
+    }
+
+    public String getDisplayName() {
+        if (user != null) {
+            return user.getFirstName() + (user.getLastName() != null ? " " + user.getLastName() : "");
+        }
+        return telegramUser != null ? telegramUser.getFirstName() : "";
+    }
+
+    // Имя маршрута для метрик (команда, префикс, callback-действие)
+    public String getRoute() {
+        return route;
+    }
+
+    public void routedTo(String route) {
+        this.route = route;
+    }
+}
@@ -0,0 +1,29 @@
+package com.safoev.bot.context;
+
+import com.safoev.bot.conversation.ConversationEngine;
+import com.safoev.order.domain.service.UserOrderStatsService;
+import com.safoev.user.domain.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+// Пользователь - из кэша UserService (не больше одного запроса при промахе),
+// диалог - из ConversationEngine (память); статистика - лениво, одним запросом к user_order_stats
+@Component
+@RequiredArgsConstructor
+public class UpdateContextFactory {
+
+    private final UserService userService;
+    private final ConversationEngine conversationEngine;
+    private final UserOrderStatsService userOrderStatsService;
+
+    public UpdateContext create(long updateId, long chatId, User telegramUser) {
+        return new UpdateContext(
+                updateId,
+                chatId,
+                telegramUser,
+                userService.findByTelegramId(chatId),
+                conversationEngine.get(chatId),
+                () -> userOrderStatsService.getStatistics(chatId));
+    }
+}
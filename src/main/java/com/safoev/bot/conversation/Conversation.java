@@ -0,0 +1,9 @@
+package com.safoev.bot.conversation;
+
+// Состояние диалога в чате: текущий шаг и собранные данные
+public record Conversation(ConversationStep step, ConversationDraft draft) {
+
+    public ConversationFlow flow() {
+        return step.getFlow();
+    }
+}
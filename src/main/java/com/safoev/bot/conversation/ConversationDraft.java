@@ -0,0 +1,34 @@
+package com.safoev.bot.conversation;
+
+// Данные, собранные в диалоге. Неизменяемые: каждый шаг создает новую копию
+public record ConversationDraft(String telegramUsername, String firstName, String lastName, String phone) {
+
+    public static ConversationDraft of(String telegramUsername) {
+        return new ConversationDraft(telegramUsername, null, null, null);
+    }
+
+    public ConversationDraft withFirstName(String firstName) {
+        return new ConversationDraft(telegramUsername, firstName, lastName, phone);
+    }
+
+    public ConversationDraft withLastName(String lastName) {
+        return new ConversationDraft(telegramUsername, firstName, lastName, phone);
+    }
+
+    public ConversationDraft withPhone(String phone) {
+        return new ConversationDraft(telegramUsername, firstName, lastName, phone);
+    }
+
+    public String fullName() {
+        return firstName + (lastName != null ? " " + lastName : "");
+    }
+
+    // Примерный размер в куче: объект записи и строки (заголовок + 1 байт на символ Latin-1 / 2 байта UTF-16)
+    int estimatedBytes() {
+        return 32 + sizeOf(telegramUsername) + sizeOf(firstName) + sizeOf(lastName) + sizeOf(phone);
+    }
+
+    private static int sizeOf(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
+    }
+}
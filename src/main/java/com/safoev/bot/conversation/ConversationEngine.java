@@ -0,0 +1,249 @@
+package com.safoev.bot.conversation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.safoev.bot.dispatch.UpdateDispatcher;
+import com.safoev.bot.timer.TimerHandle;
+import com.safoev.bot.timer.TimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+// Состояние диалогов по чатам (регистрация, создание заказа).
+// Одна запись на чат: шаг + черновик. Обработка обновления делает один поиск,
+// брошенные диалоги удаляются после idle-ttl, число записей ограничено max-size.
+// Где лежат записи, определяет ConversationStore; порядок обращений и вытеснение ведет
+// Caffeine-индекс поверх хранилища (без полного обхода и общей блокировки).
+// На каждый шаг взводится таймер колеса: после reminder-after простоя - напоминание,
+// после auto-cancel-after - отмена диалога. Срабатывание идет через полосу чата в UpdateDispatcher.
+@Slf4j
+@Component
+public class ConversationEngine {
+
+    // Повтор, если очередь диспетчера переполнена в момент срабатывания
+    private static final Duration DISPATCH_RETRY = Duration.ofSeconds(5);
+
+    private final ConversationStore store;
+    private final TimingWheel timingWheel;
+    private final UpdateDispatcher updateDispatcher;
+    private final ConversationTimeoutListener timeoutListener;
+    // Чат -> запись хранилища: по нему вытесняются самые давние и просроченные диалоги
+    private final Cache<Long, ConversationEntry> index;
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private final long idleTtlMillis;
+    private final long reminderAfterMillis;
+    private final long autoCancelAfterMillis;
+    private final Counter expiredCounter;
+    private final Counter evictedCounter;
+    private final Counter remindedCounter;
+    private final Counter autoCancelledCounter;
+
+    public ConversationEngine(ConversationStore store,
+                              TimingWheel timingWheel,
+                              UpdateDispatcher updateDispatcher,
+                              ConversationTimeoutListener timeoutListener,
+                              MeterRegistry meterRegistry,
+                              @Value("${telegram.bot.conversation.idle-ttl:30m}") Duration idleTtl,
+                              @Value("${telegram.bot.conversation.max-size:100000}") int maxSize,
+                              @Value("${telegram.bot.conversation.reminder-after:10m}") Duration reminderAfter,
+                              @Value("${telegram.bot.conversation.auto-cancel-after:20m}") Duration autoCancelAfter) {
+        this.store = store;
+        this.timingWheel = timingWheel;
+        this.updateDispatcher = updateDispatcher;
+        this.timeoutListener = timeoutListener;
+        this.idleTtlMillis = idleTtl.toMillis();
+        this.reminderAfterMillis = reminderAfter.toMillis();
+        this.autoCancelAfterMillis = autoCancelAfter.toMillis();
+        if (autoCancelAfterMillis >= idleTtlMillis) {
+            log.warn("auto-cancel-after ({}) не меньше idle-ttl ({}): брошенные диалоги будут удаляться без уведомления",
+                    autoCancelAfter, idleTtl);
+        }
+
+        Gauge.builder("bot.conversations.active", store, ConversationStore::size)
+                .description("Незавершенные диалоги")
+                .register(meterRegistry);
+        Gauge.builder("bot.conversations.memory", estimatedBytes, AtomicLong::get)
+                .description("Оценка памяти, занятой диалогами")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("bot.conversations.expired")
+                .description("Диалоги, удаленные по простою")
+                .register(meterRegistry);
+        this.evictedCounter = Counter.builder("bot.conversations.evicted")
+                .description("Диалоги, вытесненные при переполнении")
+                .register(meterRegistry);
+        this.remindedCounter = Counter.builder("bot.conversations.reminded")
+                .description("Напоминания о незавершенном диалоге")
+                .register(meterRegistry);
+        this.autoCancelledCounter = Counter.builder("bot.conversations.auto_cancelled")
+                .description("Диалоги, отмененные по простою с уведомлением")
+                .register(meterRegistry);
+
+        // Срок отсчитывается от последнего обращения к записи, а не от попадания в индекс:
+        // восстановленные при старте записи не живут лишний idle-ttl.
+        // Удаление из хранилища выполняется в потоке, вызвавшем вытеснение
+        this.index = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.<Long, ConversationEntry>accessing((chatId, entry) -> Duration.ofMillis(
+                        Math.max(0, idleTtlMillis - (System.currentTimeMillis() - entry.getLastAccessMillis())))))
+                .executor(Runnable::run)
+                .removalListener(this::onRemoval)
+                .build();
+
+        // Записи, восстановленные хранилищем при старте
+        store.forEach((chatId, entry) -> {
+            estimatedBytes.addAndGet(entry.getEstimatedBytes());
+            index.put(chatId, entry);
+            armTimer(chatId, entry);
+        });
+    }
+
+    // null - в чате нет активного диалога
+    public Conversation get(long chatId) {
+        ConversationEntry entry = store.get(chatId);
+        if (entry == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            if (remove(chatId, entry)) {
+                expiredCounter.increment();
+            }
+            return null;
+        }
+        entry.touch(now);
+        // Обращение продлевает срок в индексе
+        if (index.getIfPresent(chatId) != entry) {
+            index.put(chatId, entry);
+        }
+        return entry.getConversation();
+    }
+
+    // Начало диалога или переход к следующему шагу
+    public void moveTo(long chatId, ConversationStep step, ConversationDraft draft) {
+        ConversationEntry entry = new ConversationEntry(new Conversation(step, draft), System.currentTimeMillis());
+        ConversationEntry previous = store.put(chatId, entry);
+        estimatedBytes.addAndGet(entry.getEstimatedBytes() - (previous != null ? previous.getEstimatedBytes() : 0));
+        cancelTimer(previous);
+        armTimer(chatId, entry);
+        index.put(chatId, entry);
+    }
+
+    public void finish(long chatId) {
+        ConversationEntry entry = store.remove(chatId);
+        if (entry != null) {
+            index.asMap().remove(chatId, entry);
+            released(entry);
+        }
+    }
+
+    // Чаты переходят другому узлу (роль worker): таймеры снимаются, записи перестают учитываться.
+    // Сами записи выгружает хранилище
+    public void forget(LongPredicate chats) {
+        store.forEach((chatId, entry) -> {
+            if (chats.test(chatId) && index.asMap().remove(chatId, entry)) {
+                released(entry);
+            }
+        });
+    }
+
+    // Запись, загруженная хранилищем при получении чата от другого узла
+    public void adopt(long chatId, ConversationEntry entry) {
+        estimatedBytes.addAndGet(entry.getEstimatedBytes());
+        index.put(chatId, entry);
+        armTimer(chatId, entry);
+    }
+
+    // Caffeine убирает просроченные записи попутно с обращениями; при затишье - здесь
+    @Scheduled(fixedDelayString = "${telegram.bot.conversation.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        index.cleanUp();
+    }
+
+    // Вытеснение индексом: по лимиту размера (самый давний диалог) или по простою
+    private void onRemoval(Long chatId, ConversationEntry entry, RemovalCause cause) {
+        if (!cause.wasEvicted() || chatId == null || entry == null || !store.remove(chatId, entry)) {
+            return;
+        }
+        released(entry);
+        if (cause == RemovalCause.EXPIRED) {
+            expiredCounter.increment();
+        } else {
+            evictedCounter.increment();
+            log.warn("Превышен лимит диалогов, вытеснен диалог чата {}", chatId);
+        }
+    }
+
+    private void armTimer(long chatId, ConversationEntry entry) {
+        long deadline = entry.getLastAccessMillis()
+                + (entry.isReminded() ? autoCancelAfterMillis : reminderAfterMillis);
+        schedule(chatId, entry, Duration.ofMillis(Math.max(0, deadline - System.currentTimeMillis())));
+    }
+
+    private void schedule(long chatId, ConversationEntry entry, Duration delay) {
+        entry.setTimer(timingWheel.schedule(delay, () -> {
+            if (!updateDispatcher.trySubmit(chatId, () -> onTimer(chatId, entry))) {
+                schedule(chatId, entry, DISPATCH_RETRY);
+            }
+        }));
+    }
+
+    // Выполняется в полосе чата. Таймер мог устареть: шаг сменился, диалог завершен
+    // или пользователь писал (например, неверный телефон) без перехода на новый шаг
+    private void onTimer(long chatId, ConversationEntry entry) {
+        if (store.get(chatId) != entry) {
+            return;
+        }
+
+        long idle = System.currentTimeMillis() - entry.getLastAccessMillis();
+        if (idle >= autoCancelAfterMillis) {
+            if (remove(chatId, entry)) {
+                autoCancelledCounter.increment();
+                timeoutListener.onAutoCancel(chatId, entry.getConversation());
+            }
+        } else if (idle >= reminderAfterMillis && !entry.isReminded()) {
+            entry.markReminded();
+            remindedCounter.increment();
+            timeoutListener.onReminder(chatId, entry.getConversation());
+            armTimer(chatId, entry);
+        } else {
+            armTimer(chatId, entry);
+        }
+    }
+
+    private static void cancelTimer(ConversationEntry entry) {
+        TimerHandle timer = entry != null ? entry.getTimer() : null;
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+
+    private boolean isExpired(ConversationEntry entry, long now) {
+        return now - entry.getLastAccessMillis() > idleTtlMillis;
+    }
+
+    private boolean remove(long chatId, ConversationEntry entry) {
+        if (!store.remove(chatId, entry)) {
+            return false;
+        }
+        index.asMap().remove(chatId, entry);
+        released(entry);
+        return true;
+    }
+
+    private void released(ConversationEntry entry) {
+        estimatedBytes.addAndGet(-entry.getEstimatedBytes());
+        cancelTimer(entry);
+    }
+}
@@ -0,0 +1,54 @@
+package com.safoev.bot.conversation;
+
+import com.safoev.bot.timer.TimerHandle;
+
+// Запись хранилища диалогов: состояние и время последнего обращения (для idle-ttl)
+public final class ConversationEntry {
+
+    private static final int OVERHEAD_BYTES = 96;
+
+    private final Conversation conversation;
+    private final int estimatedBytes;
+    private volatile long lastAccessMillis;
+    // Таймер напоминания/автоотмены и признак отправленного напоминания
+    private volatile TimerHandle timer;
+    private volatile boolean reminded;
+
+    public ConversationEntry(Conversation conversation, long lastAccessMillis) {
+        this.conversation = conversation;
+        this.estimatedBytes = OVERHEAD_BYTES + conversation.draft().estimatedBytes();
+        this.lastAccessMillis = lastAccessMillis;
+    }
+
+    public Conversation getConversation() {
+        return conversation;
+    }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    void touch(long now) {
+        lastAccessMillis = now;
+    }
+
+    int getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    TimerHandle getTimer() {
+        return timer;
+    }
+
+    void setTimer(TimerHandle timer) {
+        this.timer = timer;
+    }
+
+    boolean isReminded() {
+        return reminded;
+    }
+
+    void markReminded() {
+        reminded = true;
+    }
+}
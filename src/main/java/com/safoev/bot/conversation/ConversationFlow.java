@@ -0,0 +1,6 @@
+package com.safoev.bot.conversation;
+
+public enum ConversationFlow {
+    REGISTRATION,
+    ORDER
+}
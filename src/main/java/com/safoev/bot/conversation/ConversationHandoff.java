@@ -0,0 +1,57 @@
+package com.safoev.bot.conversation;
+
+import com.safoev.bot.conversation.store.JdbcConversationStore;
+import com.safoev.update.domain.service.PartitionListener;
+import com.safoev.update.domain.service.UpdateQueue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+// Роль worker: диалоги чата переезжают вместе с его партицией update_queue.
+// Поэтому worker работает только с jdbc-хранилищем: heap и mmap видны одному узлу,
+// и диалог, начатый на одном узле, после переезда партиции пропал бы
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot", name = "role", havingValue = "worker")
+public class ConversationHandoff implements PartitionListener {
+
+    private final ConversationEngine conversationEngine;
+    private final JdbcConversationStore store;
+    private final UpdateQueue updateQueue;
+
+    public ConversationHandoff(ConversationEngine conversationEngine,
+                               ConversationStore store,
+                               UpdateQueue updateQueue) {
+        if (!(store instanceof JdbcConversationStore jdbcStore)) {
+            throw new IllegalArgumentException("Роль worker требует telegram.bot.conversation.store=jdbc: "
+                    + "иначе диалоги теряются при переходе партиции к другому узлу");
+        }
+        this.conversationEngine = conversationEngine;
+        this.store = jdbcStore;
+        this.updateQueue = updateQueue;
+    }
+
+    @Override
+    public void beforeRelease(int[] partitions) {
+        release(partitions, false);
+    }
+
+    @Override
+    public void lost(int[] partitions) {
+        release(partitions, true);
+    }
+
+    @Override
+    public void acquired(int[] partitions) {
+        store.acquire(updateQueue.getPartitions(), partitions, conversationEngine::adopt);
+    }
+
+    private void release(int[] partitions, boolean lost) {
+        int[] sorted = partitions.clone();
+        Arrays.sort(sorted);
+        LongPredicate chats = chatId -> Arrays.binarySearch(sorted, updateQueue.partitionOf(chatId)) >= 0;
+        conversationEngine.forget(chats);
+        store.release(chats, lost);
+    }
+}
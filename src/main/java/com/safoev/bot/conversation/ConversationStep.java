@@ -0,0 +1,23 @@
+package com.safoev.bot.conversation;
+
+// Шаги диалогов; каждый шаг принадлежит одному сценарию
+public enum ConversationStep {
+    REG_FIRST_NAME(ConversationFlow.REGISTRATION),
+    REG_LAST_NAME(ConversationFlow.REGISTRATION),
+    REG_PHONE(ConversationFlow.REGISTRATION),
+
+    ORDER_NAME(ConversationFlow.ORDER),
+    ORDER_LAST_NAME(ConversationFlow.ORDER),
+    ORDER_PHONE(ConversationFlow.ORDER),
+    ORDER_SERVICE(ConversationFlow.ORDER);
+
+    private final ConversationFlow flow;
+
+    ConversationStep(ConversationFlow flow) {
+        this.flow = flow;
+    }
+
+    public ConversationFlow getFlow() {
+        return flow;
+    }
+}
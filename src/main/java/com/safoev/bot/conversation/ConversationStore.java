@@ -0,0 +1,24 @@
+package com.safoev.bot.conversation;
+
+import java.util.function.BiConsumer;
+
+// Хранилище диалогов для ConversationEngine. Реализация выбирается telegram.bot.conversation.store:
+// heap - только память процесса, jdbc - PostgreSQL с отложенной пакетной записью,
+// mmap - файл, отображенный в память (быстрый перезапуск одного узла).
+// Чтение всегда идет из памяти; постоянные хранилища восстанавливают записи при старте.
+public interface ConversationStore {
+
+    ConversationEntry get(long chatId);
+
+    // Возвращает предыдущую запись или null
+    ConversationEntry put(long chatId, ConversationEntry entry);
+
+    ConversationEntry remove(long chatId);
+
+    // Удаляет запись, только если она не была заменена
+    boolean remove(long chatId, ConversationEntry expected);
+
+    int size();
+
+    void forEach(BiConsumer<Long, ConversationEntry> action);
+}
@@ -0,0 +1,12 @@
+package com.safoev.bot.conversation;
+
+// Реакция на простой в диалоге. Вызывается в полосе чата UpdateDispatcher,
+// то есть строго по порядку с обновлениями этого чата
+public interface ConversationTimeoutListener {
+
+    // Пользователь давно не отвечает, диалог еще активен
+    void onReminder(long chatId, Conversation conversation);
+
+    // Диалог уже завершен движком по простою
+    void onAutoCancel(long chatId, Conversation conversation);
+}
@@ -0,0 +1,41 @@
+package com.safoev.bot.conversation.store;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Схема таблицы JdbcConversationStore; запись и чтение идут через JdbcTemplate пачками
+@Entity
+@Table(name = "conversation_states")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationStateEntity {
+
+    @Id
+    @Column(name = "chat_id")
+    private Long chatId;
+
+    @Column(name = "step", nullable = false, length = 30)
+    private String step;
+
+    @Column(name = "telegram_username", length = 50)
+    private String telegramUsername;
+
+    @Column(name = "first_name", length = 4096)
+    private String firstName;
+
+    @Column(name = "last_name", length = 4096)
+    private String lastName;
+
+    @Column(name = "phone", length = 20)
+    private String phone;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
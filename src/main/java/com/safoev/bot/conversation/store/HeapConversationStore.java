@@ -0,0 +1,48 @@
+package com.safoev.bot.conversation.store;
+
+import com.safoev.bot.conversation.ConversationEntry;
+import com.safoev.bot.conversation.ConversationStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+// Диалоги только в памяти процесса: самый быстрый вариант, но перезапуск их теряет
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot.conversation", name = "store", havingValue = "heap", matchIfMissing = true)
+public class HeapConversationStore implements ConversationStore {
+
+    private final Map<Long, ConversationEntry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public ConversationEntry get(long chatId) {
+        return entries.get(chatId);
+    }
+
+    @Override
+    public ConversationEntry put(long chatId, ConversationEntry entry) {
+        return entries.put(chatId, entry);
+    }
+
+    @Override
+    public ConversationEntry remove(long chatId) {
+        return entries.remove(chatId);
+    }
+
+    @Override
+    public boolean remove(long chatId, ConversationEntry expected) {
+        return entries.remove(chatId, expected);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, ConversationEntry> action) {
+        entries.forEach(action);
+    }
+}
@@ -0,0 +1,268 @@
+package com.safoev.bot.conversation.store;
+
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationDraft;
+import com.safoev.bot.conversation.ConversationEntry;
+import com.safoev.bot.conversation.ConversationStep;
+import com.safoev.bot.conversation.ConversationStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+
+// Диалоги в памяти с отложенной записью в conversation_states.
+// Изменения копятся по чатам (для чата пишется только последнее состояние) и сбрасываются
+// пачкой раз в flush-interval или при накоплении batch-size изменений.
+// При старте таблица загружается целиком, поэтому чтение никогда не ходит в БД.
+// В роли worker чатами владеют партиции update_queue: узел загружает диалоги партиции при ее получении
+// и записывает изменения перед тем, как отдать ее другому узлу.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot.conversation", name = "store", havingValue = "jdbc")
+public class JdbcConversationStore implements ConversationStore {
+
+    private static final String UPSERT = "INSERT INTO conversation_states " +
+            "(chat_id, step, telegram_username, first_name, last_name, phone, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (chat_id) DO UPDATE SET step = EXCLUDED.step, " +
+            "telegram_username = EXCLUDED.telegram_username, first_name = EXCLUDED.first_name, " +
+            "last_name = EXCLUDED.last_name, phone = EXCLUDED.phone, updated_at = EXCLUDED.updated_at";
+    private static final String DELETE = "DELETE FROM conversation_states WHERE chat_id = ?";
+    private static final String SELECT_ALL = "SELECT chat_id, step, telegram_username, first_name, last_name, phone, updated_at " +
+            "FROM conversation_states";
+    // Партиция чата - как в UpdateQueue (floorMod, chat_id групп отрицательные)
+    private static final String SELECT_PARTITIONS = SELECT_ALL + " WHERE mod(mod(chat_id, ?) + ?, ?) = ANY(?)";
+
+    // Отметка удаления в очереди записи
+    private static final Object REMOVED = new Object();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final boolean partitioned;
+
+    private final Map<Long, ConversationEntry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Object> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "conversation-flush"));
+
+    public JdbcConversationStore(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${telegram.bot.conversation.jdbc.batch-size:500}") int batchSize,
+                                 @Value("${telegram.bot.conversation.jdbc.flush-interval:200ms}") Duration flushInterval,
+                                 @Value("${telegram.bot.role:standalone}") String role) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.partitioned = "worker".equals(role);
+
+        Gauge.builder("bot.conversations.store.pending", pending, Map::size)
+                .description("Изменения диалогов, еще не записанные в БД")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void restore() {
+        // worker загружает только партиции, которые получит
+        if (!partitioned) {
+            long started = System.nanoTime();
+            jdbcTemplate.query(SELECT_ALL, (ResultSet rs) -> restoreRow(rs, (chatId, entry) -> {
+            }));
+            log.info("Восстановлено диалогов из БД: {} за {} мс",
+                    entries.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+
+        long intervalMillis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Партиции получены узлом: их диалоги перечитываются из БД (прежний владелец записал их перед передачей)
+    public void acquire(int partitions, int[] acquired, BiConsumer<Long, ConversationEntry> restored) {
+        long started = System.nanoTime();
+        int[] count = new int[1];
+        jdbcTemplate.query(SELECT_PARTITIONS,
+                ps -> {
+                    Array array = ps.getConnection().createArrayOf("integer", Arrays.stream(acquired).boxed().toArray());
+                    ps.setInt(1, partitions);
+                    ps.setInt(2, partitions);
+                    ps.setInt(3, partitions);
+                    ps.setArray(4, array);
+                },
+                rs -> {
+                    restoreRow(rs, restored);
+                    count[0]++;
+                });
+        log.info("Загружено диалогов партиций {}: {} за {} мс", Arrays.toString(acquired), count[0],
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // Партиции уходят другому узлу: изменения записываются в БД, диалоги выгружаются из памяти.
+    // Если партиции уже отобраны (lost), несохраненные изменения устарели и отбрасываются
+    public void release(LongPredicate chats, boolean lost) {
+        if (lost) {
+            pending.keySet().removeIf(chats::test);
+        }
+        flush();
+        entries.keySet().removeIf(chats::test);
+    }
+
+    private void restoreRow(ResultSet rs, BiConsumer<Long, ConversationEntry> restored) throws SQLException {
+        long chatId = rs.getLong("chat_id");
+        ConversationStep step;
+        try {
+            step = ConversationStep.valueOf(rs.getString("step"));
+        } catch (IllegalArgumentException e) {
+            // Шаг удален в новой версии - такой диалог не восстановить
+            pending.put(chatId, REMOVED);
+            return;
+        }
+        ConversationDraft draft = new ConversationDraft(
+                rs.getString("telegram_username"),
+                rs.getString("first_name"),
+                rs.getString("last_name"),
+                rs.getString("phone"));
+        ConversationEntry entry = new ConversationEntry(new Conversation(step, draft), rs.getTimestamp("updated_at").getTime());
+        entries.put(chatId, entry);
+        restored.accept(chatId, entry);
+    }
+
+    @Override
+    public ConversationEntry get(long chatId) {
+        return entries.get(chatId);
+    }
+
+    @Override
+    public ConversationEntry put(long chatId, ConversationEntry entry) {
+        ConversationEntry previous = entries.put(chatId, entry);
+        markPending(chatId, entry);
+        return previous;
+    }
+
+    @Override
+    public ConversationEntry remove(long chatId) {
+        ConversationEntry removed = entries.remove(chatId);
+        if (removed != null) {
+            markPending(chatId, REMOVED);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean remove(long chatId, ConversationEntry expected) {
+        if (entries.remove(chatId, expected)) {
+            markPending(chatId, REMOVED);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, ConversationEntry> action) {
+        entries.forEach(action);
+    }
+
+    private void markPending(long chatId, Object change) {
+        pending.put(chatId, change);
+        if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushSafely);
+        }
+    }
+
+    private void flushSafely() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Ошибка записи диалогов в БД: {}", e.getMessage(), e);
+        }
+    }
+
+    // Выполняется только в потоке conversation-flush (и один раз при остановке)
+    private synchronized void flush() {
+        while (!pending.isEmpty()) {
+            List<Object[]> upserts = new ArrayList<>();
+            List<Object[]> deletes = new ArrayList<>();
+            Map<Long, Object> taken = new HashMap<>();
+
+            for (Long chatId : pending.keySet()) {
+                Object change = pending.remove(chatId);
+                if (change == null) {
+                    continue;
+                }
+                taken.put(chatId, change);
+                if (change == REMOVED) {
+                    deletes.add(new Object[]{chatId});
+                } else {
+                    upserts.add(toRow(chatId, (ConversationEntry) change));
+                }
+                if (taken.size() >= batchSize) {
+                    break;
+                }
+            }
+
+            try {
+                if (!upserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPSERT, upserts);
+                }
+                if (!deletes.isEmpty()) {
+                    jdbcTemplate.batchUpdate(DELETE, deletes);
+                }
+            } catch (RuntimeException e) {
+                // Возвращаем в очередь, если за это время чат не получил более свежего состояния
+                taken.forEach(pending::putIfAbsent);
+                throw e;
+            }
+            log.debug("Записано диалогов: {}, удалено: {}", upserts.size(), deletes.size());
+        }
+    }
+
+    private static Object[] toRow(long chatId, ConversationEntry entry) {
+        Conversation conversation = entry.getConversation();
+        ConversationDraft draft = conversation.draft();
+        return new Object[]{
+                chatId,
+                conversation.step().name(),
+                draft.telegramUsername(),
+                draft.firstName(),
+                draft.lastName(),
+                draft.phone(),
+                new Timestamp(entry.getLastAccessMillis())
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+}
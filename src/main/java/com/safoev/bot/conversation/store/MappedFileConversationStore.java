@@ -0,0 +1,245 @@
+package com.safoev.bot.conversation.store;
+
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationDraft;
+import com.safoev.bot.conversation.ConversationEntry;
+import com.safoev.bot.conversation.ConversationStep;
+import com.safoev.bot.conversation.ConversationStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+// Диалоги в памяти с копией в файле, отображенном в память.
+// Файл разбит на слоты фиксированного размера, у каждого чата свой слот:
+// [state:1][crc:4][length:2][payload]. Запись в слот - обычная запись в память,
+// сбросом на диск занимается ОС; после падения процесса данные остаются в page cache.
+// Подходит для одного узла, которому нужен быстрый перезапуск без внешней БД.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot.conversation", name = "store", havingValue = "mmap")
+public class MappedFileConversationStore implements ConversationStore {
+
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_USED = 1;
+    private static final int HEADER_BYTES = 1 + 4 + 2;
+
+    private final int slotSize;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+
+    private final Map<Long, ConversationEntry> entries = new ConcurrentHashMap<>();
+    // Доступ к слотам только под монитором хранилища
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    public MappedFileConversationStore(@Value("${telegram.bot.conversation.mmap.file:./data/conversations.dat}") Path file,
+                                       @Value("${telegram.bot.conversation.mmap.slot-size:1024}") int slotSize,
+                                       @Value("${telegram.bot.conversation.max-size:100000}") int maxSize) throws IOException {
+        this.slotSize = slotSize;
+        // Запас на записи, которые движок еще не успел вытеснить
+        this.capacity = maxSize + maxSize / 10 + 1;
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Отображение остается действительным после закрытия канала
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * slotSize);
+        }
+        restore(file);
+    }
+
+    private void restore(Path file) {
+        long started = System.nanoTime();
+        int corrupted = 0;
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            int offset = slot * slotSize;
+            if (buffer.get(offset) == SLOT_USED && restoreSlot(offset, slot)) {
+                continue;
+            }
+            if (buffer.get(offset) == SLOT_USED) {
+                corrupted++;
+            }
+            buffer.put(offset, SLOT_FREE);
+            freeSlots.push(slot);
+        }
+        log.info("Восстановлено диалогов из {}: {} (поврежденных слотов: {}) за {} мс",
+                file, entries.size(), corrupted, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // false - слот поврежден, устарел или содержит неизвестный шаг
+    private boolean restoreSlot(int offset, int slot) {
+        int crc = buffer.getInt(offset + 1);
+        int length = Short.toUnsignedInt(buffer.getShort(offset + 5));
+        if (length > slotSize - HEADER_BYTES) {
+            return false;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        if ((int) checksum.getValue() != crc) {
+            return false;
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            long chatId = in.getLong();
+            long lastAccessMillis = in.getLong();
+            ConversationStep step = ConversationStep.valueOf(readString(in));
+            ConversationDraft draft = new ConversationDraft(readString(in), readString(in), readString(in), readString(in));
+            if (slots.putIfAbsent(chatId, slot) != null) {
+                return false;
+            }
+            entries.put(chatId, new ConversationEntry(new Conversation(step, draft), lastAccessMillis));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public ConversationEntry get(long chatId) {
+        return entries.get(chatId);
+    }
+
+    @Override
+    public synchronized ConversationEntry put(long chatId, ConversationEntry entry) {
+        ConversationEntry previous = entries.put(chatId, entry);
+        byte[] payload = encode(chatId, entry);
+        if (payload.length > slotSize - HEADER_BYTES) {
+            // Не помещается в слот - диалог живет только в памяти
+            log.warn("Диалог чата {} не помещается в слот ({} байт), сохранен только в памяти", chatId, payload.length);
+            releaseSlot(chatId);
+            return previous;
+        }
+
+        Integer slot = slots.get(chatId);
+        if (slot == null) {
+            slot = freeSlots.poll();
+            if (slot == null) {
+                log.warn("Файл диалогов заполнен, диалог чата {} сохранен только в памяти", chatId);
+                return previous;
+            }
+            slots.put(chatId, slot);
+        }
+        writeSlot(slot, payload);
+        return previous;
+    }
+
+    @Override
+    public synchronized ConversationEntry remove(long chatId) {
+        ConversationEntry removed = entries.remove(chatId);
+        releaseSlot(chatId);
+        return removed;
+    }
+
+    @Override
+    public synchronized boolean remove(long chatId, ConversationEntry expected) {
+        if (entries.remove(chatId, expected)) {
+            releaseSlot(chatId);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, ConversationEntry> action) {
+        entries.forEach(action);
+    }
+
+    private void writeSlot(int slot, byte[] payload) {
+        int offset = slot * slotSize;
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+
+        // Сначала слот помечается свободным, признак занятости пишется последним:
+        // запись, прерванная на середине, при восстановлении будет пропущена
+        buffer.put(offset, SLOT_FREE);
+        buffer.putInt(offset + 1, (int) checksum.getValue());
+        buffer.putShort(offset + 5, (short) payload.length);
+        buffer.put(offset + HEADER_BYTES, payload);
+        buffer.put(offset, SLOT_USED);
+    }
+
+    private void releaseSlot(long chatId) {
+        Integer slot = slots.remove(chatId);
+        if (slot != null) {
+            buffer.put(slot * slotSize, SLOT_FREE);
+            freeSlots.push(slot);
+        }
+    }
+
+    private static byte[] encode(long chatId, ConversationEntry entry) {
+        Conversation conversation = entry.getConversation();
+        ConversationDraft draft = conversation.draft();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(chatId);
+            out.writeLong(entry.getLastAccessMillis());
+            writeString(out, conversation.step().name());
+            writeString(out, draft.telegramUsername());
+            writeString(out, draft.firstName());
+            writeString(out, draft.lastName());
+            writeString(out, draft.phone());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Строка: длина в байтах (-1 для null) и UTF-8
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        short length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        buffer.force();
+        log.info("Файл диалогов сброшен на диск, диалогов: {}", entries.size());
+    }
+}
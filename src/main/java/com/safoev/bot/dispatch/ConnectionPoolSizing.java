@@ -0,0 +1,39 @@
+package com.safoev.bot.dispatch;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+// Пул соединений не меньше, чем потоков обработки плюс фоновые потоки с БД.
+// Поток обработки держит соединение своей транзакции, пока ждет коммита заказа в потоке order-ingest;
+// если все соединения заняты такими потоками, order-ingest соединения не получит и заказы
+// упадут по таймауту. Фоновые: order-ingest, outbox, планировщик, очередь, сброс диалогов, LISTEN
+@Slf4j
+@Component
+public class ConnectionPoolSizing implements BeanPostProcessor {
+
+    private final int dispatcherThreads;
+    private final int reservedConnections;
+
+    public ConnectionPoolSizing(@Value("${telegram.bot.dispatcher.threads:16}") int dispatcherThreads,
+                                @Value("${telegram.bot.dispatcher.reserved-connections:6}") int reservedConnections) {
+        this.dispatcherThreads = dispatcherThreads;
+        this.reservedConnections = reservedConnections;
+    }
+
+    // До инициализации, но после привязки spring.datasource.hikari.*: пул еще не создан
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource) {
+            int required = dispatcherThreads + reservedConnections;
+            if (dataSource.getMaximumPoolSize() < required) {
+                log.warn("Пул соединений ({}) меньше, чем {} потоков обработки + {} фоновых: увеличен до {}",
+                        dataSource.getMaximumPoolSize(), dispatcherThreads, reservedConnections, required);
+                dataSource.setMaximumPoolSize(required);
+            }
+        }
+        return bean;
+    }
+}
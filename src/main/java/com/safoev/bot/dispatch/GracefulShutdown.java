@@ -0,0 +1,66 @@
+package com.safoev.bot.dispatch;
+
+import com.safoev.update.domain.service.UpdateProcessingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+
+import java.time.Duration;
+
+// Порядок остановки: прекратить получение обновлений -> дождаться обработки в полосах -> сохранить смещение.
+// Фаза ниже, чем у graceful shutdown веб-сервера: webhook сначала перестает принимать запросы.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GracefulShutdown implements SmartLifecycle {
+
+    private final ObjectProvider<TelegramBotsLongPollingApplication> longPollingApplication;
+    private final UpdateDispatcher updateDispatcher;
+    private final UpdateProcessingService updateProcessingService;
+
+    @Value("${telegram.bot.dispatcher.drain-timeout:30s}")
+    private Duration drainTimeout;
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        log.info("Остановка: прекращаем получение обновлений");
+        longPollingApplication.ifAvailable(application -> {
+            try {
+                application.close();
+            } catch (Exception e) {
+                log.warn("Ошибка остановки long polling: {}", e.getMessage());
+            }
+        });
+
+        try {
+            updateDispatcher.drain(drainTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        updateProcessingService.checkpoint();
+        log.info("Остановка: смещение {} сохранено", updateProcessingService.currentWatermark());
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1536;
+    }
+}
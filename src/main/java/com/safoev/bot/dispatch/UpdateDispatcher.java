@@ -0,0 +1,171 @@
+package com.safoev.bot.dispatch;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Параллельная обработка разных чатов при строгом порядке внутри одного чата.
+// Для каждого chatId существует "полоса" (очередь задач), пока в ней есть работа;
+// одну полосу в каждый момент времени обрабатывает ровно один поток пула.
+@Slf4j
+@Component
+public class UpdateDispatcher {
+
+    // Сколько задач одного чата выполняется подряд, прежде чем поток уступит другим полосам
+    private static final int MAX_TASKS_PER_TURN = 32;
+
+    private final Map<Long, ArrayDeque<Task>> lanes = new ConcurrentHashMap<>();
+    private final Semaphore capacity;
+    private final int maxPending;
+    private final ThreadPoolExecutor executor;
+    private final Timer laneWaitTimer;
+    private final Timer laneHandleTimer;
+    private volatile boolean accepting = true;
+
+    public UpdateDispatcher(MeterRegistry meterRegistry,
+                            @Value("${telegram.bot.dispatcher.threads:16}") int threads,
+                            @Value("${telegram.bot.dispatcher.max-pending:10000}") int maxPending) {
+        this.maxPending = maxPending;
+        this.capacity = new Semaphore(maxPending);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "update-lane-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("bot.dispatcher.queue.depth", this, UpdateDispatcher::getQueueDepth)
+                .description("Обновления, ожидающие обработки или обрабатываемые")
+                .register(meterRegistry);
+        Gauge.builder("bot.dispatcher.lanes.active", lanes, Map::size)
+                .description("Чаты, у которых есть необработанные обновления")
+                .register(meterRegistry);
+        this.laneWaitTimer = Timer.builder("bot.dispatcher.lane.wait")
+                .description("Время ожидания обновления в очереди своего чата")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.laneHandleTimer = Timer.builder("bot.dispatcher.lane.handle")
+                .description("Время обработки обновления")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    // Блокирует вызывающий поток, если в обработке уже maxPending обновлений.
+    // Возвращает false, если диспетчер остановлен.
+    public boolean submit(long chatId, Runnable runnable) {
+        if (!accepting) {
+            return false;
+        }
+        capacity.acquireUninterruptibly();
+        enqueue(chatId, runnable);
+        return true;
+    }
+
+    // Не блокирует: возвращает false, если очередь переполнена или диспетчер остановлен
+    public boolean trySubmit(long chatId, Runnable runnable) {
+        if (!accepting || !capacity.tryAcquire()) {
+            return false;
+        }
+        enqueue(chatId, runnable);
+        return true;
+    }
+
+    public int getQueueDepth() {
+        return maxPending - capacity.availablePermits();
+    }
+
+    private void enqueue(long chatId, Runnable runnable) {
+        Task task = new Task(runnable, System.nanoTime());
+        boolean[] newLane = new boolean[1];
+
+        lanes.compute(chatId, (id, lane) -> {
+            if (lane == null) {
+                lane = new ArrayDeque<>();
+                newLane[0] = true;
+            }
+            lane.add(task);
+            return lane;
+        });
+
+        // Полоса появилась только что - значит, ее никто не обрабатывает
+        if (newLane[0]) {
+            executor.execute(() -> drain(chatId));
+        }
+    }
+
+    private void drain(long chatId) {
+        for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+            Task task = next(chatId);
+            if (task == null) {
+                return;
+            }
+            run(task);
+        }
+        // Полоса не пуста - ставим ее в конец очереди пула, чтобы не держать поток
+        executor.execute(() -> drain(chatId));
+    }
+
+    // Извлекает следующую задачу; пустая полоса удаляется атомарно с проверкой
+    private Task next(long chatId) {
+        Task[] next = new Task[1];
+        lanes.computeIfPresent(chatId, (id, lane) -> {
+            next[0] = lane.poll();
+            return next[0] != null ? lane : null;
+        });
+        return next[0];
+    }
+
+    private void run(Task task) {
+        long startedAt = System.nanoTime();
+        laneWaitTimer.record(startedAt - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+        try {
+            task.runnable().run();
+        } catch (Exception e) {
+            log.error("Ошибка в обработчике обновления: {}", e.getMessage(), e);
+        } finally {
+            laneHandleTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            capacity.release();
+        }
+    }
+
+    // Перестает принимать обновления и ждет, пока опустеют все полосы
+    public boolean drain(Duration timeout) throws InterruptedException {
+        accepting = false;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (getQueueDepth() > 0) {
+            if (System.nanoTime() > deadline) {
+                log.warn("Не дождались обработки {} обновлений", getQueueDepth());
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        accepting = false;
+        executor.shutdown();
+    }
+
+    private record Task(Runnable runnable, long enqueuedAt) {
+    }
+}
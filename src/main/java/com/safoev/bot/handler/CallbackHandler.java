@@ -1,7 +1,14 @@
 package com.safoev.bot.handler;
 
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.bot.callback.CallbackData;
+import com.safoev.bot.callback.CallbackRoute;
+import com.safoev.bot.context.UpdateContext;
 import com.safoev.bot.menu.MenuService;
 import com.safoev.bot.menu.RegisteredUserMenu;
+import com.safoev.order.domain.dto.OrderCursor;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -16,52 +23,63 @@ public class CallbackHandler {
     private final RegisteredUserMenu registeredUserMenu;
     private final RegistrationHandler registrationHandler;
     private final OrderHandler orderHandler;
+    private final CallbackCodec callbackCodec;
 
-    public void handle(CallbackQuery callbackQuery) {
-        var data = callbackQuery.getData();
-        var chatId = callbackQuery.getFrom().getId();
-        var telegramUser = callbackQuery.getFrom();
+    // Таблица маршрутов, индекс - порядковый номер действия
+    private final CallbackRoute[] routes = new CallbackRoute[CallbackAction.values().length];
 
-        log.debug("Callback {} от {}", data, chatId);
+    @PostConstruct
+    void registerRoutes() {
+        route(CallbackAction.REGISTRATION, (query, data, context) -> registrationHandler.start(context));
+        route(CallbackAction.NON_REGISTRATION, (query, data, context) -> menuService.sendUnauthorizedMenu(context.getChatId()));
+        route(CallbackAction.CANCEL_REGISTRATION, (query, data, context) -> registrationHandler.cancel(context));
+        route(CallbackAction.NEW_ORDER, (query, data, context) -> orderHandler.startCreation(context));
+        route(CallbackAction.MY_ORDERS, (query, data, context) -> orderHandler.showMyOrders(context, sourceMessageId(query)));
+        route(CallbackAction.MY_PROFILE, (query, data, context) -> registeredUserMenu.showProfile(context, sourceMessageId(query)));
+        route(CallbackAction.HELP, (query, data, context) -> menuService.sendHelp(context.getChatId(), sourceMessageId(query)));
+        route(CallbackAction.BACK_TO_MENU, (query, data, context) -> menuService.showAuthorizedMenu(context.getChatId(), sourceMessageId(query)));
+        route(CallbackAction.VIEW_ORDER, (query, data, context) -> orderHandler.viewOrderDetails(context.getChatId(), data.arg(0)));
+        route(CallbackAction.CONFIRM_CANCEL, (query, data, context) -> orderHandler.cancelOrder(context.getChatId(), data.arg(0)));
+        route(CallbackAction.ORDERS_NEWER, (query, data, context) -> orderHandler.showOrdersPage(
+                context, sourceMessageId(query), orderCursor(data), false));
+        route(CallbackAction.ORDERS_OLDER, (query, data, context) -> orderHandler.showOrdersPage(
+                context, sourceMessageId(query), orderCursor(data), true));
 
-        // Обработка callback'ов заказов
-        if (data.startsWith("view_order_")) {
-            String orderNumber = data.substring(11);
-            orderHandler.viewOrderDetails(chatId, orderNumber);
-            return;
-        } else if (data.startsWith("confirm_cancel_")) {
-            String orderNumber = data.substring(15);
-            orderHandler.cancelOrder(chatId, orderNumber);
-            return;
+        for (CallbackAction action : CallbackAction.values()) {
+            if (routes[action.ordinal()] == null) {
+                throw new IllegalStateException("Нет обработчика для callback-действия " + action);
+            }
         }
+    }
 
-        switch (data) {
-            case "registration":
-                registrationHandler.start(chatId, telegramUser);
-                break;
-            case "non_registration":
-                menuService.sendUnauthorizedMenu(chatId);
-                break;
-            case "cancel_registration":
-                registrationHandler.cancel(chatId);
-                break;
-            case "new_order":
-                orderHandler.startCreation(chatId, telegramUser);
-                break;
-            case "my_orders":
-                orderHandler.showMyOrders(chatId, telegramUser);
-                break;
-            case "my_profile":
-                registeredUserMenu.showProfile(chatId, telegramUser);
-                break;
-            case "help":
-                menuService.sendHelp(chatId);
-                break;
-            case "back_to_menu":
-                menuService.sendAuthorizedMenu(chatId);
-                break;
-            default:
-                log.warn("Неизвестный callback: {}", data);
+    public void handle(CallbackQuery callbackQuery, UpdateContext context) {
+        var chatId = context.getChatId();
+        // На само нажатие уже ответил UpdateConsumer
+        CallbackData data = callbackCodec.decode(callbackQuery.getData());
+
+        if (data == null) {
+            // Кнопка из старого сообщения или поврежденные данные - просто показываем меню заново
+            log.warn("Неизвестный или устаревший callback: {}", callbackQuery.getData());
+            context.routedTo("callback:unknown");
+            menuService.sendMainMenu(context);
+            return;
         }
+
+        log.debug("Callback {} от {}", data.action(), chatId);
+        context.routedTo("callback:" + data.action());
+        routes[data.action().ordinal()].handle(callbackQuery, data, context);
+    }
+
+    // Сообщение, на кнопку которого нажали; null, если оно недоступно для правки
+    private static Integer sourceMessageId(CallbackQuery query) {
+        return query.getMessage() != null ? query.getMessage().getMessageId() : null;
+    }
+
+    private static OrderCursor orderCursor(CallbackData data) {
+        return OrderCursor.ofEpochMicros(data.arg(0) == 1, data.arg(1), data.arg(2), (int) data.arg(3));
+    }
+
+    private void route(CallbackAction action, CallbackRoute route) {
+        routes[action.ordinal()] = route;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,53 @@
+package com.safoev.bot.handler;
+
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationFlow;
+import com.safoev.bot.conversation.ConversationTimeoutListener;
+import com.safoev.bot.menu.MenuService;
+import com.safoev.bot.outbound.ResponseBuffer;
+import com.safoev.user.domain.service.UserService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+// Сообщения пользователю, который бросил регистрацию или оформление заказа
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationTimeoutNotifier implements ConversationTimeoutListener {
+
+    private final MessageSender messageSender;
+    private final MenuService menuService;
+    private final UserService userService;
+    private final ResponseBuffer responseBuffer;
+
+    @Override
+    public void onReminder(long chatId, Conversation conversation) {
+        String process = conversation.flow() == ConversationFlow.REGISTRATION ? "регистрацию" : "оформление заказа";
+        String prompt = switch (conversation.step()) {
+            case REG_FIRST_NAME, ORDER_NAME -> "Введите ваше имя";
+            case REG_LAST_NAME, ORDER_LAST_NAME -> "Введите фамилию (или '-' чтобы пропустить)";
+            case REG_PHONE, ORDER_PHONE -> "Введите номер телефона (например: +79991234567)";
+            case ORDER_SERVICE -> "Опишите услугу";
+        };
+        messageSender.send(chatId, "⏰ Вы не закончили " + process + ".\n\n" + prompt + " или нажмите «❌ Отмена».");
+    }
+
+    @Override
+    public void onAutoCancel(long chatId, Conversation conversation) {
+        log.info("Диалог {} в чате {} отменен по простою на шаге {}", conversation.flow(), chatId, conversation.step());
+        String text = conversation.flow() == ConversationFlow.REGISTRATION
+                ? "⌛ Регистрация отменена: вы долго не отвечали."
+                : "⌛ Оформление заказа отменено: вы долго не отвечали.";
+
+        // Уведомление и меню уходят одним сообщением
+        responseBuffer.collect(() -> {
+            messageSender.send(chatId, text);
+            if (userService.existsByTelegramId(chatId)) {
+                menuService.sendAuthorizedMenu(chatId);
+            } else {
+                menuService.sendUnauthorizedMenu(chatId);
+            }
+        });
+    }
+}
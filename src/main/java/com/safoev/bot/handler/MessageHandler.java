@@ -1,6 +1,13 @@
 package com.safoev.bot.handler;
 
+import com.safoev.bot.context.UpdateContext;
 import com.safoev.bot.menu.MenuService;
+import com.safoev.bot.routing.OnCommand;
+import com.safoev.bot.routing.OnPattern;
+import com.safoev.bot.routing.OnPrefix;
+import com.safoev.bot.routing.OnUnmatched;
+import com.safoev.bot.routing.TextRouter;
+import com.safoev.bot.routing.TextRoutes;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -8,61 +15,52 @@ import org.telegram.telegrambots.meta.api.objects.message.Message;
 
 @Slf4j
 @Component
+@TextRoutes
 @RequiredArgsConstructor
 public class MessageHandler {
 
     private final MenuService menuService;
-    private final RegistrationHandler registrationHandler;
     private final OrderHandler orderHandler;
+    private final TextRouter textRouter;
 
-    public void handle(Message message) {
-        var chatId = message.getChatId();
-        var text = message.getText();
-        var telegramUser = message.getFrom();
+    public void handle(Message message, UpdateContext context) {
+        log.debug("Сообщение от {}: {}", message.getChatId(), message.getText());
 
-        log.debug("Сообщение от {}: {}", chatId, text);
+        // Диалоги регистрации и создания заказа объявлены в своих обработчиках через @OnConversation
+        textRouter.route(message, context);
+    }
 
-        // Проверяем процессы
-        if (registrationHandler.isInProgress(chatId)) {
-            registrationHandler.handleInput(chatId, text, telegramUser);
-            return;
-        }
+    @OnCommand("/start")
+    public void start(Message message, UpdateContext context) {
+        menuService.sendMainMenu(context);
+    }
 
-        if (orderHandler.isInProgress(chatId)) {
-            orderHandler.handleDataInput(chatId, text, telegramUser);
-            return;
-        }
+    @OnCommand("/help")
+    public void help(Message message, UpdateContext context) {
+        menuService.sendHelp(message.getChatId());
+    }
 
-        // Проверяем, не является ли сообщение номером заказа (формат ORD-...)
-        if (text.startsWith("ORD-") && text.length() > 4) {
-            log.debug("Пользователь ввел номер заказа: {}", text);
-            orderHandler.viewOrderDetails(chatId, text);
-            return;
-        }
+    // Сообщение - номер заказа (формат ORD-...)
+    @OnPrefix(value = "ORD-", minLength = 5)
+    public void orderNumber(Message message, UpdateContext context) {
+        log.debug("Пользователь ввел номер заказа: {}", message.getText());
+        orderHandler.viewOrderDetails(message.getChatId(), message.getText());
+    }
 
-        // Проверяем, не является ли сообщение числом (возможно пользователь ввел номер из списка)
-        if (text.matches("\\d+")) {
-            // Если пользователь ввел просто число, просим ввести полный номер
-            menuService.sendMessage(chatId, """
-                    Для просмотра деталей заказа введите полный номер заказа.
-                    
-                    Например: ORD-202602231551-04FD
-                    
-                    Чтобы вернуться в меню, нажмите /start
-                    """);
-            return;
-        }
+    // Сообщение - число (возможно пользователь ввел номер из списка), просим ввести полный номер
+    @OnPattern("\\d+")
+    public void number(Message message, UpdateContext context) {
+        menuService.sendMessage(message.getChatId(), """
+                Для просмотра деталей заказа введите полный номер заказа.
+                
+                Например: ORD-06JST8QVW0000W
+                
+                Чтобы вернуться в меню, нажмите /start
+                """);
+    }
 
-        // Команды
-        switch (text) {
-            case "/start":
-                menuService.sendMainMenu(chatId, telegramUser);
-                break;
-            case "/help":
-                menuService.sendHelp(chatId);
-                break;
-            default:
-                menuService.sendUnknownCommand(chatId);
-        }
+    @OnUnmatched
+    public void unknown(Message message, UpdateContext context) {
+        menuService.sendUnknownCommand(message.getChatId());
     }
-}
\ No newline at end of file
+}
@@ -1,44 +1,155 @@
 package com.safoev.bot.handler;
 
+import com.safoev.bot.outbound.OutboundDispatcher;
+import com.safoev.bot.outbound.OutboundPriority;
+import com.safoev.bot.outbound.ResponseBuffer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.meta.generics.TelegramClient;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+// Отправка не блокирует поток обработчика: во время обработки обновления сообщения копятся
+// в ResponseBuffer и уходят в очередь OutboundDispatcher одним пакетом
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class MessageSender {
 
-    private final TelegramClient telegramClient;
+    private static final int MAX_TRACKED_SCREENS = 10_000;
+
+    private final ResponseBuffer responseBuffer;
+    private final OutboundDispatcher outboundDispatcher;
 
-    public void send(Long chatId, String text) {
+    // Хэш последнего показанного содержимого для сообщений-экранов, самые старые вытесняются
+    private final Map<ScreenKey, Integer> screenHashes = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ScreenKey, Integer> eldest) {
+            return size() > MAX_TRACKED_SCREENS;
+        }
+    };
+
+    public CompletableFuture<Message> send(Long chatId, String text) {
         SendMessage message = SendMessage.builder()
                 .chatId(chatId)
                 .text(text)
                 .build();
 
-        execute(message);
+        return execute(chatId, message, OutboundPriority.INTERACTIVE);
     }
 
-    public void sendWithKeyboard(Long chatId, String text, ReplyKeyboard keyboard) {
+    public CompletableFuture<Message> sendWithKeyboard(Long chatId, String text, ReplyKeyboard keyboard) {
         SendMessage message = SendMessage.builder()
                 .chatId(chatId)
                 .text(text)
                 .replyMarkup(keyboard)
                 .build();
 
-        execute(message);
+        CompletableFuture<Message> result = execute(chatId, message, OutboundPriority.INTERACTIVE);
+        if (keyboard instanceof InlineKeyboardMarkup) {
+            // Запоминаем содержимое, чтобы повторное нажатие той же кнопки не вызывало правку
+            int contentHash = Objects.hash(text, keyboard);
+            result.thenAccept(sent -> rememberScreen(chatId, sent.getMessageId(), contentHash));
+        }
+        return result;
     }
 
-    private void execute(SendMessage message) {
-        try {
-            telegramClient.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Ошибка отправки сообщения: {}", e.getMessage());
+    // Уведомления уступают очередь ответам на действия пользователя
+    public CompletableFuture<Message> sendNotification(Long chatId, String text, ReplyKeyboard keyboard) {
+        SendMessage message = SendMessage.builder()
+                .chatId(chatId)
+                .text(text)
+                .replyMarkup(keyboard)
+                .build();
+
+        return execute(chatId, message, OutboundPriority.NOTIFICATION);
+    }
+
+    // Экран, открытый кнопкой, заменяет исходное сообщение вместо отправки нового.
+    // Если содержимое не изменилось, запрос не отправляется вовсе
+    public void showScreen(Long chatId, Integer messageId, String text, InlineKeyboardMarkup keyboard) {
+        if (messageId == null) {
+            sendWithKeyboard(chatId, text, keyboard);
+            return;
+        }
+
+        int contentHash = Objects.hash(text, keyboard);
+        if (!rememberScreen(chatId, messageId, contentHash)) {
+            log.debug("Экран в сообщении {} чата {} не изменился", messageId, chatId);
+            return;
         }
+
+        EditMessageText edit = EditMessageText.builder()
+                .chatId(chatId)
+                .messageId(messageId)
+                .text(text)
+                .replyMarkup(keyboard)
+                .build();
+
+        responseBuffer.submit(chatId, edit, OutboundPriority.INTERACTIVE).whenComplete((result, error) -> {
+            if (error == null || isNotModified(error)) {
+                return;
+            }
+            if (error instanceof CancellationException) {
+                // Обработка не завершилась, правка не отправлялась - экран прежний
+                forgetScreen(chatId, messageId);
+                return;
+            }
+            // Сообщение удалено или слишком старое - показываем экран новым сообщением
+            log.warn("Не удалось изменить сообщение {} в чате {}: {}", messageId, chatId, error.getMessage());
+            forgetScreen(chatId, messageId);
+            sendWithKeyboard(chatId, text, keyboard);
+        });
+    }
+
+    // Ответ на нажатие кнопки идет мимо буфера, чтобы клиент сразу убрал индикатор загрузки
+    public void answerCallback(Long chatId, String callbackQueryId) {
+        AnswerCallbackQuery answer = AnswerCallbackQuery.builder()
+                .callbackQueryId(callbackQueryId)
+                .build();
+
+        outboundDispatcher.submit(chatId, answer, OutboundPriority.INTERACTIVE)
+                .exceptionally(error -> {
+                    log.debug("Не удалось ответить на callback {}: {}", callbackQueryId, error.getMessage());
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Message> execute(Long chatId, SendMessage message, OutboundPriority priority) {
+        return responseBuffer.submit(chatId, message, priority);
+    }
+
+    // Возвращает false, если в сообщении уже показано то же самое
+    private boolean rememberScreen(long chatId, int messageId, int contentHash) {
+        synchronized (screenHashes) {
+            Integer previous = screenHashes.put(new ScreenKey(chatId, messageId), contentHash);
+            return previous == null || previous != contentHash;
+        }
+    }
+
+    private void forgetScreen(long chatId, int messageId) {
+        synchronized (screenHashes) {
+            screenHashes.remove(new ScreenKey(chatId, messageId));
+        }
+    }
+
+    private static boolean isNotModified(Throwable error) {
+        return error instanceof TelegramApiRequestException requestError
+                && requestError.getApiResponse() != null
+                && requestError.getApiResponse().contains("message is not modified");
+    }
+
+    private record ScreenKey(long chatId, int messageId) {
     }
-}
\ No newline at end of file
+}
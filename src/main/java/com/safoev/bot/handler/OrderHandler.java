@@ -1,60 +1,67 @@
 package com.safoev.bot.handler;
 
+import com.safoev.bot.context.UpdateContext;
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationDraft;
+import com.safoev.bot.conversation.ConversationEngine;
+import com.safoev.bot.conversation.ConversationFlow;
+import com.safoev.bot.conversation.ConversationStep;
 import com.safoev.bot.keyboard.KeyboardFactory;
 import com.safoev.bot.menu.MenuService;
+import com.safoev.bot.routing.OnConversation;
+import com.safoev.bot.routing.TextRoutes;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
 import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
 import com.safoev.order.domain.dto.response.OrderDetailDto;
-import com.safoev.order.domain.dto.response.OrderListItemDto;
-import com.safoev.order.domain.dto.response.OrderResponseDto;
 import com.safoev.order.domain.enums.OrderStatus;
 import com.safoev.order.domain.exception.OrderNotFoundException;
 import com.safoev.order.domain.service.OrderService;
 import com.safoev.order.util.OrderFormatter;
+import com.safoev.order.util.OrderNumberGenerator;
+import com.safoev.outbox.domain.service.OutboxService;
 import com.safoev.user.domain.db.UserEntity;
-import com.safoev.user.domain.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
 
-import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Component
+@TextRoutes
 @RequiredArgsConstructor
 public class OrderHandler {
 
+    private static final Pattern PHONE_PATTERN = Pattern.compile("^\\+?[0-9]{10,15}$");
+
     private final MessageSender messageSender;
     private final KeyboardFactory keyboardFactory;
     private final MenuService menuService;
-    private final UserService userService;
     private final OrderService orderService;
     private final OrderFormatter orderFormatter;
+    private final OutboxService outboxService;
+    private final ConversationEngine conversationEngine;
 
-    private final Map<Long, TempOrderData> orderData = new ConcurrentHashMap<>();
-    private final Map<Long, String> orderStep = new ConcurrentHashMap<>();
-
-    public void startCreation(Long chatId, User telegramUser) {
-        String telegramUsername = telegramUser.getUserName();
+    // Страница "Моих заказов" с запасом укладывается в лимит Telegram 4096 символов
+    @Value("${telegram.bot.orders.page-size:5}")
+    private int ordersPageSize;
 
-        TempOrderData data = new TempOrderData();
-        data.telegramUsername = telegramUsername;
-        orderData.put(chatId, data);
+    public void startCreation(UpdateContext context) {
+        long chatId = context.getChatId();
+        ConversationDraft draft = ConversationDraft.of(context.getTelegramUsername());
 
-        if (userService.existsByTelegramId(chatId)) {
+        if (context.isRegistered()) {
             // Зарегистрированный пользователь
-            UserEntity user = userService.findByTelegramId(chatId);
-            data.customerName = user.getFirstName() +
-                    (user.getLastName() != null ? " " + user.getLastName() : "");
-            data.customerPhone = user.getPhone();
+            UserEntity user = context.getUser();
+            draft = draft.withFirstName(user.getFirstName())
+                    .withLastName(user.getLastName())
+                    .withPhone(user.getPhone());
 
-            orderStep.put(chatId, "ENTER_SERVICE");
+            conversationEngine.moveTo(chatId, ConversationStep.ORDER_SERVICE, draft);
 
             messageSender.sendWithKeyboard(
                     chatId,
@@ -63,7 +70,7 @@ public class OrderHandler {
             );
         } else {
             // Незарегистрированный пользователь
-            orderStep.put(chatId, "ENTER_NAME");
+            conversationEngine.moveTo(chatId, ConversationStep.ORDER_NAME, draft);
 
             messageSender.sendWithKeyboard(
                     chatId,
@@ -73,161 +80,111 @@ public class OrderHandler {
         }
     }
 
-    public void handleDataInput(Long chatId, String input, User telegramUser) {
-        if (input.equals("❌ Отмена")) {
-            cancelCreation(chatId);
+    @OnConversation(ConversationFlow.ORDER)
+    public void handleDataInput(Message message, UpdateContext context) {
+        Long chatId = message.getChatId();
+        String input = message.getText();
+        Conversation conversation = context.getConversation();
+
+        if ("❌ Отмена".equals(input)) {
+            cancelCreation(context);
             return;
         }
 
-        String currentStep = orderStep.get(chatId);
-        TempOrderData data = orderData.get(chatId);
+        ConversationDraft draft = conversation.draft();
 
         try {
-            switch (currentStep) {
-                case "ENTER_NAME":
-                    data.customerName = input;
-                    orderStep.put(chatId, "ENTER_LAST_NAME");
+            switch (conversation.step()) {
+                case ORDER_NAME:
+                    conversationEngine.moveTo(chatId, ConversationStep.ORDER_LAST_NAME, draft.withFirstName(input));
                     messageSender.send(chatId, "Введите фамилию (или '-' чтобы пропустить):");
                     break;
 
-                case "ENTER_LAST_NAME":
+                case ORDER_LAST_NAME:
                     if (!input.equals("-")) {
-                        data.customerLastName = input;
-                        data.customerName = data.customerName + " " + input;
+                        draft = draft.withLastName(input);
                     }
-                    orderStep.put(chatId, "ENTER_PHONE");
+                    conversationEngine.moveTo(chatId, ConversationStep.ORDER_PHONE, draft);
                     messageSender.send(chatId, "📱 Введите номер телефона (например: +79991234567):");
                     break;
 
-                case "ENTER_PHONE":
-                    if (!input.matches("^\\+?[0-9]{10,15}$")) {
+                case ORDER_PHONE:
+                    if (!PHONE_PATTERN.matcher(input).matches()) {
                         messageSender.send(chatId, "❌ Неверный формат телефона. Используйте +79991234567:");
                         return;
                     }
-                    data.customerPhone = input;
-                    orderStep.put(chatId, "ENTER_SERVICE");
+                    conversationEngine.moveTo(chatId, ConversationStep.ORDER_SERVICE, draft.withPhone(input));
                     messageSender.send(chatId, "📦 Опишите услугу:");
                     break;
 
-                case "ENTER_SERVICE":
-                    completeOrder(chatId, input);
+                case ORDER_SERVICE:
+                    completeOrder(context, draft, input);
                     break;
 
                 default:
-                    cancelCreation(chatId);
+                    cancelCreation(context);
             }
         } catch (Exception e) {
             log.error("Ошибка при создании заказа: {}", e.getMessage());
             messageSender.send(chatId, "❌ Произошла ошибка. Попробуйте еще раз.");
-            cancelCreation(chatId);
+            cancelCreation(context);
         }
     }
 
-    private void completeOrder(Long chatId, String serviceDescription) {
+    private void completeOrder(UpdateContext context, ConversationDraft draft, String serviceDescription) {
+        long chatId = context.getChatId();
         try {
-            TempOrderData data = orderData.get(chatId);
-
             OrderCreateRequestDto requestDto = new OrderCreateRequestDto();
-            requestDto.setTelegramUsername(data.telegramUsername);
-            requestDto.setCustomerName(data.customerName);
-            requestDto.setCustomerPhone(data.customerPhone);
+            requestDto.setTelegramUsername(draft.telegramUsername());
+            requestDto.setCustomerName(draft.fullName());
+            requestDto.setCustomerPhone(draft.phone());
             requestDto.setOrderDetails(serviceDescription);
 
-            Long userId = userService.existsByTelegramId(chatId) ? chatId : null;
-            OrderResponseDto createdOrder = orderService.createOrder(userId, data.telegramUsername, requestDto);
-
-            orderData.remove(chatId);
-            orderStep.remove(chatId);
-
-            String successMessage = String.format("""
-                    ✅ Заказ успешно создан!
-                    
-                    🆔 Номер: %s
-                    📝 Услуга: %s
-                    📊 Статус: %s
-                    """,
-                    createdOrder.getOrderNumber(),
-                    createdOrder.getOrderDetails(),
-                    createdOrder.getStatus().getDisplayName()
-            );
+            // Повторная доставка того же обновления вернет уже созданный заказ.
+            // Подтверждение OrderIngestion пишет в outbox вместе с заказом, в транзакции его пачки
+            orderService.createOrder(
+                    chatId, context.getUser(), draft.telegramUsername(), requestDto, "update:" + context.getUpdateId());
 
-            messageSender.send(chatId, successMessage);
-
-            menuService.sendAuthorizedMenu(chatId);
+            conversationEngine.finish(chatId);
             //menuService.sendMainMenu(chatId, null);
 
         } catch (Exception e) {
             log.error("Ошибка создания заказа: {}", e.getMessage());
             messageSender.send(chatId, "❌ Ошибка: " + e.getMessage());
-            cancelCreation(chatId);
+            cancelCreation(context);
         }
     }
 
-    public void showMyOrders(Long chatId, User telegramUser) {
-        Long userId = userService.existsByTelegramId(chatId) ? chatId : null;
-        String telegramUsername = telegramUser.getUserName();
-
-        List<OrderListItemDto> orders = orderService.getUserOrders(userId, telegramUsername);
-
-        StringBuilder message = new StringBuilder("📋 Ваши заказы:\n\n");
-
-        if (orders.isEmpty()) {
-            message.append("У вас пока нет заказов.");
-        } else {
-            for (int i = 0; i < orders.size(); i++) {
-                OrderListItemDto order = orders.get(i);
-                message.append(i + 1).append(". 🆔 ").append(order.getOrderNumber()).append("\n");
-                message.append("   📊 ").append(order.getStatus().getDisplayName()).append("\n");
-                message.append("   📝 ").append(order.getOrderDetails()).append("\n");
-                message.append("   📅 ").append(formatDate(order.getCreatedAt())).append("\n\n");
-            }
-            message.append("Чтобы посмотреть детали заказа, введите его номер:");
-        }
-
-        InlineKeyboardButton backButton = InlineKeyboardButton.builder()
-                .text("◀️ Назад в меню")
-                .callbackData("back_to_menu")
-                .build();
-
-        InlineKeyboardMarkup keyboard = new InlineKeyboardMarkup(
-                List.of(new InlineKeyboardRow(backButton))
-        );
+    public void showMyOrders(UpdateContext context, Integer messageId) {
+        Long telegramId = context.isRegistered() ? context.getChatId() : null;
+        OrderPage page = orderService.getFirstOrdersPage(telegramId, context.getTelegramUsername(), ordersPageSize);
+        renderOrdersPage(context.getChatId(), messageId, page);
+    }
 
-        messageSender.sendWithKeyboard(chatId, message.toString(), keyboard);
+    // Листание списка кнопками: страница заменяет текст того же сообщения
+    public void showOrdersPage(UpdateContext context, Integer messageId, OrderCursor cursor, boolean older) {
+        Long telegramId = context.isRegistered() ? context.getChatId() : null;
+        OrderPage page = orderService.getOrdersPage(telegramId, context.getTelegramUsername(), cursor, older, ordersPageSize);
+        renderOrdersPage(context.getChatId(), messageId, page);
     }
 
-    public void viewOrderDetails(Long chatId, String orderNumber) {
-        log.debug("Просмотр деталей заказа: {} для пользователя {}", orderNumber, chatId);
+    private void renderOrdersPage(Long chatId, Integer messageId, OrderPage page) {
+        messageSender.showScreen(chatId, messageId, orderFormatter.formatOrdersPage(page),
+                keyboardFactory.createOrdersPageKeyboard(page));
+    }
 
-        try {
-            OrderDetailDto order = orderService.getOrderDetails(orderNumber);
-
-            String details = String.format("""
-                🆔 Номер: %s
-                📅 Дата: %s
-                📊 Статус: %s
-                👤 Клиент: %s
-                📞 Телефон: %s
-                📝 Услуга: %s
-                """,
-                    order.getOrderNumber(),
-                    formatDate(order.getCreatedAt()),
-                    order.getStatus().getDisplayName(),
-                    order.getCustomerName(),
-                    order.getCustomerPhone(),
-                    order.getOrderDetails()
-            );
+    public void viewOrderDetails(Long chatId, String input) {
+        log.debug("Просмотр деталей заказа: {} для пользователя {}", input, chatId);
 
-            if (order.getStatus() == OrderStatus.NEW) {
-                messageSender.sendWithKeyboard(
-                        chatId,
-                        details,
-                        keyboardFactory.createConfirmCancelKeyboard(orderNumber)
-                );
-            } else {
-                messageSender.send(chatId, details);
-            }
+        // Опечатку в номере видно по контрольному символу - в базу не ходим
+        String orderNumber = OrderNumberGenerator.normalize(input);
+        if (orderNumber == null) {
+            menuService.sendMessage(chatId, "❌ Номер " + input.trim() + " введен с ошибкой. Проверьте его и попробуйте еще раз");
+            return;
+        }
 
+        try {
+            showOrderDetails(chatId, orderService.getOrderDetails(orderNumber));
         } catch (OrderNotFoundException e) {
             log.error("Заказ не найден: {}", orderNumber);
             menuService.sendMessage(chatId, "❌ Заказ с номером " + orderNumber + " не найден!");
@@ -237,36 +194,53 @@ public class OrderHandler {
         }
     }
 
-    public void cancelOrder(Long chatId, String orderNumber) {
+    public void viewOrderDetails(Long chatId, long orderId) {
+        log.debug("Просмотр деталей заказа id={} для пользователя {}", orderId, chatId);
+
         try {
-            OrderResponseDto order = orderService.updateOrderStatus(orderNumber, OrderStatus.CANCELLED);
-            messageSender.send(chatId, "✅ Заказ успешно отменен.");
-            viewOrderDetails(chatId, orderNumber);
+            showOrderDetails(chatId, orderService.getOrderDetails(chatId, orderId));
+        } catch (OrderNotFoundException e) {
+            log.error("Заказ не найден: id={}", orderId);
+            menuService.sendMessage(chatId, "❌ Заказ не найден!");
         } catch (Exception e) {
-            messageSender.send(chatId, "❌ Ошибка при отмене заказа: " + e.getMessage());
+            log.error("Ошибка просмотра заказа: {}", e.getMessage());
+            menuService.sendMessage(chatId, "❌ Произошла ошибка при просмотре заказа");
         }
     }
 
-    public boolean isInProgress(Long chatId) {
-        return orderStep.containsKey(chatId);
+    private void showOrderDetails(Long chatId, OrderDetailDto order) {
+        InlineKeyboardMarkup keyboard = orderDetailsKeyboard(order);
+        if (keyboard != null) {
+            messageSender.sendWithKeyboard(chatId, orderFormatter.formatOrderDetails(order), keyboard);
+        } else {
+            messageSender.send(chatId, orderFormatter.formatOrderDetails(order));
+        }
     }
 
-    private void cancelCreation(Long chatId) {
-        orderData.remove(chatId);
-        orderStep.remove(chatId);
-        messageSender.send(chatId, "❌ Создание заказа отменено.");
-        menuService.sendMainMenu(chatId, null);
+    // Отменить можно только новый заказ
+    private InlineKeyboardMarkup orderDetailsKeyboard(OrderDetailDto order) {
+        return order.getStatus() == OrderStatus.NEW
+                ? keyboardFactory.createConfirmCancelKeyboard(order.getId())
+                : null;
     }
 
-    private String formatDate(LocalDateTime date) {
-        if (date == null) return "неизвестно";
-        return date.format(java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"));
+    public void cancelOrder(Long chatId, long orderId) {
+        try {
+            if (!orderService.cancelOrder(chatId, orderId)) {
+                messageSender.send(chatId, "❌ Этот заказ нельзя отменить: он не найден, уже в работе или отменен.");
+                return;
+            }
+            OrderDetailDto order = orderService.getOrderDetails(chatId, orderId);
+            outboxService.enqueue(chatId, "✅ Заказ успешно отменен.\n\n" + orderFormatter.formatOrderDetails(order),
+                    orderDetailsKeyboard(order));
+        } catch (Exception e) {
+            messageSender.send(chatId, "❌ Ошибка при отмене заказа: " + e.getMessage());
+        }
     }
 
-    private static class TempOrderData {
-        String telegramUsername;
-        String customerName;
-        String customerLastName;
-        String customerPhone;
+    private void cancelCreation(UpdateContext context) {
+        conversationEngine.finish(context.getChatId());
+        messageSender.send(context.getChatId(), "❌ Создание заказа отменено.");
+        menuService.sendMainMenu(context);
     }
 }
\ No newline at end of file
@@ -1,42 +1,58 @@
 package com.safoev.bot.handler;
 
+import com.safoev.bot.context.UpdateContext;
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationDraft;
+import com.safoev.bot.conversation.ConversationEngine;
+import com.safoev.bot.conversation.ConversationFlow;
+import com.safoev.bot.conversation.ConversationStep;
 import com.safoev.bot.keyboard.KeyboardFactory;
 import com.safoev.bot.menu.MenuService;
+import com.safoev.bot.routing.OnConversation;
+import com.safoev.bot.routing.TextRoutes;
+import com.safoev.bot.template.MessageTemplate;
 import com.safoev.user.domain.dto.request.UserRegisterRequestDto;
 import com.safoev.user.domain.dto.response.UserRegisterResponseDto;
 import com.safoev.user.domain.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Component
+@TextRoutes
 @RequiredArgsConstructor
 public class RegistrationHandler {
 
+    private static final Pattern PHONE_PATTERN = Pattern.compile("^\\+?[0-9]{10,15}$");
+
+    private static final MessageTemplate REGISTRATION_COMPLETED = MessageTemplate.compile("""
+            🎉 Регистрация успешно завершена!
+            
+            Добро пожаловать, {0}!
+            
+            Выберите действие:
+            """);
+
     private final MessageSender messageSender;
     private final KeyboardFactory keyboardFactory;
     private final MenuService menuService;
     private final UserService userService;
+    private final ConversationEngine conversationEngine;
 
-    private final Map<Long, String> regStep = new ConcurrentHashMap<>();
-    private final Map<Long, UserRegisterRequestDto> regData = new ConcurrentHashMap<>();
-
-    public void start(Long chatId, User telegramUser) {
-        if (userService.existsByTelegramId(chatId)) {
+    public void start(UpdateContext context) {
+        long chatId = context.getChatId();
+        if (context.isRegistered()) {
             // Если уже зарегистрирован - показываем меню
-            menuService.sendMainMenu(chatId, telegramUser);
+            menuService.sendMainMenu(context);
             return;
         }
 
-        regStep.put(chatId, "ENTER_FIRST_NAME");
-        UserRegisterRequestDto dto = new UserRegisterRequestDto();
-        dto.setTelegramUsername(telegramUser.getUserName());
-        regData.put(chatId, dto);
+        conversationEngine.moveTo(chatId, ConversationStep.REG_FIRST_NAME,
+                ConversationDraft.of(context.getTelegramUsername()));
 
         String welcomeMessage = """
                 📝 Давайте зарегистрируемся!
@@ -54,65 +70,65 @@ public class RegistrationHandler {
         );
     }
 
-    public void handleInput(Long chatId, String input, User telegramUser) {
-        if (input.equals("❌ Отмена")) {
-            cancel(chatId);
+    @OnConversation(ConversationFlow.REGISTRATION)
+    public void handleInput(Message message, UpdateContext context) {
+        Long chatId = message.getChatId();
+        String input = message.getText();
+        Conversation conversation = context.getConversation();
+
+        if ("❌ Отмена".equals(input)) {
+            cancel(context);
             return;
         }
 
-        String step = regStep.get(chatId);
-        UserRegisterRequestDto dto = regData.get(chatId);
+        ConversationDraft draft = conversation.draft();
 
         try {
-            switch (step) {
-                case "ENTER_FIRST_NAME":
-                    dto.setFirstName(input);
-                    regStep.put(chatId, "ENTER_LAST_NAME");
+            switch (conversation.step()) {
+                case REG_FIRST_NAME:
+                    conversationEngine.moveTo(chatId, ConversationStep.REG_LAST_NAME, draft.withFirstName(input));
                     messageSender.send(chatId, "Введите фамилию (или '-' чтобы пропустить):");
                     break;
 
-                case "ENTER_LAST_NAME":
+                case REG_LAST_NAME:
                     if (!input.equals("-")) {
-                        dto.setLastName(input);
+                        draft = draft.withLastName(input);
                     }
-                    regStep.put(chatId, "ENTER_PHONE");
+                    conversationEngine.moveTo(chatId, ConversationStep.REG_PHONE, draft);
                     messageSender.send(chatId, "📱 Введите номер телефона (например: +79991234567):");
                     break;
 
-                case "ENTER_PHONE":
-                    if (!input.matches("^\\+?[0-9]{10,15}$")) {
+                case REG_PHONE:
+                    if (!PHONE_PATTERN.matcher(input).matches()) {
                         messageSender.send(chatId, "❌ Неверный формат. Попробуйте еще раз:");
                         return;
                     }
-                    dto.setPhone(input);
-                    complete(chatId);
+                    complete(context, draft.withPhone(input));
                     break;
 
                 default:
-                    cancel(chatId);
+                    cancel(context);
             }
         } catch (Exception e) {
             log.error("Ошибка регистрации: {}", e.getMessage());
             messageSender.send(chatId, "Произошла ошибка. Попробуйте еще раз.");
-            cancel(chatId);
+            cancel(context);
         }
     }
 
-    private void complete(Long chatId) {
+    private void complete(UpdateContext context, ConversationDraft draft) {
+        long chatId = context.getChatId();
         try {
-            UserRegisterRequestDto dto = regData.get(chatId);
+            UserRegisterRequestDto dto = new UserRegisterRequestDto();
+            dto.setTelegramUsername(draft.telegramUsername());
+            dto.setFirstName(draft.firstName());
+            dto.setLastName(draft.lastName());
+            dto.setPhone(draft.phone());
             UserRegisterResponseDto response = userService.registerUser(chatId, dto);
 
-            regStep.remove(chatId);
-            regData.remove(chatId);
+            conversationEngine.finish(chatId);
 
-            String successMessage = String.format("""
-                🎉 Регистрация успешно завершена!
-                
-                Добро пожаловать, %s!
-                
-                Выберите действие:
-                """, response.getFirstName());
+            String successMessage = REGISTRATION_COMPLETED.render(response.getFirstName());
 
             // После регистрации показываем приветствие (один раз)
             menuService.sendAuthorizedMenu(chatId, successMessage);
@@ -120,18 +136,13 @@ public class RegistrationHandler {
         } catch (Exception e) {
             log.error("Ошибка завершения регистрации: {}", e.getMessage());
             messageSender.send(chatId, "❌ Ошибка: " + e.getMessage());
-            cancel(chatId);
+            cancel(context);
         }
     }
 
-    public void cancel(Long chatId) {
-        regStep.remove(chatId);
-        regData.remove(chatId);
-        messageSender.send(chatId, "❌ Регистрация отменена.");
-        menuService.sendMainMenu(chatId, null);
-    }
-
-    public boolean isInProgress(Long chatId) {
-        return regStep.containsKey(chatId);
+    public void cancel(UpdateContext context) {
+        conversationEngine.finish(context.getChatId());
+        messageSender.send(context.getChatId(), "❌ Регистрация отменена.");
+        menuService.sendMainMenu(context);
     }
 }
\ No newline at end of file
@@ -1,158 +1,288 @@
 package com.safoev.bot.keyboard;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+// Реестр клавиатур. Статические меню собираются один раз при старте и отдаются одним и тем же
+// экземпляром. Для них же заранее готов JSON (outbox хранит клавиатуры в JSON).
+// Клавиатуры заказов собираются по шаблону: общие кнопки и ряды переиспользуются,
+// заново создается только кнопка с id заказа.
+// Общие клавиатуры и ряды неизменяемы (List.of и FrozenRow): случайная правка в одном обработчике
+// иначе поменяла бы меню всем чатам и разошлась бы с заготовленным JSON.
 @Component
 public class KeyboardFactory {
 
-    public InlineKeyboardMarkup createMainMenuForUnauthorized() {
-        var newOrderButton = InlineKeyboardButton.builder()
-                .text("📦 Создать заказ")
-                .callbackData("new_order")
-                .build();
-
-        var registerButton = InlineKeyboardButton.builder()
-                .text("📝 Зарегистрироваться")
-                .callbackData("registration")
+    private final CallbackCodec callbackCodec;
+    private final ObjectMapper objectMapper;
+
+    private final InlineKeyboardMarkup mainMenuForUnauthorized;
+    private final InlineKeyboardMarkup mainMenuForAuthorized;
+    private final InlineKeyboardMarkup orderOrRegister;
+    private final InlineKeyboardMarkup backToMenu;
+    private final ReplyKeyboardMarkup cancel;
+
+    // Общие ряды шаблонов
+    private final InlineKeyboardRow backToOrdersRow;
+    private final InlineKeyboardRow backToMenuRow;
+
+    private final Map<InlineKeyboardMarkup, String> staticJson = new IdentityHashMap<>();
+    private final Map<String, InlineKeyboardMarkup> staticByJson = new HashMap<>();
+
+    public KeyboardFactory(CallbackCodec callbackCodec, ObjectMapper objectMapper) {
+        this.callbackCodec = callbackCodec;
+        this.objectMapper = objectMapper;
+
+        var newOrderRow = row("📦 Создать заказ", CallbackAction.NEW_ORDER);
+        var registerRow = row("📝 Зарегистрироваться", CallbackAction.REGISTRATION);
+
+        this.mainMenuForUnauthorized = register(new FrozenMarkup(List.of(
+                newOrderRow,
+                registerRow
+        )));
+
+        this.mainMenuForAuthorized = register(new FrozenMarkup(List.of(
+                newOrderRow,
+                row("📋 Мои заказы", CallbackAction.MY_ORDERS),
+                row("👤 Мой профиль", CallbackAction.MY_PROFILE),
+                row("ℹ️ Помощь", CallbackAction.HELP)
+        )));
+
+        this.orderOrRegister = register(new FrozenMarkup(List.of(
+                newOrderRow,
+                registerRow,
+                row("◀️ Назад", CallbackAction.BACK_TO_MENU)
+        )));
+
+        this.backToMenuRow = row("◀️ Назад в меню", CallbackAction.BACK_TO_MENU);
+        this.backToMenu = register(new FrozenMarkup(List.of(
+                backToMenuRow
+        )));
+
+        this.backToOrdersRow = row("◀️ Назад к заказам", CallbackAction.MY_ORDERS);
+
+        KeyboardRow cancelRow = new KeyboardRow();
+        cancelRow.add("❌ Отмена");
+        this.cancel = ReplyKeyboardMarkup.builder()
+                .keyboard(List.of(cancelRow))
+                .resizeKeyboard(true)
                 .build();
+    }
 
-        List<InlineKeyboardRow> rows = List.of(
-                new InlineKeyboardRow(newOrderButton),
-                new InlineKeyboardRow(registerButton)
-        );
-
-        return new InlineKeyboardMarkup(rows);
+    public InlineKeyboardMarkup createMainMenuForUnauthorized() {
+        return mainMenuForUnauthorized;
     }
 
     public InlineKeyboardMarkup createMainMenuForAuthorized() {
-        var newOrderButton = InlineKeyboardButton.builder()
-                .text("📦 Создать заказ")
-                .callbackData("new_order")
-                .build();
-
-        var myOrdersButton = InlineKeyboardButton.builder()
-                .text("📋 Мои заказы")
-                .callbackData("my_orders")
-                .build();
-
-        var profileButton = InlineKeyboardButton.builder()
-                .text("👤 Мой профиль")
-                .callbackData("my_profile")
-                .build();
-
-        var helpButton = InlineKeyboardButton.builder()
-                .text("ℹ️ Помощь")
-                .callbackData("help")
-                .build();
-
-        List<InlineKeyboardRow> rows = List.of(
-                new InlineKeyboardRow(newOrderButton),
-                new InlineKeyboardRow(myOrdersButton),
-                new InlineKeyboardRow(profileButton),
-                new InlineKeyboardRow(helpButton)
-        );
-
-        return new InlineKeyboardMarkup(rows);
+        return mainMenuForAuthorized;
     }
 
     public InlineKeyboardMarkup createOrderOrRegisterKeyboard() {
-        var newOrderButton = InlineKeyboardButton.builder()
-                .text("📦 Создать заказ")
-                .callbackData("new_order")
-                .build();
-
-        var registerButton = InlineKeyboardButton.builder()
-                .text("📝 Зарегистрироваться")
-                .callbackData("registration")
-                .build();
-
-        var backButton = InlineKeyboardButton.builder()
-                .text("◀️ Назад")
-                .callbackData("back_to_menu")
-                .build();
-
-        List<InlineKeyboardRow> rows = List.of(
-                new InlineKeyboardRow(newOrderButton),
-                new InlineKeyboardRow(registerButton),
-                new InlineKeyboardRow(backButton)
-        );
-
-        return new InlineKeyboardMarkup(rows);
+        return orderOrRegister;
     }
 
     public ReplyKeyboardMarkup createCancelKeyboard() {
-        KeyboardRow row = new KeyboardRow();
-        row.add("❌ Отмена");
-
-        return ReplyKeyboardMarkup.builder()
-                .keyboard(List.of(row))
-                .resizeKeyboard(true)
-                .build();
+        return cancel;
     }
 
     public InlineKeyboardMarkup createBackToMenuKeyboard() {
-        var backButton = InlineKeyboardButton.builder()
-                .text("◀️ Назад в меню")
-                .callbackData("back_to_menu")
-                .build();
+        return backToMenu;
+    }
+
+    public InlineKeyboardMarkup createConfirmCancelKeyboard(long orderId) {
+        var confirmButton = button("✅ Да, отменить", callbackCodec.encode(CallbackAction.CONFIRM_CANCEL, orderId));
 
-        return new InlineKeyboardMarkup(List.of(new InlineKeyboardRow(backButton)));
+        return new InlineKeyboardMarkup(List.of(
+                new FrozenRow(List.of(confirmButton)),
+                backToOrdersRow
+        ));
     }
 
-    public InlineKeyboardMarkup createOrderActionsKeyboard(String orderNumber) {
-        var viewButton = InlineKeyboardButton.builder()
-                .text("👁 Детали заказа")
-                .callbackData("view_order_" + orderNumber)
-                .build();
+    // Листание "Моих заказов": кнопки соседних страниц и общий ряд возврата в меню
+    public InlineKeyboardMarkup createOrdersPageKeyboard(OrderPage page) {
+        if (page.getNewer() == null && page.getOlder() == null) {
+            return backToMenu;
+        }
+
+        InlineKeyboardButton newer = page.getNewer() != null
+                ? button("◀️ Предыдущие", cursorData(CallbackAction.ORDERS_NEWER, page.getNewer()))
+                : null;
+        InlineKeyboardButton older = page.getOlder() != null
+                ? button("Следующие ▶️", cursorData(CallbackAction.ORDERS_OLDER, page.getOlder()))
+                : null;
+        List<InlineKeyboardButton> navigation = newer == null ? List.of(older)
+                : older == null ? List.of(newer)
+                : List.of(newer, older);
+
+        return new InlineKeyboardMarkup(List.of(new FrozenRow(navigation), backToMenuRow));
+    }
 
-        return new InlineKeyboardMarkup(List.of(new InlineKeyboardRow(viewButton)));
+    // Для статических клавиатур возвращает заранее готовый JSON
+    public String toJson(InlineKeyboardMarkup keyboard) {
+        String json = staticJson.get(keyboard);
+        return json != null ? json : serialize(keyboard);
     }
 
-    public InlineKeyboardMarkup createConfirmCancelKeyboard(String orderNumber) {
-        var confirmButton = InlineKeyboardButton.builder()
-                .text("✅ Да, отменить")
-                .callbackData("confirm_cancel_" + orderNumber)
-                .build();
+    // Статическая клавиатура восстанавливается без разбора JSON
+    public InlineKeyboardMarkup fromJson(String json) {
+        InlineKeyboardMarkup keyboard = staticByJson.get(json);
+        if (keyboard != null) {
+            return keyboard;
+        }
+        try {
+            return objectMapper.readValue(json, InlineKeyboardMarkup.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Некорректный JSON клавиатуры", e);
+        }
+    }
 
-        var backButton = InlineKeyboardButton.builder()
-                .text("◀️ Назад к заказам")
-                .callbackData("my_orders")
-                .build();
+    private InlineKeyboardMarkup register(InlineKeyboardMarkup keyboard) {
+        String json = serialize(keyboard);
+        staticJson.put(keyboard, json);
+        staticByJson.put(json, keyboard);
+        return keyboard;
+    }
 
-        List<InlineKeyboardRow> rows = List.of(
-                new InlineKeyboardRow(confirmButton),
-                new InlineKeyboardRow(backButton)
-        );
+    private String serialize(InlineKeyboardMarkup keyboard) {
+        try {
+            return objectMapper.writeValueAsString(keyboard);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать клавиатуру", e);
+        }
+    }
 
-        return new InlineKeyboardMarkup(rows);
+    private String cursorData(CallbackAction action, OrderCursor cursor) {
+        return callbackCodec.encode(action, cursor.byUsername() ? 1 : 0, cursor.epochMicros(), cursor.id(), cursor.position());
     }
 
-    public InlineKeyboardMarkup createOrderDetailsBackKeyboard(String orderNumber) {
-        var backToOrdersButton = InlineKeyboardButton.builder()
-                .text("◀️ К списку заказов")
-                .callbackData("my_orders")
-                .build();
+    private InlineKeyboardRow row(String text, CallbackAction action) {
+        return new FrozenRow(List.of(button(text, callbackCodec.encode(action))));
+    }
 
-        var backToMenuButton = InlineKeyboardButton.builder()
-                .text("🏠 В меню")
-                .callbackData("back_to_menu")
+    private static InlineKeyboardButton button(String text, String callbackData) {
+        return InlineKeyboardButton.builder()
+                .text(text)
+                .callbackData(callbackData)
                 .build();
+    }
 
-        List<InlineKeyboardRow> rows = List.of(
-                new InlineKeyboardRow(backToOrdersButton),
-                new InlineKeyboardRow(backToMenuButton)
-        );
-
-        return new InlineKeyboardMarkup(rows);
+    // Ряд только для чтения. InlineKeyboardRow - это ArrayList, поэтому закрыты все методы изменения;
+    // итераторы ArrayList меняют список через них же, а subList отдается только для чтения
+    private static final class FrozenRow extends InlineKeyboardRow {
+
+        FrozenRow(Collection<InlineKeyboardButton> buttons) {
+            super(buttons);
+        }
+
+        @Override
+        public boolean add(InlineKeyboardButton button) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void add(int index, InlineKeyboardButton button) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends InlineKeyboardButton> buttons) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends InlineKeyboardButton> buttons) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public InlineKeyboardButton set(int index, InlineKeyboardButton button) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public InlineKeyboardButton remove(int index) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public boolean remove(Object button) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> buttons) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> buttons) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super InlineKeyboardButton> filter) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<InlineKeyboardButton> operator) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void sort(Comparator<? super InlineKeyboardButton> comparator) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void clear() {
+            throw unmodifiable();
+        }
+
+        @Override
+        public List<InlineKeyboardButton> subList(int fromIndex, int toIndex) {
+            return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            throw unmodifiable();
+        }
+
+        private static UnsupportedOperationException unmodifiable() {
+            return new UnsupportedOperationException("Общий ряд клавиатуры нельзя изменять");
+        }
     }
 
+    // Статическая клавиатура: список рядов неизменяем (List.of), заменить его тоже нельзя
+    private static final class FrozenMarkup extends InlineKeyboardMarkup {
 
-}
\ No newline at end of file
+        FrozenMarkup(List<InlineKeyboardRow> keyboard) {
+            super(keyboard);
+        }
+
+        @Override
+        public void setKeyboard(List<InlineKeyboardRow> keyboard) {
+            throw new UnsupportedOperationException("Общую клавиатуру нельзя изменять");
+        }
+    }
+}
@@ -1,34 +1,33 @@
 package com.safoev.bot.menu;
 
+import com.safoev.bot.context.UpdateContext;
 import com.safoev.bot.handler.MessageSender;
 import com.safoev.bot.keyboard.KeyboardFactory;
-import com.safoev.user.domain.db.UserEntity;
-import com.safoev.user.domain.service.UserService;
+import com.safoev.bot.template.MessageTemplate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.objects.User;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MenuService {
 
+    private static final MessageTemplate WELCOME_BACK =
+            MessageTemplate.compile("С возвращением, {0}! 👋\n\nВыберите действие:");
+
     private final MessageSender messageSender;
     private final KeyboardFactory keyboardFactory;
-    private final UserService userService;
 
     // Этот метод вызывается только при /start
-    public void sendMainMenu(Long chatId, User telegramUser) {
-        if (userService.existsByTelegramId(chatId)) {
+    public void sendMainMenu(UpdateContext context) {
+        if (context.isRegistered()) {
             // Пользователь зарегистрирован - показываем приветствие с именем (только при /start)
-            UserEntity user = userService.findByTelegramId(chatId);
-            String greeting = String.format("С возвращением, %s! 👋\n\nВыберите действие:",
-                    user.getFirstName());
-            sendAuthorizedMenu(chatId, greeting);
+            String greeting = WELCOME_BACK.render(context.getUser().getFirstName());
+            sendAuthorizedMenu(context.getChatId(), greeting);
         } else {
             // Пользователь не зарегистрирован
-            sendUnauthorizedMenu(chatId);
+            sendUnauthorizedMenu(context.getChatId());
         }
     }
 
@@ -41,6 +40,16 @@ public class MenuService {
         );
     }
 
+    // Возврат в меню по кнопке - правим исходное сообщение
+    public void showAuthorizedMenu(Long chatId, Integer messageId) {
+        messageSender.showScreen(
+                chatId,
+                messageId,
+                "Выберите действие:",
+                keyboardFactory.createMainMenuForAuthorized()
+        );
+    }
+
     // Перегруженный метод для случаев, когда нужно свое сообщение
     public void sendAuthorizedMenu(Long chatId, String greeting) {
         messageSender.sendWithKeyboard(
@@ -65,6 +74,10 @@ public class MenuService {
     }
 
     public void sendHelp(Long chatId) {
+        sendHelp(chatId, null);
+    }
+
+    public void sendHelp(Long chatId, Integer messageId) {
         String help = """
                 ℹ️ Помощь по боту
                 
@@ -81,8 +94,9 @@ public class MenuService {
                 /start - Главное меню
                 """;
 
-        messageSender.sendWithKeyboard(
+        messageSender.showScreen(
                 chatId,
+                messageId,
                 help,
                 keyboardFactory.createBackToMenuKeyboard()
         );
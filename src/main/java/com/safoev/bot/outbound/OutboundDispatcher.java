@@ -0,0 +1,378 @@
+package com.safoev.bot.outbound;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Асинхронная отправка запросов в Bot API с учетом лимитов Telegram:
+// общий лимит бота, лимит на личный чат и на группу. Для каждого чата одновременно
+// выполняется не больше одного запроса, поэтому сообщения приходят в порядке отправки.
+// При 429 выдерживается retry_after, при сетевых ошибках и 5xx - экспоненциальная пауза.
+// Ведра лимитов живут отдельно от очередей чатов: опустевшая очередь удаляется, а ведро
+// остается, пока не наполнится заново, иначе каждая новая пачка сообщений получала бы полный burst.
+@Slf4j
+@Component
+public class OutboundDispatcher {
+
+    private static final long RETRY_BASE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long SHUTDOWN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final TelegramClient telegramClient;
+    private final ExecutorService httpExecutor;
+    private final Thread scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<Long, ChatLane> lanes = new HashMap<>();
+    private final Cache<Long, TokenBucket> buckets;
+    private final PriorityQueue<ChatLane> ready = new PriorityQueue<>(
+            Comparator.comparingInt(ChatLane::headPriority).thenComparingLong(ChatLane::headSequence));
+    private final PriorityQueue<ChatLane> delayed = new PriorityQueue<>(
+            Comparator.comparingLong(ChatLane::getNotBefore));
+    private final TokenBucket globalBucket;
+    private final AtomicInteger queued = new AtomicInteger();
+    private long sequence;
+    private boolean accepting = true;
+    private boolean stopped;
+
+    private final double chatPerSecond;
+    private final double chatBurst;
+    private final double groupPerMinute;
+    private final int maxAttempts;
+
+    private final Counter rateLimitedCounter;
+    private final Counter failedCounter;
+
+    public OutboundDispatcher(TelegramClient telegramClient,
+                              MeterRegistry meterRegistry,
+                              @Value("${telegram.bot.outbound.global-per-second:30}") double globalPerSecond,
+                              @Value("${telegram.bot.outbound.chat-per-second:1}") double chatPerSecond,
+                              @Value("${telegram.bot.outbound.chat-burst:3}") double chatBurst,
+                              @Value("${telegram.bot.outbound.group-per-minute:20}") double groupPerMinute,
+                              @Value("${telegram.bot.outbound.max-attempts:5}") int maxAttempts,
+                              @Value("${telegram.bot.outbound.http-threads:8}") int httpThreads) {
+        this.telegramClient = telegramClient;
+        this.chatPerSecond = chatPerSecond;
+        this.chatBurst = chatBurst;
+        this.groupPerMinute = groupPerMinute;
+        this.maxAttempts = maxAttempts;
+        this.globalBucket = new TokenBucket(globalPerSecond, globalPerSecond, System.nanoTime());
+        // Через время полного наполнения ведро неотличимо от нового - его можно забыть
+        double refillSeconds = Math.max(chatBurst / chatPerSecond, 60);
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofSeconds((long) Math.ceil(refillSeconds) + 10))
+                .build();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.httpExecutor = Executors.newFixedThreadPool(httpThreads, runnable -> {
+            Thread thread = new Thread(runnable, "outbound-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("bot.outbound.queue.size", queued, AtomicInteger::get)
+                .description("Исходящие запросы, ожидающие отправки")
+                .register(meterRegistry);
+        this.rateLimitedCounter = Counter.builder("bot.outbound.rate.limited")
+                .description("Ответы 429 от Bot API")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("bot.outbound.failed")
+                .description("Запросы, не отправленные после всех попыток")
+                .register(meterRegistry);
+
+        this.scheduler = new Thread(this::runScheduler, "outbound-scheduler");
+        this.scheduler.setDaemon(true);
+        this.scheduler.start();
+    }
+
+    public <T extends Serializable> CompletableFuture<T> submit(long chatId, BotApiMethod<T> method, OutboundPriority priority) {
+        Outgoing<T> outgoing = new Outgoing<>(method, priority);
+
+        lock.lock();
+        try {
+            if (!accepting) {
+                outgoing.future.completeExceptionally(new IllegalStateException("Отправка сообщений остановлена"));
+                return outgoing.future;
+            }
+            outgoing.sequence = sequence++;
+            ChatLane lane = lanes.computeIfAbsent(chatId, this::newLane);
+            lane.queue.add(outgoing);
+            queued.incrementAndGet();
+            if (lane.state == LaneState.IDLE) {
+                schedule(lane, System.nanoTime());
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return outgoing.future;
+    }
+
+    private ChatLane newLane(long chatId) {
+        long now = System.nanoTime();
+        return new ChatLane(chatId, buckets.get(chatId, id -> newBucket(id, now)), now);
+    }
+
+    private TokenBucket newBucket(long chatId, long now) {
+        // Отрицательный chatId - группа или канал
+        return chatId < 0
+                ? new TokenBucket(groupPerMinute, groupPerMinute / 60, now)
+                : new TokenBucket(chatBurst, chatPerSecond, now);
+    }
+
+    // Вызывается под блокировкой для чата с непустой очередью и без запроса в полете
+    private void schedule(ChatLane lane, long now) {
+        long wait = Math.max(lane.waitNanos(now), lane.notBefore - now);
+        if (wait <= 0) {
+            lane.state = LaneState.READY;
+            ready.add(lane);
+        } else {
+            lane.notBefore = now + wait;
+            lane.state = LaneState.DELAYED;
+            delayed.add(lane);
+        }
+    }
+
+    private void runScheduler() {
+        lock.lock();
+        try {
+            while (!stopped) {
+                long now = System.nanoTime();
+                while (!delayed.isEmpty() && delayed.peek().notBefore - now <= 0) {
+                    ChatLane lane = delayed.poll();
+                    lane.state = LaneState.READY;
+                    ready.add(lane);
+                }
+
+                long waitNanos;
+                if (ready.isEmpty()) {
+                    waitNanos = delayed.isEmpty() ? Long.MAX_VALUE : delayed.peek().notBefore - now;
+                } else {
+                    waitNanos = globalBucket.waitNanos(now);
+                    if (waitNanos <= 0) {
+                        dispatchNext(now);
+                        continue;
+                    }
+                }
+
+                if (waitNanos == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(waitNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchNext(long now) {
+        ChatLane lane = ready.poll();
+        long laneWait = lane.waitNanos(now);
+        if (laneWait > 0) {
+            lane.notBefore = now + laneWait;
+            lane.state = LaneState.DELAYED;
+            delayed.add(lane);
+            return;
+        }
+
+        Outgoing<?> outgoing = lane.queue.peek();
+        globalBucket.take();
+        if (outgoing.chatLimited) {
+            lane.bucket.take();
+        }
+        lane.state = LaneState.IN_FLIGHT;
+        httpExecutor.execute(() -> send(lane, outgoing));
+    }
+
+    private void send(ChatLane lane, Outgoing<?> outgoing) {
+        Serializable result = null;
+        TelegramApiException error = null;
+        try {
+            result = outgoing.execute(telegramClient);
+        } catch (TelegramApiException e) {
+            error = e;
+        }
+
+        Runnable completion;
+        lock.lock();
+        try {
+            completion = finish(lane, outgoing, result, error, System.nanoTime());
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        // Future завершаем вне блокировки: в нем могут быть цепочки вызывающего кода
+        if (completion != null) {
+            completion.run();
+        }
+    }
+
+    private Runnable finish(ChatLane lane, Outgoing<?> outgoing, Serializable result, TelegramApiException error, long now) {
+        Runnable completion = null;
+
+        if (error == null) {
+            lane.queue.poll();
+            queued.decrementAndGet();
+            completion = () -> outgoing.succeed(result);
+        } else {
+            outgoing.attempts++;
+            Integer retryAfter = retryAfterSeconds(error);
+
+            if (outgoing.attempts < maxAttempts && retryAfter != null) {
+                rateLimitedCounter.increment();
+                lane.notBefore = now + TimeUnit.SECONDS.toNanos(retryAfter);
+                log.warn("Лимит Telegram для чата {}, повтор через {} с", lane.chatId, retryAfter);
+            } else if (outgoing.attempts < maxAttempts && isRetryable(error)) {
+                lane.notBefore = now + (RETRY_BASE_NANOS << (outgoing.attempts - 1));
+                log.warn("Ошибка отправки в чат {} (попытка {}): {}", lane.chatId, outgoing.attempts, error.getMessage());
+            } else {
+                lane.queue.poll();
+                queued.decrementAndGet();
+                failedCounter.increment();
+                log.error("Ошибка отправки сообщения в чат {}: {}", lane.chatId, error.getMessage());
+                completion = () -> outgoing.future.completeExceptionally(error);
+            }
+        }
+
+        if (lane.queue.isEmpty()) {
+            lane.state = LaneState.IDLE;
+            lanes.remove(lane.chatId);
+            // Отсчет простоя ведра - с последней отправки, а не с создания очереди
+            buckets.put(lane.chatId, lane.bucket);
+        } else {
+            schedule(lane, now);
+        }
+        return completion;
+    }
+
+    private static Integer retryAfterSeconds(TelegramApiException error) {
+        if (error instanceof TelegramApiRequestException requestError
+                && requestError.getParameters() != null) {
+            return requestError.getParameters().getRetryAfter();
+        }
+        return null;
+    }
+
+    // Сетевые ошибки и 5xx повторяем, остальные 4xx - нет
+    private static boolean isRetryable(TelegramApiException error) {
+        if (error instanceof TelegramApiRequestException requestError && requestError.getErrorCode() != null) {
+            return requestError.getErrorCode() >= 500;
+        }
+        return true;
+    }
+
+    // Дожидается отправки накопленных сообщений, но не дольше SHUTDOWN_TIMEOUT_NANOS
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            accepting = false;
+            long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT_NANOS;
+            while (queued.get() > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    log.warn("Остановка: не отправлено сообщений: {}", queued.get());
+                    break;
+                }
+                changed.awaitNanos(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            changed.signalAll();
+            lock.unlock();
+        }
+        httpExecutor.shutdown();
+    }
+
+    private enum LaneState {
+        IDLE, READY, DELAYED, IN_FLIGHT
+    }
+
+    private static final class ChatLane {
+        private final long chatId;
+        private final TokenBucket bucket;
+        private final ArrayDeque<Outgoing<?>> queue = new ArrayDeque<>();
+        private LaneState state = LaneState.IDLE;
+        private long notBefore;
+
+        ChatLane(long chatId, TokenBucket bucket, long now) {
+            this.chatId = chatId;
+            this.bucket = bucket;
+            this.notBefore = now;
+        }
+
+        // Ожидание токена чата для первого запроса очереди
+        long waitNanos(long now) {
+            return queue.peek().chatLimited ? bucket.waitNanos(now) : 0;
+        }
+
+        int headPriority() {
+            return queue.peek().priority.ordinal();
+        }
+
+        long headSequence() {
+            return queue.peek().sequence;
+        }
+
+        long getNotBefore() {
+            return notBefore;
+        }
+    }
+
+    private static final class Outgoing<T extends Serializable> {
+        private final BotApiMethod<T> method;
+        private final OutboundPriority priority;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        // Ответ на нажатие кнопки не сообщение в чат и лимит чата не расходует
+        private final boolean chatLimited;
+        private long sequence;
+        private int attempts;
+
+        Outgoing(BotApiMethod<T> method, OutboundPriority priority) {
+            this.method = method;
+            this.priority = priority;
+            this.chatLimited = !(method instanceof AnswerCallbackQuery);
+        }
+
+        T execute(TelegramClient client) throws TelegramApiException {
+            return client.execute(method);
+        }
+
+        @SuppressWarnings("unchecked")
+        void succeed(Serializable result) {
+            future.complete((T) result);
+        }
+    }
+}
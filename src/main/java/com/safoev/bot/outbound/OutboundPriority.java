@@ -0,0 +1,7 @@
+package com.safoev.bot.outbound;
+
+// Порядок объявления = приоритет: ответы пользователю отправляются раньше уведомлений
+public enum OutboundPriority {
+    INTERACTIVE,
+    NOTIFICATION
+}
@@ -0,0 +1,177 @@
+package com.safoev.bot.outbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+// Буфер ответов на одно обновление. Пока обработчик работает, запросы копятся в памяти потока;
+// по окончании обработки подряд идущие текстовые сообщения в один чат склеиваются
+// в одно SendMessage (клавиатура допускается только у последнего), остальное уходит как есть.
+// Если обработка завершилась исключением (в том числе откатом транзакции при фиксации),
+// накопленное не отправляется: пользователь не должен видеть ответ на несохраненное действие.
+@Slf4j
+@Component
+public class ResponseBuffer {
+
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private final OutboundDispatcher outboundDispatcher;
+    private final Counter coalescedCounter;
+    private final ThreadLocal<List<Pending<?>>> current = new ThreadLocal<>();
+
+    public ResponseBuffer(OutboundDispatcher outboundDispatcher, MeterRegistry meterRegistry) {
+        this.outboundDispatcher = outboundDispatcher;
+        this.coalescedCounter = Counter.builder("bot.outbound.coalesced")
+                .description("Запросы к Bot API, сэкономленные склейкой сообщений")
+                .register(meterRegistry);
+    }
+
+    // Выполняет обработку с буферизацией и отправляет накопленное один раз в конце,
+    // только если обработка завершилась нормально
+    public void collect(Runnable handling) {
+        if (current.get() != null) {
+            handling.run();
+            return;
+        }
+
+        List<Pending<?>> pending = new ArrayList<>();
+        current.set(pending);
+        boolean completed = false;
+        try {
+            handling.run();
+            completed = true;
+        } finally {
+            current.remove();
+            if (completed) {
+                flush(pending);
+            } else {
+                discard(pending);
+            }
+        }
+    }
+
+    public <T extends Serializable> CompletableFuture<T> submit(long chatId, BotApiMethod<T> method, OutboundPriority priority) {
+        List<Pending<?>> pending = current.get();
+        if (pending == null) {
+            return outboundDispatcher.submit(chatId, method, priority);
+        }
+
+        Pending<T> entry = new Pending<>(chatId, method, priority);
+        pending.add(entry);
+        return entry.future;
+    }
+
+    private void flush(List<Pending<?>> pending) {
+        int i = 0;
+        while (i < pending.size()) {
+            Pending<?> first = pending.get(i);
+            int end = i + 1;
+
+            if (first.method instanceof SendMessage firstMessage && isMergeable(firstMessage)) {
+                int length = firstMessage.getText().length();
+                while (end < pending.size() && firstMessage.getReplyMarkup() == null) {
+                    Pending<?> next = pending.get(end);
+                    if (next.chatId != first.chatId
+                            || next.priority != first.priority
+                            || !(next.method instanceof SendMessage nextMessage)
+                            || !isMergeable(nextMessage)
+                            || length + nextMessage.getText().length() + 2 > MAX_MESSAGE_LENGTH) {
+                        break;
+                    }
+                    length += nextMessage.getText().length() + 2;
+                    end++;
+                    // Сообщение с клавиатурой закрывает группу
+                    if (nextMessage.getReplyMarkup() != null) {
+                        break;
+                    }
+                }
+            }
+
+            if (end - i == 1) {
+                forward(first);
+            } else {
+                sendMerged(pending.subList(i, end));
+            }
+            i = end;
+        }
+    }
+
+    // Ожидающие получают CancellationException, без повторных попыток отправки
+    private void discard(List<Pending<?>> pending) {
+        if (!pending.isEmpty()) {
+            log.debug("Обработка завершилась ошибкой, ответы не отправлены: {}", pending.size());
+        }
+        CancellationException cancelled = new CancellationException("Обработка обновления не завершена");
+        for (Pending<?> entry : pending) {
+            entry.complete(null, cancelled);
+        }
+    }
+
+    private void sendMerged(List<Pending<?>> group) {
+        StringBuilder text = new StringBuilder();
+        SendMessage last = null;
+        for (Pending<?> entry : group) {
+            SendMessage message = (SendMessage) entry.method;
+            if (!text.isEmpty()) {
+                text.append(text.charAt(text.length() - 1) == '\n' ? "\n" : "\n\n");
+            }
+            text.append(message.getText());
+            last = message;
+        }
+
+        SendMessage merged = SendMessage.builder()
+                .chatId(group.get(0).chatId)
+                .text(text.toString())
+                .replyMarkup(last.getReplyMarkup())
+                .build();
+        coalescedCounter.increment(group.size() - 1);
+
+        Pending<?> head = group.get(0);
+        outboundDispatcher.submit(head.chatId, merged, head.priority).whenComplete((result, error) -> {
+            for (Pending<?> entry : group) {
+                entry.complete(result, error);
+            }
+        });
+    }
+
+    private <T extends Serializable> void forward(Pending<T> entry) {
+        outboundDispatcher.submit(entry.chatId, entry.method, entry.priority)
+                .whenComplete((result, error) -> entry.complete(result, error));
+    }
+
+    private static boolean isMergeable(SendMessage message) {
+        return message.getText() != null && message.getParseMode() == null;
+    }
+
+    private static final class Pending<T extends Serializable> {
+        private final long chatId;
+        private final BotApiMethod<T> method;
+        private final OutboundPriority priority;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Pending(long chatId, BotApiMethod<T> method, OutboundPriority priority) {
+            this.chatId = chatId;
+            this.method = method;
+            this.priority = priority;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result, Throwable error) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete((T) result);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.safoev.bot.routing;
+
+import com.safoev.bot.conversation.ConversationFlow;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Ввод в рамках диалога (регистрация, создание заказа).
+// Сигнатура метода: void (Message, UpdateContext), диалог - UpdateContext.getConversation();
+// на каждый сценарий - ровно один метод.
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OnConversation {
+    ConversationFlow value();
+}
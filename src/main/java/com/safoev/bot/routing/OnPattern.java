@@ -0,0 +1,15 @@
+package com.safoev.bot.routing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Текст целиком совпадает с регулярным выражением; проверяются по возрастанию priority
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OnPattern {
+    String value();
+
+    int priority() default 0;
+}
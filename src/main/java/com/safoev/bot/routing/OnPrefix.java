@@ -0,0 +1,16 @@
+package com.safoev.bot.routing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Текст начинается с префикса; при нескольких совпадениях побеждает самый длинный префикс
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OnPrefix {
+    String value();
+
+    // Минимальная длина всего текста
+    int minLength() default 0;
+}
@@ -0,0 +1,9 @@
+package com.safoev.bot.routing;
+
+import com.safoev.bot.context.UpdateContext;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+@FunctionalInterface
+public interface TextRoute {
+    void handle(Message message, UpdateContext context);
+}
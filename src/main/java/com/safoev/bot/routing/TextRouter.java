@@ -0,0 +1,286 @@
+package com.safoev.bot.routing;
+
+import com.safoev.bot.context.UpdateContext;
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationEngine;
+import com.safoev.bot.conversation.ConversationFlow;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Таблица маршрутов текстовых сообщений, собирается один раз при старте из аннотированных методов.
+// Порядок проверки: активный диалог чата -> команды (точное совпадение) -> самый длинный префикс -> шаблоны -> @OnUnmatched.
+// Методы связываются через LambdaMetafactory, поэтому при обработке сообщения рефлексия не используется.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TextRouter implements SmartInitializingSingleton {
+
+    private static final MethodType ROUTE_SIGNATURE = MethodType.methodType(void.class, Message.class, UpdateContext.class);
+
+    private final ApplicationContext applicationContext;
+    private final ConversationEngine conversationEngine;
+
+    private volatile RoutingTable table = RoutingTable.EMPTY;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        TextRoute[] conversations = new TextRoute[ConversationFlow.values().length];
+        Map<TextRoute, String> names = new IdentityHashMap<>();
+        Map<String, TextRoute> commands = new HashMap<>();
+        PrefixTrie prefixes = new PrefixTrie();
+        List<PatternEntry> patterns = new ArrayList<>();
+        TextRoute unmatched = null;
+        List<String> description = new ArrayList<>();
+
+        List<Object> beans = new ArrayList<>(applicationContext.getBeansWithAnnotation(TextRoutes.class).values());
+        beans.sort(Comparator.comparing(bean -> AopUtils.getTargetClass(bean).getName()));
+
+        for (Object bean : beans) {
+            Class<?> type = AopUtils.getTargetClass(bean);
+            Method[] methods = type.getMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+
+            for (Method method : methods) {
+                String name = type.getSimpleName() + "." + method.getName();
+
+                OnConversation conversation = method.getAnnotation(OnConversation.class);
+                if (conversation != null) {
+                    int flow = conversation.value().ordinal();
+                    if (conversations[flow] != null) {
+                        throw new IllegalStateException("Диалог " + conversation.value() + " объявлен дважды: " + name);
+                    }
+                    conversations[flow] = bind(bean, type, method);
+                    names.put(conversations[flow], "conversation:" + conversation.value());
+                    description.add("conversation " + conversation.value() + " -> " + name);
+                }
+
+                OnCommand command = method.getAnnotation(OnCommand.class);
+                if (command != null) {
+                    TextRoute route = bind(bean, type, method);
+                    names.put(route, "command:" + command.value()[0]);
+                    for (String value : command.value()) {
+                        if (commands.putIfAbsent(value, route) != null) {
+                            throw new IllegalStateException("Команда " + value + " объявлена дважды: " + name);
+                        }
+                        description.add("command " + value + " -> " + name);
+                    }
+                }
+
+                OnPrefix prefix = method.getAnnotation(OnPrefix.class);
+                if (prefix != null) {
+                    TextRoute route = bind(bean, type, method);
+                    names.put(route, "prefix:" + prefix.value());
+                    prefixes.add(prefix.value(), prefix.minLength(), route, name);
+                    description.add("prefix " + prefix.value() + " (min " + prefix.minLength() + ") -> " + name);
+                }
+
+                OnPattern pattern = method.getAnnotation(OnPattern.class);
+                if (pattern != null) {
+                    TextRoute route = bind(bean, type, method);
+                    names.put(route, "pattern:" + pattern.value());
+                    patterns.add(new PatternEntry(pattern.priority(), name, Pattern.compile(pattern.value()), route));
+                }
+
+                if (method.isAnnotationPresent(OnUnmatched.class)) {
+                    if (unmatched != null) {
+                        throw new IllegalStateException("@OnUnmatched объявлен больше одного раза: " + name);
+                    }
+                    unmatched = bind(bean, type, method);
+                    names.put(unmatched, "unmatched");
+                    description.add("unmatched -> " + name);
+                }
+            }
+        }
+
+        patterns.sort(Comparator.comparingInt(PatternEntry::priority).thenComparing(PatternEntry::name));
+        patterns.forEach(entry -> description.add("pattern[" + entry.priority() + "] " + entry.pattern() + " -> " + entry.name()));
+
+        table = new RoutingTable(
+                conversations,
+                Map.copyOf(commands),
+                prefixes,
+                patterns.toArray(PatternEntry[]::new),
+                unmatched,
+                names,
+                List.copyOf(description));
+
+        log.info("Маршруты текстовых сообщений:\n  {}", String.join("\n  ", description));
+    }
+
+    public void route(Message message, UpdateContext context) {
+        RoutingTable current = table;
+
+        // Диалог найден один раз при сборке контекста обновления
+        Conversation conversation = context.getConversation();
+        if (conversation != null) {
+            TextRoute route = current.conversations()[conversation.flow().ordinal()];
+            if (route != null) {
+                dispatch(current, route, message, context);
+                return;
+            }
+            log.warn("Нет обработчика для диалога {}, диалог чата {} завершен", conversation.flow(), context.getChatId());
+            conversationEngine.finish(context.getChatId());
+        }
+
+        String text = message.getText();
+        TextRoute route = text != null ? match(current, text) : null;
+        if (route == null) {
+            route = current.unmatched();
+        }
+        if (route != null) {
+            dispatch(current, route, message, context);
+        }
+    }
+
+    private static void dispatch(RoutingTable current, TextRoute route, Message message, UpdateContext context) {
+        context.routedTo(current.names().get(route));
+        route.handle(message, context);
+    }
+
+    // Описание таблицы маршрутов в порядке приоритета групп
+    public List<String> describe() {
+        return table.description();
+    }
+
+    private TextRoute match(RoutingTable current, String text) {
+        if (!text.isEmpty() && text.charAt(0) == '/') {
+            // В группах команды приходят в виде /start@BotName
+            int at = text.indexOf('@');
+            TextRoute command = current.commands().get(at > 0 ? text.substring(0, at) : text);
+            if (command != null) {
+                return command;
+            }
+        }
+
+        TextRoute prefixed = current.prefixes().match(text);
+        if (prefixed != null) {
+            return prefixed;
+        }
+
+        for (PatternEntry entry : current.patterns()) {
+            if (entry.pattern().matcher(text).matches()) {
+                return entry.route();
+            }
+        }
+        return null;
+    }
+
+    private static TextRoute bind(Object bean, Class<?> type, Method method) {
+        if (method.getReturnType() != void.class
+                || method.getParameterCount() != 2
+                || method.getParameterTypes()[0] != Message.class
+                || method.getParameterTypes()[1] != UpdateContext.class) {
+            throw new IllegalStateException("Маршрут " + type.getSimpleName() + "." + method.getName()
+                    + " должен иметь сигнатуру void (Message, UpdateContext)");
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "handle",
+                    MethodType.methodType(TextRoute.class, type),
+                    ROUTE_SIGNATURE,
+                    lookup.unreflect(method),
+                    ROUTE_SIGNATURE);
+            return (TextRoute) site.getTarget().invoke(bean);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Не удалось связать маршрут " + type.getSimpleName() + "." + method.getName(), e);
+        }
+    }
+
+    private record PatternEntry(int priority, String name, Pattern pattern, TextRoute route) {
+    }
+
+    private record RoutingTable(TextRoute[] conversations,
+                                Map<String, TextRoute> commands,
+                                PrefixTrie prefixes,
+                                PatternEntry[] patterns,
+                                TextRoute unmatched,
+                                Map<TextRoute, String> names,
+                                List<String> description) {
+
+        static final RoutingTable EMPTY = new RoutingTable(
+                new TextRoute[ConversationFlow.values().length], Map.of(), new PrefixTrie(), new PatternEntry[0], null,
+                Map.of(), List.of());
+    }
+
+    // Префиксное дерево по символам: поиск занимает O(длина префикса) независимо от числа маршрутов
+    private static final class PrefixTrie {
+        private final Node root = new Node();
+
+        void add(String prefix, int minLength, TextRoute route, String name) {
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            if (node.route != null) {
+                throw new IllegalStateException("Префикс " + prefix + " объявлен дважды: " + name);
+            }
+            node.route = route;
+            node.minLength = minLength;
+        }
+
+        TextRoute match(String text) {
+            TextRoute best = null;
+            Node node = root;
+            for (int i = 0; i < text.length(); i++) {
+                node = node.child(text.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.route != null && text.length() >= node.minLength) {
+                    best = node.route;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private TextRoute route;
+        private int minLength;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = new Node();
+            return children[children.length - 1];
+        }
+    }
+}
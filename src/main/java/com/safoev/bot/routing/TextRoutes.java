@@ -0,0 +1,12 @@
+package com.safoev.bot.routing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Бин содержит методы-маршруты текстовых сообщений (@OnCommand, @OnPrefix, ...)
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TextRoutes {
+}
@@ -0,0 +1,23 @@
+package com.safoev.bot.template;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Общие форматтеры дат для текстов бота (DateTimeFormatter потокобезопасен)
+public final class DateFormats {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final String UNKNOWN = "неизвестно";
+
+    private DateFormats() {
+    }
+
+    public static String dateTime(LocalDateTime date) {
+        return date != null ? DATE_TIME.format(date) : UNKNOWN;
+    }
+
+    public static String date(LocalDateTime date) {
+        return date != null ? DATE.format(date) : UNKNOWN;
+    }
+}
@@ -0,0 +1,97 @@
+package com.safoev.bot.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Шаблон сообщения с позиционными подстановками {0}, {1}, ...
+// Разбирается один раз при создании в список литералов и номеров аргументов,
+// рендер только дописывает куски в переиспользуемый StringBuilder потока.
+public final class MessageTemplate {
+
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    // literals[i] идет перед аргументом slots[i], последний литерал - после всех аргументов
+    private final String[] literals;
+    private final int[] slots;
+    private final int argumentCount;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, int[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+
+        int maxSlot = -1;
+        for (int slot : slots) {
+            maxSlot = Math.max(maxSlot, slot);
+        }
+        this.argumentCount = maxSlot + 1;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static MessageTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            int close = c == '{' ? pattern.indexOf('}', i) : -1;
+            if (close > i + 1 && isDigits(pattern, i + 1, close)) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                slots.add(Integer.parseInt(pattern, i + 1, close, 10));
+                i = close + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(
+                literals.toArray(String[]::new),
+                slots.stream().mapToInt(Integer::intValue).toArray()
+        );
+    }
+
+    public String render(Object... args) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        renderTo(sb, args);
+        String result = sb.toString();
+
+        // Не держим в потоке буфер, раздувшийся на одном длинном сообщении
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    public void renderTo(StringBuilder sb, Object... args) {
+        if (args.length < argumentCount) {
+            throw new IllegalArgumentException("Шаблон ожидает " + argumentCount + " аргументов, передано " + args.length);
+        }
+
+        sb.ensureCapacity(sb.length() + literalLength + slots.length * 16);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(literals[i]).append(args[slots[i]]);
+        }
+        sb.append(literals[slots.length]);
+    }
+
+    private static boolean isDigits(String pattern, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isDigit(pattern.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,8 @@
+package com.safoev.bot.timer;
+
+// Таймер, поставленный в TimingWheel
+public interface TimerHandle {
+
+    // false - таймер уже сработал или был отменен
+    boolean cancel();
+}
@@ -0,0 +1,249 @@
+package com.safoev.bot.timer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Иерархическое колесо таймеров для сотен тысяч отложенных действий по чатам.
+// Уровень 0 - wheel-size корзин по одному тику, каждый следующий уровень в wheel-size раз грубее.
+// Постановка и отмена - O(1) (вставка/удаление из двусвязного списка корзины);
+// таймеры верхних уровней переезжают на нижние, когда до срока остается меньше оборота нижнего.
+// Задачи выполняются в потоке колеса и должны быть короткими - обычно это передача в UpdateDispatcher.
+@Slf4j
+@Component
+public class TimingWheel {
+
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final int levels;
+    private final long maxTicks;
+    private final Bucket[][] wheels;
+    private final long startedAt = System.nanoTime();
+    private final Thread ticker;
+    private final Counter firedCounter;
+
+    // Номер последнего обработанного тика; все поля колеса - под монитором this
+    private long currentTick;
+    private int pending;
+    private volatile boolean running = true;
+
+    public TimingWheel(MeterRegistry meterRegistry,
+                       @Value("${telegram.bot.timer.tick:1s}") Duration tick,
+                       @Value("${telegram.bot.timer.wheel-size:64}") int wheelSize,
+                       @Value("${telegram.bot.timer.levels:4}") int levels) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("telegram.bot.timer.wheel-size должен быть степенью двойки: " + wheelSize);
+        }
+        this.tickNanos = tick.toNanos();
+        this.wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+        this.wheelMask = wheelSize - 1;
+        this.levels = levels;
+        this.maxTicks = 1L << Math.min(62, (long) wheelBits * levels);
+
+        this.wheels = new Bucket[levels][wheelSize];
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < wheelSize; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+
+        Gauge.builder("bot.timer.pending", this, TimingWheel::getPending)
+                .description("Таймеры, ожидающие срабатывания")
+                .register(meterRegistry);
+        this.firedCounter = Counter.builder("bot.timer.fired")
+                .description("Сработавшие таймеры")
+                .register(meterRegistry);
+
+        this.ticker = new Thread(this::run, "timing-wheel");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    public TimerHandle schedule(Duration delay, Runnable task) {
+        long deadlineNanos = System.nanoTime() - startedAt + Math.max(0, delay.toNanos());
+        // Округление вверх: таймер не срабатывает раньше срока
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+
+        Timer timer = new Timer(this, deadlineTick, task);
+        synchronized (this) {
+            timer.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+            place(timer);
+            pending++;
+        }
+        return timer;
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long now = System.nanoTime() - startedAt;
+            long nextTickAt = (tick + 1) * tickNanos;
+            if (now < nextTickAt) {
+                LockSupport.parkNanos(nextTickAt - now);
+                continue;
+            }
+            // После паузы (GC, перегрузка) догоняем все пропущенные тики
+            long reached = now / tickNanos;
+            while (tick < reached) {
+                tick++;
+                fire(advance(tick));
+            }
+        }
+    }
+
+    // Переходит к тику и забирает таймеры, срок которых наступил
+    private synchronized List<Timer> advance(long tick) {
+        currentTick = tick;
+
+        // Каскад: при обороте уровня переносим соответствующую корзину следующего уровня вниз
+        for (int level = 1; level < levels; level++) {
+            if (((tick >>> (wheelBits * (level - 1))) & wheelMask) != 0) {
+                break;
+            }
+            Bucket bucket = wheels[level][(int) ((tick >>> (wheelBits * level)) & wheelMask)];
+            for (Timer timer = bucket.takeAll(); timer != null; ) {
+                Timer next = timer.next;
+                timer.next = null;
+                place(timer);
+                timer = next;
+            }
+        }
+
+        Bucket bucket = wheels[0][(int) (tick & wheelMask)];
+        List<Timer> expired = new ArrayList<>();
+        for (Timer timer = bucket.takeAll(); timer != null; ) {
+            Timer next = timer.next;
+            timer.next = null;
+            timer.fired = true;
+            expired.add(timer);
+            timer = next;
+        }
+        pending -= expired.size();
+        return expired;
+    }
+
+    private void fire(List<Timer> expired) {
+        for (Timer timer : expired) {
+            try {
+                timer.task.run();
+            } catch (Exception e) {
+                log.error("Ошибка в задаче таймера: {}", e.getMessage(), e);
+            }
+        }
+        if (!expired.isEmpty()) {
+            firedCounter.increment(expired.size());
+        }
+    }
+
+    // Уровень выбирается по расстоянию до срока, корзина - по абсолютному номеру тика
+    private void place(Timer timer) {
+        long remaining = timer.deadlineTick - currentTick;
+        // Сроки дальше горизонта колеса кладутся на горизонт и переставляются при каскаде
+        long placementTick = remaining < maxTicks ? timer.deadlineTick : currentTick + maxTicks - 1;
+
+        int level = 0;
+        while (level < levels - 1 && remaining >= 1L << (wheelBits * (level + 1))) {
+            level++;
+        }
+        long slotTick = level == 0 ? Math.max(placementTick, currentTick) : placementTick;
+        wheels[level][(int) ((slotTick >>> (wheelBits * level)) & wheelMask)].add(timer);
+    }
+
+    private synchronized boolean cancel(Timer timer) {
+        if (timer.fired || timer.bucket == null) {
+            return false;
+        }
+        timer.bucket.remove(timer);
+        pending--;
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(ticker);
+        try {
+            ticker.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Timer implements TimerHandle {
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private long deadlineTick;
+        private Bucket bucket;
+        private Timer prev;
+        private Timer next;
+        private boolean fired;
+
+        private Timer(TimingWheel wheel, long deadlineTick, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+    }
+
+    // Двусвязный список таймеров одной корзины
+    private static final class Bucket {
+
+        private Timer head;
+
+        private void add(Timer timer) {
+            timer.bucket = this;
+            timer.prev = null;
+            timer.next = head;
+            if (head != null) {
+                head.prev = timer;
+            }
+            head = timer;
+        }
+
+        private void remove(Timer timer) {
+            if (timer.prev != null) {
+                timer.prev.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            }
+            timer.bucket = null;
+            timer.prev = null;
+            timer.next = null;
+        }
+
+        // Отцепляет весь список; дальше по нему идут через next
+        private Timer takeAll() {
+            Timer first = head;
+            head = null;
+            for (Timer timer = first; timer != null; timer = timer.next) {
+                timer.bucket = null;
+                timer.prev = null;
+            }
+            return first;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.safoev.bot.webhook;
+
+import com.safoev.bot.UpdateConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+@Slf4j
+@RestController
+@ConditionalOnProperty(prefix = "telegram.bot", name = "mode", havingValue = "webhook")
+public class WebhookController {
+
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final UpdateConsumer updateConsumer;
+    private final byte[] secretToken;
+
+    // Без секрета любой, кто знает адрес, может подсунуть боту обновление - такой запуск запрещен
+    public WebhookController(UpdateConsumer updateConsumer,
+                             @Value("${telegram.bot.webhook.secret-token:}") String secretToken) {
+        if (secretToken.isBlank()) {
+            throw new IllegalArgumentException("telegram.bot.webhook.secret-token обязателен в режиме webhook");
+        }
+        this.updateConsumer = updateConsumer;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("${telegram.bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> onUpdate(
+            @RequestHeader(value = SECRET_TOKEN_HEADER, required = false) String requestToken,
+            @RequestBody Update update) {
+
+        if (!isTrusted(requestToken)) {
+            log.warn("Webhook: неверный секретный токен, обновление {} отклонено", update.getUpdateId());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        // Отвечаем сразу, обработка идет в очереди чата
+        if (!updateConsumer.offer(update)) {
+            log.warn("Webhook: очередь переполнена, обновление {} будет доставлено повторно", update.getUpdateId());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        return ResponseEntity.ok().build();
+    }
+
+    private boolean isTrusted(String requestToken) {
+        if (requestToken == null) {
+            return false;
+        }
+        // Сравнение за постоянное время
+        return MessageDigest.isEqual(secretToken, requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,52 @@
+package com.safoev.bot.webhook;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+// Регистрирует webhook в Telegram после запуска приложения
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "telegram.bot", name = "mode", havingValue = "webhook")
+public class WebhookRegistrar {
+
+    private final TelegramClient telegramClient;
+
+    @Value("${telegram.bot.webhook.url:}")
+    private String webhookUrl;
+
+    // Пустым не бывает: без секрета WebhookController не запускается
+    @Value("${telegram.bot.webhook.secret-token:}")
+    private String secretToken;
+
+    @Value("${telegram.bot.webhook.register:true}")
+    private boolean register;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerWebhook() {
+        if (!register || webhookUrl.isBlank()) {
+            log.info("Регистрация webhook пропущена");
+            return;
+        }
+
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(webhookUrl)
+                .secretToken(secretToken)
+                .build();
+
+        try {
+            telegramClient.execute(setWebhook);
+            log.info("Webhook зарегистрирован: {}", webhookUrl);
+        } catch (TelegramApiException e) {
+            log.error("Не удалось зарегистрировать webhook: {}", e.getMessage());
+        }
+    }
+}
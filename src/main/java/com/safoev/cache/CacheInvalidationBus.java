@@ -0,0 +1,11 @@
+package com.safoev.cache;
+
+// Оповещение кэшей об изменении данных. Публикация внутри транзакции доставляется после ее фиксации
+// (при откате - не доставляется), вне транзакции - сразу. Реализации: local - только этот процесс,
+// postgres - еще и остальные узлы через LISTEN/NOTIFY
+public interface CacheInvalidationBus {
+
+    void publish(String topic, String payload);
+
+    void subscribe(String topic, CacheInvalidationListener listener);
+}
@@ -0,0 +1,10 @@
+package com.safoev.cache;
+
+public interface CacheInvalidationListener {
+
+    // Изменились данные, описанные payload (формат задает тот, кто публикует)
+    void invalidate(String payload);
+
+    // Часть сообщений могла потеряться (например, переподключение к БД) - сбросить все
+    void invalidateAll();
+}
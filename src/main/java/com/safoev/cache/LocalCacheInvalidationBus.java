@@ -0,0 +1,55 @@
+package com.safoev.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Доставка подписчикам в этом же процессе; годится, пока узел один
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot.cache", name = "bus", havingValue = "local", matchIfMissing = true)
+public class LocalCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final Map<String, List<CacheInvalidationListener>> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(String topic, String payload) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deliver(topic, payload);
+            return;
+        }
+        // До фиксации другие транзакции видят старые данные - сбрасывать кэш рано
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deliver(topic, payload);
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(String topic, CacheInvalidationListener listener) {
+        listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    void deliver(String topic, String payload) {
+        for (CacheInvalidationListener listener : listeners.getOrDefault(topic, List.of())) {
+            try {
+                listener.invalidate(payload);
+            } catch (Exception e) {
+                log.error("Ошибка сброса кэша {}: {}", topic, e.getMessage());
+            }
+        }
+    }
+
+    void deliverAll() {
+        listeners.values().forEach(topicListeners -> topicListeners.forEach(CacheInvalidationListener::invalidateAll));
+    }
+}
@@ -0,0 +1,109 @@
+package com.safoev.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+// Сброс кэшей на всех узлах через PostgreSQL LISTEN/NOTIFY.
+// NOTIFY выполняется в транзакции, изменившей данные: другие узлы получают его только после фиксации.
+// Слушатель держит отдельное соединение пула; после переподключения кэши сбрасываются целиком,
+// потому что оповещения, отправленные без соединения, потеряны
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "telegram.bot.cache", name = "bus", havingValue = "postgres")
+public class PostgresCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final String CHANNEL = "cache_invalidation";
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final LocalCacheInvalidationBus local = new LocalCacheInvalidationBus();
+    // Свои оповещения уже доставлены локально после фиксации
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Thread listener = new Thread(this::listen, "cache-invalidation");
+    private volatile boolean running = true;
+
+    public PostgresCacheInvalidationBus(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        listener.join(RECONNECT_DELAY_MS);
+    }
+
+    @Override
+    public void publish(String topic, String payload) {
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, nodeId + "|" + topic + "|" + payload);
+        local.publish(topic, payload);
+    }
+
+    @Override
+    public void subscribe(String topic, CacheInvalidationListener listener) {
+        local.subscribe(topic, listener);
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                local.deliverAll();
+                log.info("Подписка на сброс кэшей ({}) активна", CHANNEL);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Подписка на сброс кэшей прервана: {}. Переподключение через {} мс", e.getMessage(), RECONNECT_DELAY_MS);
+                sleep();
+            }
+        }
+    }
+
+    private void receive(String message) {
+        String[] parts = message.split("\\|", 3);
+        if (parts.length != 3) {
+            log.warn("Некорректное оповещение о сбросе кэша: {}", message);
+            return;
+        }
+        if (!nodeId.equals(parts[0])) {
+            local.deliver(parts[1], parts[2]);
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(RECONNECT_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.safoev.order.domain.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.safoev.cache.CacheInvalidationBus;
+import com.safoev.cache.CacheInvalidationListener;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
+import com.safoev.order.domain.dto.response.OrderDetailDto;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Кэш карточек заказов (по номеру и по id) и страниц "Моих заказов" (по владельцу списка).
+// Сбрасывается точечно через CacheInvalidationBus после фиксации изменения заказа, на всех узлах.
+// Защита от устаревших данных:
+// - значение, загрузка которого началась до любого сброса, в кэш не кладется (счетчик generation);
+// - транзакция, которая сама меняла заказы, кэш не читает и не пополняет.
+// DTO изменяемые, поэтому в кэш кладется копия и наружу отдается копия
+@Slf4j
+@Component
+public class OrderCache implements CacheInvalidationListener {
+
+    private static final String TOPIC = "orders";
+    // Ключ ресурса транзакции: в транзакции менялись заказы
+    private static final Object CHANGED_IN_TRANSACTION = new Object();
+    private static final int MAX_PAGES_PER_OWNER = 50;
+
+    private final CacheInvalidationBus invalidationBus;
+    private final Cache<String, OrderDetailDto> detailsByNumber;
+    private final Cache<Long, OrderDetailDto> detailsById;
+    private final Cache<PageOwner, ConcurrentMap<PageRef, OrderPage>> pagesByOwner;
+    // Владельцы закэшированных страниц по telegramId и по username: сброс находит их без обхода кэша
+    private final ConcurrentMap<Long, Set<PageOwner>> ownersByTelegramId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<PageOwner>> ownersByUsername = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    // Попадания считаются по страницам, а не по владельцам
+    private final AtomicLong pageHits = new AtomicLong();
+    private final AtomicLong pageMisses = new AtomicLong();
+
+    // Владелец списка: по нему строится первая страница (заказы пользователя или по username)
+    public record PageOwner(Long telegramId, String telegramUsername) {
+    }
+
+    // cursor == null - первая страница
+    private record PageRef(OrderCursor cursor, boolean older, int pageSize) {
+    }
+
+    public OrderCache(CacheInvalidationBus invalidationBus,
+                      MeterRegistry meterRegistry,
+                      @Value("${telegram.bot.orders.cache.details-max-size:10000}") long detailsMaxSize,
+                      @Value("${telegram.bot.orders.cache.details-ttl:10m}") Duration detailsTtl,
+                      @Value("${telegram.bot.orders.cache.pages-max-owners:10000}") long pagesMaxOwners,
+                      @Value("${telegram.bot.orders.cache.pages-ttl:2m}") Duration pagesTtl) {
+        this.invalidationBus = invalidationBus;
+        this.detailsByNumber = Caffeine.newBuilder()
+                .maximumSize(detailsMaxSize)
+                .expireAfterWrite(detailsTtl)
+                .recordStats()
+                .build();
+        this.detailsById = Caffeine.newBuilder()
+                .maximumSize(detailsMaxSize)
+                .expireAfterWrite(detailsTtl)
+                .recordStats()
+                .build();
+        this.pagesByOwner = Caffeine.newBuilder()
+                .maximumSize(pagesMaxOwners)
+                .expireAfterWrite(pagesTtl)
+                .executor(Runnable::run)
+                .removalListener((PageOwner owner, ConcurrentMap<PageRef, OrderPage> pages, RemovalCause cause) -> unindex(owner))
+                .build();
+
+        monitor(meterRegistry, detailsByNumber, "order_details");
+        monitor(meterRegistry, detailsById, "order_details_by_id");
+        Gauge.builder("bot.cache.hit_ratio", this, cache -> hitRatio(cache.pageHits.get(), cache.pageMisses.get()))
+                .tag("cache", "order_pages")
+                .description("Доля попаданий в кэш с момента запуска")
+                .register(meterRegistry);
+        Gauge.builder("bot.cache.size", pagesByOwner, Cache::estimatedSize)
+                .tag("cache", "order_pages")
+                .description("Владельцев списков в кэше")
+                .register(meterRegistry);
+        invalidationBus.subscribe(TOPIC, this);
+    }
+
+    public Optional<OrderDetailDto> getDetails(String orderNumber, Supplier<Optional<OrderDetailDto>> loader) {
+        return read(detailsByNumber, orderNumber, loader);
+    }
+
+    public Optional<OrderDetailDto> getDetails(long orderId, Supplier<Optional<OrderDetailDto>> loader) {
+        return read(detailsById, orderId, loader);
+    }
+
+    public OrderPage getPage(PageOwner owner, OrderCursor cursor, boolean older, int pageSize, Supplier<OrderPage> loader) {
+        if (changedInCurrentTransaction()) {
+            return loader.get();
+        }
+        PageRef ref = new PageRef(cursor, older, pageSize);
+        ConcurrentMap<PageRef, OrderPage> pages = pagesByOwner.getIfPresent(owner);
+        OrderPage page = pages != null ? pages.get(ref) : null;
+        if (page != null) {
+            pageHits.incrementAndGet();
+            return copy(page);
+        }
+        pageMisses.incrementAndGet();
+
+        long loadedAt = generation.get();
+        page = loader.get();
+        if (generation.get() == loadedAt) {
+            ConcurrentMap<PageRef, OrderPage> ownerPages = pagesByOwner.get(owner, o -> new ConcurrentHashMap<>());
+            // Индекс - после записи владельца в кэш: так его не снимет удаление предыдущей записи
+            index(owner);
+            if (ownerPages.size() < MAX_PAGES_PER_OWNER) {
+                OrderPage cached = copy(page);
+                ownerPages.put(ref, cached);
+                // Сброс между проверкой и записью
+                if (generation.get() != loadedAt) {
+                    ownerPages.remove(ref, cached);
+                }
+            }
+        }
+        return page;
+    }
+
+    // Заказ создан или изменен: кэши сбрасываются после фиксации текущей транзакции, до нее
+    // эта транзакция кэш не использует
+    public void orderChanged(long orderId, String orderNumber, Long ownerTelegramId, String ownerUsername) {
+        markChangedInTransaction();
+        invalidationBus.publish(TOPIC, orderId + "|" + orderNumber + "|"
+                + (ownerTelegramId != null ? ownerTelegramId : "") + "|"
+                + (ownerUsername != null ? ownerUsername : ""));
+    }
+
+    @Override
+    public void invalidate(String payload) {
+        String[] parts = payload.split("\\|", 4);
+        if (parts.length != 4) {
+            log.warn("Некорректный сброс кэша заказов: {}", payload);
+            invalidateAll();
+            return;
+        }
+        Long telegramId = parts[2].isEmpty() ? null : Long.valueOf(parts[2]);
+        String username = parts[3].isEmpty() ? null : parts[3];
+
+        // Сначала счетчик: загрузка, идущая параллельно, не положит в кэш прочитанное до изменения
+        generation.incrementAndGet();
+        detailsById.invalidate(Long.valueOf(parts[0]));
+        detailsByNumber.invalidate(parts[1]);
+        // Страницы владельцев с тем же telegramId или тем же username (первая страница строится по любому из них)
+        invalidateOwners(ownersByTelegramId, telegramId);
+        invalidateOwners(ownersByUsername, username);
+    }
+
+    @Override
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        detailsByNumber.invalidateAll();
+        detailsById.invalidateAll();
+        pagesByOwner.invalidateAll();
+    }
+
+    private <K> Optional<OrderDetailDto> read(Cache<K, OrderDetailDto> cache, K key,
+                                              Supplier<Optional<OrderDetailDto>> loader) {
+        if (changedInCurrentTransaction()) {
+            return loader.get();
+        }
+        OrderDetailDto cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(copy(cached));
+        }
+
+        long loadedAt = generation.get();
+        Optional<OrderDetailDto> loaded = loader.get();
+        // Отсутствующий заказ не кэшируется: он может появиться в любой момент
+        if (loaded.isPresent() && generation.get() == loadedAt) {
+            OrderDetailDto copy = copy(loaded.get());
+            cache.put(key, copy);
+            // Сброс между проверкой и записью
+            if (generation.get() != loadedAt) {
+                cache.asMap().remove(key, copy);
+            }
+        }
+        return loaded;
+    }
+
+    private void index(PageOwner owner) {
+        index(ownersByTelegramId, owner.telegramId(), owner);
+        index(ownersByUsername, owner.telegramUsername(), owner);
+    }
+
+    private void unindex(PageOwner owner) {
+        unindex(ownersByTelegramId, owner.telegramId(), owner);
+        unindex(ownersByUsername, owner.telegramUsername(), owner);
+    }
+
+    private static <K> void index(ConcurrentMap<K, Set<PageOwner>> index, K key, PageOwner owner) {
+        if (key == null) {
+            return;
+        }
+        index.compute(key, (k, owners) -> {
+            Set<PageOwner> result = owners != null ? owners : new HashSet<>();
+            result.add(owner);
+            return result;
+        });
+    }
+
+    private <K> void unindex(ConcurrentMap<K, Set<PageOwner>> index, K key, PageOwner owner) {
+        if (key == null) {
+            return;
+        }
+        index.computeIfPresent(key, (k, owners) -> {
+            // Владелец мог снова попасть в кэш, пока шло удаление
+            if (!pagesByOwner.asMap().containsKey(owner)) {
+                owners.remove(owner);
+            }
+            return owners.isEmpty() ? null : owners;
+        });
+    }
+
+    private <K> void invalidateOwners(ConcurrentMap<K, Set<PageOwner>> index, K key) {
+        Set<PageOwner> owners = key != null ? index.remove(key) : null;
+        if (owners != null) {
+            pagesByOwner.invalidateAll(owners);
+        }
+    }
+
+    private static OrderDetailDto copy(OrderDetailDto details) {
+        return details.toBuilder().build();
+    }
+
+    private static OrderPage copy(OrderPage page) {
+        List<OrderListItemDto> items = new ArrayList<>(page.getItems().size());
+        page.getItems().forEach(item -> items.add(item.toBuilder().build()));
+        return page.toBuilder().items(items).build();
+    }
+
+    private static void markChangedInTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(CHANGED_IN_TRANSACTION)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(CHANGED_IN_TRANSACTION, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CHANGED_IN_TRANSACTION);
+            }
+        });
+    }
+
+    private static boolean changedInCurrentTransaction() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.hasResource(CHANGED_IN_TRANSACTION);
+    }
+
+    private static void monitor(MeterRegistry meterRegistry, Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        Gauge.builder("bot.cache.hit_ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", name)
+                .description("Доля попаданий в кэш с момента запуска")
+                .register(meterRegistry);
+    }
+
+    private static double hitRatio(long hits, long misses) {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+}
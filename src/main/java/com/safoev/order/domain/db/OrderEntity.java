@@ -12,20 +12,35 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_orders_username_created", columnList = "telegram_username, created_at, id"),
+        @Index(name = "idx_orders_chat_status", columnList = "chat_id, status"),
+        @Index(name = "uk_orders_idempotency_key", columnList = "idempotency_key", unique = true)
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class OrderEntity {
 
+    // id из последовательности выдаются пулом по 50: вставки идут JDBC-пачками без запроса на каждую строку
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "order_number", unique = true, nullable = false, length = 50)
     private String orderNumber;
 
+    // Повтор создания (например, повторная доставка обновления) возвращает уже созданный заказ
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+
+    // Чат, из которого создан заказ; по нему ведется user_order_stats
+    @Column(name = "chat_id")
+    private Long chatId;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private UserEntity user;
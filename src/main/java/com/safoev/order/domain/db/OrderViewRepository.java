@@ -0,0 +1,123 @@
+package com.safoev.order.domain.db;
+
+import com.safoev.order.domain.dto.response.OrderDetailDto;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import com.safoev.order.domain.enums.OrderStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// Чтение заказов для экранов бота: выбираются только нужные колонки, строки сразу становятся DTO
+// (без сущностей, прокси user и контекста персистентности). Описание в списке обрезается в SQL,
+// поэтому до 2000 символов order_details не передаются ради 50 показанных
+@Repository
+@RequiredArgsConstructor
+public class OrderViewRepository {
+
+    public static final int LIST_DETAILS_LENGTH = 50;
+
+    private static final String LIST_COLUMNS = "o.id, o.order_number, o.status, o.created_at, " +
+            "CASE WHEN char_length(o.order_details) > " + LIST_DETAILS_LENGTH +
+            " THEN left(o.order_details, " + (LIST_DETAILS_LENGTH - 3) + ") || '...' " +
+            "ELSE o.order_details END AS order_details";
+
+    // Владелец - как в OrderRepository.cancelIfNew; подзапрос выполняется только для заказов без chat_id
+    private static final String DETAIL_COLUMNS = "o.id, o.order_number, o.telegram_username, o.customer_name, " +
+            "o.customer_phone, o.order_details, o.status, o.created_at, " +
+            "COALESCE(o.chat_id, (SELECT u.telegram_id FROM users u WHERE u.id = o.user_id)) AS owner_chat_id";
+
+    // Заказы пользователя, а если их нет - заказы, оформленные по telegram_username до регистрации.
+    // Одним запросом: вторая ветка выполняется, только если первая пуста
+    static final String FIRST_PAGE = "WITH own AS (" +
+            "SELECT " + LIST_COLUMNS + ", false AS by_username FROM orders o JOIN users u ON u.id = o.user_id " +
+            "WHERE u.telegram_id = ? ORDER BY o.created_at DESC, o.id DESC LIMIT ?) " +
+            "SELECT * FROM (SELECT * FROM own UNION ALL (" +
+            "SELECT " + LIST_COLUMNS + ", true AS by_username FROM orders o " +
+            "WHERE o.telegram_username = ? AND NOT EXISTS (SELECT 1 FROM own) " +
+            "ORDER BY o.created_at DESC, o.id DESC LIMIT ?)) page " +
+            "ORDER BY created_at DESC, id DESC";
+
+    static final String OLDER_BY_TELEGRAM_ID = "SELECT " + LIST_COLUMNS + " FROM orders o " +
+            "JOIN users u ON u.id = o.user_id " +
+            "WHERE u.telegram_id = ? AND (o.created_at, o.id) < (?, ?) " +
+            "ORDER BY o.created_at DESC, o.id DESC LIMIT ?";
+    static final String NEWER_BY_TELEGRAM_ID = "SELECT " + LIST_COLUMNS + " FROM orders o " +
+            "JOIN users u ON u.id = o.user_id " +
+            "WHERE u.telegram_id = ? AND (o.created_at, o.id) > (?, ?) " +
+            "ORDER BY o.created_at ASC, o.id ASC LIMIT ?";
+    static final String OLDER_BY_USERNAME = "SELECT " + LIST_COLUMNS + " FROM orders o " +
+            "WHERE o.telegram_username = ? AND (o.created_at, o.id) < (?, ?) " +
+            "ORDER BY o.created_at DESC, o.id DESC LIMIT ?";
+    static final String NEWER_BY_USERNAME = "SELECT " + LIST_COLUMNS + " FROM orders o " +
+            "WHERE o.telegram_username = ? AND (o.created_at, o.id) > (?, ?) " +
+            "ORDER BY o.created_at ASC, o.id ASC LIMIT ?";
+
+    static final String DETAIL_BY_NUMBER = "SELECT " + DETAIL_COLUMNS + " FROM orders o WHERE o.order_number = ?";
+    static final String DETAIL_BY_ID = "SELECT " + DETAIL_COLUMNS + " FROM orders o WHERE o.id = ?";
+
+    private static final RowMapper<OrderListItemDto> LIST_ITEM = (rs, rowNum) -> OrderListItemDto.builder()
+            .id(rs.getLong("id"))
+            .orderNumber(rs.getString("order_number"))
+            .orderDetails(rs.getString("order_details"))
+            .status(OrderStatus.valueOf(rs.getString("status")))
+            .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+            .build();
+
+    private static final RowMapper<OrderDetailDto> DETAIL = (rs, rowNum) -> OrderDetailDto.builder()
+            .id(rs.getLong("id"))
+            .orderNumber(rs.getString("order_number"))
+            .telegramUsername(rs.getString("telegram_username"))
+            .customerName(rs.getString("customer_name"))
+            .customerPhone(rs.getString("customer_phone"))
+            .orderDetails(rs.getString("order_details"))
+            .status(OrderStatus.valueOf(rs.getString("status")))
+            .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+            .ownerChatId(rs.getObject("owner_chat_id", Long.class))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Строки по убыванию; byUsername - по какой ветке построена страница
+    public record FirstPage(List<OrderListItemDto> rows, boolean byUsername) {
+    }
+
+    public FirstPage findFirstPage(Long telegramId, String telegramUsername, int limit) {
+        boolean[] byUsername = {telegramId == null};
+        List<OrderListItemDto> rows = jdbcTemplate.query(FIRST_PAGE, (rs, rowNum) -> {
+            byUsername[0] = rs.getBoolean("by_username");
+            return LIST_ITEM.mapRow(rs, rowNum);
+        }, telegramId, limit, telegramUsername, limit);
+        return new FirstPage(rows, byUsername[0]);
+    }
+
+    // Старше курсора - по убыванию, новее - по возрастанию от курсора
+    public List<OrderListItemDto> findPageByTelegramId(long telegramId, LocalDateTime createdAt, long id,
+                                                       boolean older, int limit) {
+        return jdbcTemplate.query(older ? OLDER_BY_TELEGRAM_ID : NEWER_BY_TELEGRAM_ID, LIST_ITEM,
+                telegramId, Timestamp.valueOf(createdAt), id, limit);
+    }
+
+    public List<OrderListItemDto> findPageByTelegramUsername(String telegramUsername, LocalDateTime createdAt, long id,
+                                                             boolean older, int limit) {
+        return jdbcTemplate.query(older ? OLDER_BY_USERNAME : NEWER_BY_USERNAME, LIST_ITEM,
+                telegramUsername, Timestamp.valueOf(createdAt), id, limit);
+    }
+
+    public Optional<OrderDetailDto> findDetailByOrderNumber(String orderNumber) {
+        return jdbcTemplate.query(DETAIL_BY_NUMBER, DETAIL, orderNumber).stream().findFirst();
+    }
+
+    public Optional<OrderDetailDto> findDetailById(long id) {
+        return jdbcTemplate.query(DETAIL_BY_ID, DETAIL, id).stream().findFirst();
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.safoev.order.domain.db;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UserOrderStatsRepository extends JpaRepository<UserOrderStatsEntity, Long> {
+
+    // Прибавляет приращения к счетчикам чата; строка создается при первом заказе.
+    // Строка остается заблокированной до конца транзакции
+    @Modifying
+    @Query(value = "INSERT INTO user_order_stats " +
+            "(chat_id, new_count, in_progress_count, completed_count, cancelled_count, updated_at) " +
+            "VALUES (:chatId, :newDelta, :inProgressDelta, :completedDelta, :cancelledDelta, now()) " +
+            "ON CONFLICT (chat_id) DO UPDATE SET " +
+            "new_count = user_order_stats.new_count + EXCLUDED.new_count, " +
+            "in_progress_count = user_order_stats.in_progress_count + EXCLUDED.in_progress_count, " +
+            "completed_count = user_order_stats.completed_count + EXCLUDED.completed_count, " +
+            "cancelled_count = user_order_stats.cancelled_count + EXCLUDED.cancelled_count, " +
+            "updated_at = EXCLUDED.updated_at", nativeQuery = true)
+    int addCounts(@Param("chatId") long chatId,
+                  @Param("newDelta") long newDelta,
+                  @Param("inProgressDelta") long inProgressDelta,
+                  @Param("completedDelta") long completedDelta,
+                  @Param("cancelledDelta") long cancelledDelta);
+
+    // Перезаписывает счетчики пересчитанными значениями
+    @Modifying
+    @Query(value = "INSERT INTO user_order_stats " +
+            "(chat_id, new_count, in_progress_count, completed_count, cancelled_count, updated_at) " +
+            "VALUES (:chatId, :newCount, :inProgressCount, :completedCount, :cancelledCount, now()) " +
+            "ON CONFLICT (chat_id) DO UPDATE SET " +
+            "new_count = EXCLUDED.new_count, in_progress_count = EXCLUDED.in_progress_count, " +
+            "completed_count = EXCLUDED.completed_count, cancelled_count = EXCLUDED.cancelled_count, " +
+            "updated_at = EXCLUDED.updated_at", nativeQuery = true)
+    int replaceCounts(@Param("chatId") long chatId,
+                      @Param("newCount") long newCount,
+                      @Param("inProgressCount") long inProgressCount,
+                      @Param("completedCount") long completedCount,
+                      @Param("cancelledCount") long cancelledCount);
+
+    // Заказы чата по статусам (status, count). Старые заказы без chat_id относятся к чату по пользователю
+    @Query(value = "SELECT o.status, COUNT(*) FROM orders o " +
+            "WHERE o.chat_id = :chatId " +
+            "OR (o.chat_id IS NULL AND o.user_id = (SELECT u.id FROM users u WHERE u.telegram_id = :chatId)) " +
+            "GROUP BY o.status", nativeQuery = true)
+    List<Object[]> countOrdersByStatus(@Param("chatId") long chatId);
+
+    // Чаты, у которых счетчики расходятся с таблицей orders (или строки счетчиков нет)
+    @Query(value = "WITH actual AS (" +
+            "SELECT COALESCE(o.chat_id, u.telegram_id) AS chat_id, " +
+            "COUNT(*) FILTER (WHERE o.status = 'NEW') AS new_count, " +
+            "COUNT(*) FILTER (WHERE o.status = 'IN_PROGRESS') AS in_progress_count, " +
+            "COUNT(*) FILTER (WHERE o.status = 'COMPLETED') AS completed_count, " +
+            "COUNT(*) FILTER (WHERE o.status = 'CANCELLED') AS cancelled_count " +
+            "FROM orders o LEFT JOIN users u ON u.id = o.user_id " +
+            "WHERE COALESCE(o.chat_id, u.telegram_id) IS NOT NULL " +
+            "GROUP BY 1) " +
+            "SELECT COALESCE(a.chat_id, s.chat_id) FROM actual a FULL JOIN user_order_stats s ON s.chat_id = a.chat_id " +
+            "WHERE COALESCE(a.new_count, 0) <> COALESCE(s.new_count, 0) " +
+            "OR COALESCE(a.in_progress_count, 0) <> COALESCE(s.in_progress_count, 0) " +
+            "OR COALESCE(a.completed_count, 0) <> COALESCE(s.completed_count, 0) " +
+            "OR COALESCE(a.cancelled_count, 0) <> COALESCE(s.cancelled_count, 0)", nativeQuery = true)
+    List<Long> findDriftedChatIds();
+}
@@ -0,0 +1,21 @@
+package com.safoev.order.domain.dto;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+// Позиция в списке заказов для keyset-пагинации: (created_at, id) крайнего заказа страницы.
+// byUsername - список строится по telegram_username (заказы без регистрации), иначе по пользователю;
+// position - номер этого заказа в списке (с 1), от него нумеруется соседняя страница
+public record OrderCursor(boolean byUsername, LocalDateTime createdAt, long id, int position) {
+
+    // created_at в PostgreSQL хранится с точностью до микросекунд, поэтому перевод обратим
+    public long epochMicros() {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), createdAt);
+    }
+
+    public static OrderCursor ofEpochMicros(boolean byUsername, long epochMicros, long id, int position) {
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(epochMicros, ChronoUnit.MICROS);
+        return new OrderCursor(byUsername, createdAt, id, position);
+    }
+}
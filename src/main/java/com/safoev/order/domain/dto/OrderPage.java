@@ -0,0 +1,19 @@
+package com.safoev.order.domain.dto;
+
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder(toBuilder = true)
+public class OrderPage {
+    // От новых к старым
+    private List<OrderListItemDto> items;
+    // Номер первого заказа страницы в списке (с 1)
+    private int firstPosition;
+    // Курсоры соседних страниц, null - страницы нет
+    private OrderCursor newer;
+    private OrderCursor older;
+}
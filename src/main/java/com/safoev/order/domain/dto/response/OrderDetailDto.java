@@ -7,8 +7,9 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class OrderDetailDto {
+    private Long id;
     private String orderNumber;
     private String telegramUsername;
     private String customerName;
@@ -16,4 +17,6 @@ public class OrderDetailDto {
     private String orderDetails;
     private OrderStatus status;
     private LocalDateTime createdAt;
+    // Чат владельца: chat_id, у старых заказов без него - Telegram ID пользователя
+    private Long ownerChatId;
 }
\ No newline at end of file
@@ -7,8 +7,9 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class OrderListItemDto {
+    private Long id;
     private String orderNumber;
     private String orderDetails;
     private OrderStatus status;
@@ -0,0 +1,240 @@
+package com.safoev.order.domain.service;
+
+import com.safoev.bot.keyboard.KeyboardFactory;
+import com.safoev.order.domain.cache.OrderCache;
+import com.safoev.order.domain.db.OrderEntity;
+import com.safoev.order.domain.db.OrderRepository;
+import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
+import com.safoev.order.domain.enums.OrderStatus;
+import com.safoev.order.domain.exception.OrderCreationException;
+import com.safoev.order.util.OrderFormatter;
+import com.safoev.order.util.OrderNumberGenerator;
+import com.safoev.outbox.domain.service.OutboxService;
+import com.safoev.user.domain.db.UserEntity;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Групповая запись заказов: заказы, пришедшие в пределах max-delay друг от друга,
+// вставляются одной пачкой (id из последовательности, JDBC batch) и фиксируются одним коммитом.
+// Каждый вызывающий получает свой заказ через CompletableFuture после фиксации.
+// Повтор с тем же ключом идемпотентности возвращает уже созданный заказ.
+// Подтверждение клиенту пишется в outbox в той же транзакции, что и сам заказ.
+@Slf4j
+@Component
+public class OrderIngestion {
+
+    private final OrderRepository orderRepository;
+    private final OrderNumberGenerator orderNumberGenerator;
+    private final UserOrderStatsService userOrderStatsService;
+    private final OrderCache orderCache;
+    private final OutboxService outboxService;
+    private final OrderFormatter orderFormatter;
+    private final KeyboardFactory keyboardFactory;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<PendingOrder> queue;
+    private final Thread writer = new Thread(this::run, "order-ingest");
+    private volatile boolean running = true;
+
+    private final DistributionSummary batchSizes;
+    private final Timer commitTimer;
+
+    public OrderIngestion(OrderRepository orderRepository,
+                          OrderNumberGenerator orderNumberGenerator,
+                          UserOrderStatsService userOrderStatsService,
+                          OrderCache orderCache,
+                          OutboxService outboxService,
+                          OrderFormatter orderFormatter,
+                          KeyboardFactory keyboardFactory,
+                          EntityManager entityManager,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${telegram.bot.orders.ingest.batch-size:50}") int batchSize,
+                          @Value("${telegram.bot.orders.ingest.max-delay:5ms}") Duration maxDelay,
+                          @Value("${telegram.bot.orders.ingest.queue-capacity:1000}") int queueCapacity) {
+        this.orderRepository = orderRepository;
+        this.orderNumberGenerator = orderNumberGenerator;
+        this.userOrderStatsService = userOrderStatsService;
+        this.orderCache = orderCache;
+        this.outboxService = outboxService;
+        this.orderFormatter = orderFormatter;
+        this.keyboardFactory = keyboardFactory;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.batchSizes = DistributionSummary.builder("bot.orders.ingest.batch")
+                .description("Заказов в одном коммите")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("bot.orders.ingest.commit")
+                .description("Запись и фиксация пачки заказов")
+                .register(meterRegistry);
+        Gauge.builder("bot.orders.ingest.queue", queue, BlockingQueue::size)
+                .description("Заказы, ожидающие записи")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // user - зарегистрированный пользователь или null; idempotencyKey - например, id обновления Telegram
+    public CompletableFuture<OrderEntity> submit(long chatId, UserEntity user, String telegramUsername,
+                                                 OrderCreateRequestDto request, String idempotencyKey) {
+        PendingOrder pending = new PendingOrder(chatId, user != null ? user.getId() : null,
+                user != null ? user.getTelegramId() : null, telegramUsername,
+                request, idempotencyKey, new CompletableFuture<>());
+        if (!running) {
+            pending.result().completeExceptionally(new OrderCreationException("Прием заказов остановлен"));
+        } else if (!queue.offer(pending)) {
+            pending.result().completeExceptionally(new OrderCreationException("Слишком много заказов, попробуйте позже"));
+        }
+        return pending.result();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void run() {
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        // После остановки дописываем то, что уже принято
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                break;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        batch.forEach(p -> p.result().completeExceptionally(new OrderCreationException("Прием заказов остановлен")));
+    }
+
+    // Первый заказ открывает окно max-delay; пачка закрывается по окну или по batch-size
+    private void collect(List<PendingOrder> batch) throws InterruptedException {
+        PendingOrder first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingOrder next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<PendingOrder> batch) {
+        Map<PendingOrder, OrderEntity> saved;
+        try {
+            saved = commitTimer.record(() -> transactionTemplate.execute(status -> insert(batch)));
+        } catch (Exception e) {
+            // Один плохой заказ (например, гонка по ключу идемпотентности) не должен ронять остальных:
+            // пишем пачку по одному
+            log.warn("Пачка заказов ({}) не записана, пишем по одному: {}", batch.size(), e.getMessage());
+            batch.forEach(this::writeSingle);
+            return;
+        }
+        batchSizes.record(batch.size());
+        batch.forEach(p -> p.result().complete(saved.get(p)));
+    }
+
+    private void writeSingle(PendingOrder pending) {
+        try {
+            Map<PendingOrder, OrderEntity> saved = transactionTemplate.execute(status -> insert(List.of(pending)));
+            batchSizes.record(1);
+            pending.result().complete(saved.get(pending));
+        } catch (Exception e) {
+            log.error("Ошибка записи заказа: {}", e.getMessage());
+            pending.result().completeExceptionally(new OrderCreationException("Не удалось создать заказ: " + e.getMessage(), e));
+        }
+    }
+
+    private Map<PendingOrder, OrderEntity> insert(List<PendingOrder> batch) {
+        // Один запрос на всю пачку: какие заказы уже созданы раньше
+        List<String> keys = batch.stream().map(PendingOrder::idempotencyKey).filter(Objects::nonNull).toList();
+        Map<String, OrderEntity> byKey = keys.isEmpty() ? new HashMap<>() : orderRepository.findByIdempotencyKeyIn(keys).stream()
+                .collect(Collectors.toMap(OrderEntity::getIdempotencyKey, o -> o, (a, b) -> a, HashMap::new));
+
+        Map<PendingOrder, OrderEntity> saved = new IdentityHashMap<>();
+        SortedMap<Long, Integer> createdByChat = new TreeMap<>();
+        for (PendingOrder pending : batch) {
+            OrderEntity order = pending.idempotencyKey() != null ? byKey.get(pending.idempotencyKey()) : null;
+            if (order == null) {
+                order = OrderEntity.builder()
+                        .orderNumber(orderNumberGenerator.next())
+                        .idempotencyKey(pending.idempotencyKey())
+                        .chatId(pending.chatId())
+                        // Ссылка без запроса к users: id известен из контекста обновления
+                        .user(pending.userId() != null ? entityManager.getReference(UserEntity.class, pending.userId()) : null)
+                        .telegramUsername(pending.telegramUsername())
+                        .customerName(pending.request().getCustomerName())
+                        .customerPhone(pending.request().getCustomerPhone())
+                        .orderDetails(pending.request().getOrderDetails())
+                        .status(OrderStatus.NEW)
+                        .build();
+                entityManager.persist(order);
+                createdByChat.merge(pending.chatId(), 1, Integer::sum);
+                orderCache.orderChanged(order.getId(), order.getOrderNumber(), pending.telegramId(), pending.telegramUsername());
+                // Повтор по ключу сюда не попадает: подтверждение уже записано вместе с заказом
+                outboxService.enqueue(pending.chatId(), orderFormatter.formatOrderCreated(order),
+                        keyboardFactory.createMainMenuForAuthorized());
+                if (pending.idempotencyKey() != null) {
+                    byKey.put(pending.idempotencyKey(), order);
+                }
+            }
+            saved.put(pending, order);
+        }
+        entityManager.flush();
+        // Счетчики профиля - в той же транзакции, что и заказы
+        userOrderStatsService.ordersCreated(createdByChat);
+        return saved;
+    }
+
+    private record PendingOrder(long chatId, Long userId, Long telegramId, String telegramUsername,
+                                OrderCreateRequestDto request, String idempotencyKey,
+                                CompletableFuture<OrderEntity> result) {
+    }
+}
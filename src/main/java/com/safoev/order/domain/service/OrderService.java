@@ -1,8 +1,12 @@
 package com.safoev.order.domain.service;
 
+import com.safoev.order.domain.cache.OrderCache;
+import com.safoev.order.domain.cache.OrderCache.PageOwner;
 import com.safoev.order.domain.db.OrderEntity;
 import com.safoev.order.domain.db.OrderRepository;
-import com.safoev.order.domain.dto.OrderStatistics;
+import com.safoev.order.domain.db.OrderViewRepository;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
 import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
 import com.safoev.order.domain.dto.response.OrderDetailDto;
 import com.safoev.order.domain.dto.response.OrderListItemDto;
@@ -11,149 +15,177 @@ import com.safoev.order.domain.enums.OrderStatus;
 import com.safoev.order.domain.exception.OrderCreationException;
 import com.safoev.order.domain.exception.OrderNotFoundException;
 import com.safoev.user.domain.db.UserEntity;
-import com.safoev.user.domain.db.UserRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class OrderService {
 
     private final OrderRepository orderRepository;
-    private final UserRepository userRepository;
+    private final OrderViewRepository orderViewRepository;
+    private final OrderCache orderCache;
+    private final OrderIngestion orderIngestion;
+    private final UserOrderStatsService userOrderStatsService;
+    private final Duration createTimeout;
+
+    public OrderService(OrderRepository orderRepository,
+                        OrderViewRepository orderViewRepository,
+                        OrderCache orderCache,
+                        OrderIngestion orderIngestion,
+                        UserOrderStatsService userOrderStatsService,
+                        @Value("${telegram.bot.orders.ingest.timeout:10s}") Duration createTimeout) {
+        this.orderRepository = orderRepository;
+        this.orderViewRepository = orderViewRepository;
+        this.orderCache = orderCache;
+        this.orderIngestion = orderIngestion;
+        this.userOrderStatsService = userOrderStatsService;
+        this.createTimeout = createTimeout;
+    }
 
-    @Transactional
-    public OrderResponseDto createOrder(Long userId, String telegramUsername, OrderCreateRequestDto requestDto) {
-        log.info("Создание заказа. UserId: {}, TelegramUsername: {}", userId, telegramUsername);
+    // Заказ пишется группой с параллельными заказами в отдельной транзакции (OrderIngestion),
+    // поэтому метод не участвует в транзакции вызывающего и ждет фиксации своей пачки
+    public OrderResponseDto createOrder(long chatId, UserEntity user, String telegramUsername,
+                                        OrderCreateRequestDto requestDto, String idempotencyKey) {
+        log.info("Создание заказа. UserId: {}, TelegramUsername: {}", user != null ? user.getTelegramId() : null, telegramUsername);
 
         try {
-            String orderNumber = generateOrderNumber();
-
-            UserEntity user = null;
-            if (userId != null) {
-                user = userRepository.findByTelegramId(userId).orElse(null);
-            }
-
-            OrderEntity order = OrderEntity.builder()
-                    .orderNumber(orderNumber)
-                    .user(user)
-                    .telegramUsername(telegramUsername)
-                    .customerName(requestDto.getCustomerName())
-                    .customerPhone(requestDto.getCustomerPhone())
-                    .orderDetails(requestDto.getOrderDetails())
-                    .status(OrderStatus.NEW)
-                    .build();
-
-            OrderEntity savedOrder = orderRepository.save(order);
+            OrderEntity savedOrder = orderIngestion.submit(chatId, user, telegramUsername, requestDto, idempotencyKey)
+                    .get(createTimeout.toMillis(), TimeUnit.MILLISECONDS);
             log.info("Заказ создан. Номер: {}", savedOrder.getOrderNumber());
 
             return mapToResponseDto(savedOrder);
 
-        } catch (Exception e) {
-            log.error("Ошибка создания заказа: {}", e.getMessage());
-            throw new OrderCreationException("Не удалось создать заказ: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrderCreationException("Не удалось создать заказ: прервано", e);
+        } catch (ExecutionException e) {
+            log.error("Ошибка создания заказа: {}", e.getCause().getMessage());
+            throw e.getCause() instanceof OrderCreationException oce ? oce
+                    : new OrderCreationException("Не удалось создать заказ: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            // Пачка могла зафиксироваться, а ответ - задержаться: сначала ищем заказ по ключу
+            if (idempotencyKey != null) {
+                List<OrderEntity> committed = orderRepository.findByIdempotencyKeyIn(List.of(idempotencyKey));
+                if (!committed.isEmpty()) {
+                    log.warn("Ответ о записи заказа не дождались за {}, заказ {} найден по ключу",
+                            createTimeout, committed.get(0).getOrderNumber());
+                    return mapToResponseDto(committed.get(0));
+                }
+            }
+            log.error("Заказ не записан за {}", createTimeout);
+            throw new OrderCreationException("Не удалось создать заказ: превышено время ожидания", e);
         }
     }
 
-    @Transactional(readOnly = true)
     public OrderDetailDto getOrderDetails(String orderNumber) {
         log.debug("Получение деталей заказа: {}", orderNumber);
 
-        OrderEntity order = orderRepository.findByOrderNumber(orderNumber)
+        return orderCache.getDetails(orderNumber, () -> orderViewRepository.findDetailByOrderNumber(orderNumber))
                 .orElseThrow(() -> new OrderNotFoundException("Заказ не найден: " + orderNumber));
-
-        return OrderDetailDto.builder()
-                .orderNumber(order.getOrderNumber())
-                .telegramUsername(order.getTelegramUsername())
-                .customerName(order.getCustomerName())
-                .customerPhone(order.getCustomerPhone())
-                .orderDetails(order.getOrderDetails())
-                .status(order.getStatus())
-                .createdAt(order.getCreatedAt())
-                .build();
     }
 
-    @Transactional(readOnly = true)
-    public List<OrderListItemDto> getUserOrders(Long userId, String telegramUsername) {
-        log.debug("Получение заказов. UserId: {}, TelegramUsername: {}", userId, telegramUsername);
+    // По id (из кнопки) - только заказ этого чата: id идут подряд, и подделанный callback с соседним id
+    // не должен показать чужие данные. Чужой заказ неотличим от отсутствующего
+    public OrderDetailDto getOrderDetails(long chatId, long orderId) {
+        log.debug("Получение деталей заказа по id: {} для чата {}", orderId, chatId);
 
-        List<OrderEntity> orders;
+        return orderCache.getDetails(orderId, () -> orderViewRepository.findDetailById(orderId))
+                .filter(order -> order.getOwnerChatId() != null && order.getOwnerChatId() == chatId)
+                .orElseThrow(() -> new OrderNotFoundException("Заказ не найден: " + orderId));
+    }
 
-        if (userId != null) {
-            // Зарегистрированный пользователь - ищем по userId
-            orders = orderRepository.findByUserIdOrderByCreatedAtDesc(userId);
-            log.debug("Найдено заказов по userId {}: {}", userId, orders.size());
-        } else {
-            // Незарегистрированный пользователь - ищем по telegramUsername
-            orders = orderRepository.findByTelegramUsernameOrderByCreatedAtDesc(telegramUsername);
-            log.debug("Найдено заказов по telegramUsername {}: {}", telegramUsername, orders.size());
-        }
+    // Первая страница "Моих заказов". Зарегистрированному пользователю показываем его заказы,
+    // а если их нет - заказы, оформленные по telegramUsername до регистрации (один запрос)
+    public OrderPage getFirstOrdersPage(Long telegramId, String telegramUsername, int pageSize) {
+        log.debug("Первая страница заказов. TelegramId: {}, TelegramUsername: {}", telegramId, telegramUsername);
 
-        // Если заказы не найдены, попробуем найти все заказы для этого пользователя
-        if (orders.isEmpty() && userId != null) {
-            orders = orderRepository.findByTelegramUsernameOrderByCreatedAtDesc(telegramUsername);
-            log.debug("Повторный поиск по telegramUsername {}: {}", telegramUsername, orders.size());
-        }
-
-        return orders.stream()
-                .map(this::mapToListItemDto)
-                .collect(Collectors.toList());
+        return orderCache.getPage(new PageOwner(telegramId, telegramUsername), null, false, pageSize,
+                () -> loadFirstOrdersPage(telegramId, telegramUsername, pageSize));
     }
 
-    @Transactional(readOnly = true)
-    public OrderStatistics getUserStatistics(Long userId, String telegramUsername) {
-        log.debug("Получение статистики. UserId: {}, TelegramUsername: {}", userId, telegramUsername);
+    // Соседняя страница относительно курсора: older - к более старым заказам, иначе к более новым
+    public OrderPage getOrdersPage(Long telegramId, String telegramUsername, OrderCursor cursor, boolean older, int pageSize) {
+        log.debug("Страница заказов. TelegramId: {}, курсор: {}, к старым: {}", telegramId, cursor, older);
+
+        return orderCache.getPage(new PageOwner(telegramId, telegramUsername), cursor, older, pageSize,
+                () -> loadOrdersPage(telegramId, telegramUsername, cursor, older, pageSize));
+    }
 
-        long totalOrders;
-        long activeOrders;
-        long completedOrders;
+    private OrderPage loadFirstOrdersPage(Long telegramId, String telegramUsername, int pageSize) {
+        OrderViewRepository.FirstPage first = orderViewRepository.findFirstPage(telegramId, telegramUsername, pageSize + 1);
+        return olderPage(first.rows(), first.byUsername(), pageSize, 1, false);
+    }
 
-        if (userId != null) {
-            // Зарегистрированный пользователь - считаем по userId
-            totalOrders = orderRepository.countTotalByUserId(userId);
-            activeOrders = orderRepository.countActiveByUserId(userId, OrderStatus.NEW);
-            completedOrders = orderRepository.countCompletedByUserId(userId, OrderStatus.COMPLETED);
-            log.debug("Статистика по userId: всего={}, активных={}, выполнено={}", totalOrders, activeOrders, completedOrders);
+    private OrderPage loadOrdersPage(Long telegramId, String telegramUsername, OrderCursor cursor, boolean older, int pageSize) {
+        List<OrderListItemDto> rows;
+        if (cursor.byUsername()) {
+            if (telegramUsername == null) {
+                return getFirstOrdersPage(telegramId, null, pageSize);
+            }
+            rows = orderViewRepository.findPageByTelegramUsername(
+                    telegramUsername, cursor.createdAt(), cursor.id(), older, pageSize + 1);
         } else {
-            // Незарегистрированный пользователь - считаем по telegramUsername
-            totalOrders = orderRepository.countTotalByTelegramUsername(telegramUsername);
-            activeOrders = orderRepository.countActiveByTelegramUsername(telegramUsername, OrderStatus.NEW);
-            completedOrders = orderRepository.countCompletedByTelegramUsername(telegramUsername, OrderStatus.COMPLETED);
-            log.debug("Статистика по telegramUsername: всего={}, активных={}, выполнено={}", totalOrders, activeOrders, completedOrders);
+            if (telegramId == null) {
+                return getFirstOrdersPage(null, telegramUsername, pageSize);
+            }
+            rows = orderViewRepository.findPageByTelegramId(
+                    telegramId, cursor.createdAt(), cursor.id(), older, pageSize + 1);
         }
 
-        return OrderStatistics.builder()
-                .totalOrders(totalOrders)
-                .activeOrders((int) activeOrders)
-                .completedOrders((int) completedOrders)
-                .build();
+        // Кнопка со старого сообщения, за курсором уже ничего нет - начинаем сначала
+        if (rows.isEmpty()) {
+            return getFirstOrdersPage(telegramId, telegramUsername, pageSize);
+        }
+        return older
+                ? olderPage(rows, cursor.byUsername(), pageSize, cursor.position() + 1, true)
+                : newerPage(rows, cursor.byUsername(), pageSize, cursor.position());
     }
 
-    // Или используйте универсальный метод:
-    @Transactional(readOnly = true)
-    public OrderStatistics getUserStatisticsUniversal(Long userId, String telegramUsername) {
-        log.debug("Получение статистики (универсально). UserId: {}, TelegramUsername: {}", userId, telegramUsername);
-
-        long totalOrders = orderRepository.countTotalUserOrders(userId, telegramUsername);
-        long activeOrders = orderRepository.countActiveUserOrders(userId, telegramUsername, OrderStatus.NEW);
-        long completedOrders = orderRepository.countCompletedUserOrders(userId, telegramUsername, OrderStatus.COMPLETED);
+    // rows - по убыванию, лишняя строка сверх pageSize означает, что есть более старые заказы
+    private OrderPage olderPage(List<OrderListItemDto> rows, boolean byUsername, int pageSize,
+                                int firstPosition, boolean hasNewer) {
+        boolean hasOlder = rows.size() > pageSize;
+        List<OrderListItemDto> items = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+        return toPage(items, byUsername, firstPosition, hasNewer, hasOlder);
+    }
 
-        log.debug("Универсальная статистика: всего={}, активных={}, выполнено={}", totalOrders, activeOrders, completedOrders);
+    // rows - по возрастанию от курсора, лишняя строка означает, что есть более новые заказы.
+    // Страница заканчивается перед заказом с номером cursorPosition; самая новая страница всегда начинается с 1
+    // (если с прошлого показа добавились заказы, номера выравниваются на ней)
+    private OrderPage newerPage(List<OrderListItemDto> rows, boolean byUsername, int pageSize, int cursorPosition) {
+        boolean hasNewer = rows.size() > pageSize;
+        List<OrderListItemDto> items = new ArrayList<>(rows.size() > pageSize ? rows.subList(0, pageSize) : rows);
+        Collections.reverse(items);
+        int firstPosition = hasNewer ? Math.max(1, cursorPosition - items.size()) : 1;
+        return toPage(items, byUsername, firstPosition, hasNewer, true);
+    }
 
-        return OrderStatistics.builder()
-                .totalOrders(totalOrders)
-                .activeOrders((int) activeOrders)
-                .completedOrders((int) completedOrders)
-                .build();
+    private OrderPage toPage(List<OrderListItemDto> items, boolean byUsername, int firstPosition,
+                             boolean hasNewer, boolean hasOlder) {
+        OrderPage.OrderPageBuilder page = OrderPage.builder().items(items).firstPosition(firstPosition);
+        if (!items.isEmpty()) {
+            OrderListItemDto first = items.get(0);
+            OrderListItemDto last = items.get(items.size() - 1);
+            if (hasNewer) {
+                page.newer(new OrderCursor(byUsername, first.getCreatedAt(), first.getId(), firstPosition));
+            }
+            if (hasOlder) {
+                page.older(new OrderCursor(byUsername, last.getCreatedAt(), last.getId(),
+                        firstPosition + items.size() - 1));
+            }
+        }
+        return page.build();
     }
 
     @Transactional
@@ -163,16 +195,43 @@ public class OrderService {
         OrderEntity order = orderRepository.findByOrderNumber(orderNumber)
                 .orElseThrow(() -> new OrderNotFoundException("Заказ не найден: " + orderNumber));
 
+        OrderStatus previousStatus = order.getStatus();
         order.setStatus(newStatus);
         OrderEntity updatedOrder = orderRepository.save(order);
+        userOrderStatsService.statusChanged(ownerChatId(order), previousStatus, newStatus);
+        orderCache.orderChanged(order.getId(), order.getOrderNumber(), ownerTelegramId(order), order.getTelegramUsername());
 
         return mapToResponseDto(updatedOrder);
     }
 
-    private String generateOrderNumber() {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmm"));
-        String uuid = UUID.randomUUID().toString().substring(0, 4).toUpperCase();
-        return "ORD-" + timestamp + "-" + uuid;
+    // Отмена заказа владельцем. Проверка владельца и статуса - в самом UPDATE, поэтому чужой заказ
+    // (подделанный callback) или заказ, который уже взяли в работу, не меняется.
+    // false - отменять нечего
+    @Transactional
+    public boolean cancelOrder(long chatId, long orderId) {
+        log.info("Отмена заказа id={} из чата {}", orderId, chatId);
+
+        if (orderRepository.cancelIfNew(orderId, chatId) == 0) {
+            log.warn("Заказ id={} не отменен: не найден, принадлежит другому чату или уже не новый", orderId);
+            return false;
+        }
+
+        OrderEntity order = orderRepository.findById(orderId).orElseThrow();
+        // Условие владельца совпадает с тем, как заказы относятся к чату в user_order_stats
+        userOrderStatsService.statusChanged(chatId, OrderStatus.NEW, OrderStatus.CANCELLED);
+        orderCache.orderChanged(order.getId(), order.getOrderNumber(), ownerTelegramId(order), order.getTelegramUsername());
+        return true;
+    }
+
+    // Чат, к которому заказ относится в user_order_stats: старые заказы без chat_id (записанные узлами
+    // прежней версии) - по владельцу, как в countOrdersByStatus
+    private static Long ownerChatId(OrderEntity order) {
+        return order.getChatId() != null ? order.getChatId() : ownerTelegramId(order);
+    }
+
+    // Владелец, под которым заказ виден в "Моих заказах" зарегистрированного пользователя
+    private static Long ownerTelegramId(OrderEntity order) {
+        return order.getUser() != null ? order.getUser().getTelegramId() : null;
     }
 
     private OrderResponseDto mapToResponseDto(OrderEntity order) {
@@ -187,20 +246,4 @@ public class OrderService {
                 .createdAt(order.getCreatedAt())
                 .build();
     }
-
-    private OrderListItemDto mapToListItemDto(OrderEntity order) {
-        return OrderListItemDto.builder()
-                .orderNumber(order.getOrderNumber())
-                .orderDetails(truncate(order.getOrderDetails(), 50))
-                .status(order.getStatus())
-                .createdAt(order.getCreatedAt())
-                .build();
-    }
-
-    private String truncate(String str, int length) {
-        if (str == null || str.length() <= length) {
-            return str;
-        }
-        return str.substring(0, length - 3) + "...";
-    }
 }
\ No newline at end of file
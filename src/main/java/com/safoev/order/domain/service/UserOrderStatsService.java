@@ -0,0 +1,126 @@
+package com.safoev.order.domain.service;
+
+import com.safoev.order.domain.db.UserOrderStatsEntity;
+import com.safoev.order.domain.db.UserOrderStatsRepository;
+import com.safoev.order.domain.dto.OrderStatistics;
+import com.safoev.order.domain.enums.OrderStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+// Счетчики заказов по чатам (user_order_stats). Приращения пишутся в транзакции, меняющей заказы;
+// сверка по расписанию находит чаты, где счетчики разошлись с orders, и пересчитывает их
+@Slf4j
+@Service
+public class UserOrderStatsService {
+
+    private final UserOrderStatsRepository statsRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter driftCounter;
+
+    public UserOrderStatsService(UserOrderStatsRepository statsRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 MeterRegistry meterRegistry) {
+        this.statsRepository = statsRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.driftCounter = Counter.builder("bot.orders.stats.drift")
+                .description("Чаты, счетчики которых пришлось исправить при сверке")
+                .register(meterRegistry);
+    }
+
+    // Новые заказы по чатам; чаты обходятся по возрастанию, чтобы пачки с разных узлов
+    // блокировали строки в одном порядке
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void ordersCreated(SortedMap<Long, Integer> createdByChat) {
+        createdByChat.forEach((chatId, count) -> statsRepository.addCounts(chatId, count, 0, 0, 0));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanged(Long chatId, OrderStatus from, OrderStatus to) {
+        if (chatId == null || from == to) {
+            return;
+        }
+        Map<OrderStatus, Long> delta = new EnumMap<>(OrderStatus.class);
+        delta.merge(from, -1L, Long::sum);
+        delta.merge(to, 1L, Long::sum);
+        statsRepository.addCounts(chatId,
+                delta.getOrDefault(OrderStatus.NEW, 0L),
+                delta.getOrDefault(OrderStatus.IN_PROGRESS, 0L),
+                delta.getOrDefault(OrderStatus.COMPLETED, 0L),
+                delta.getOrDefault(OrderStatus.CANCELLED, 0L));
+    }
+
+    // Один запрос по первичному ключу; чат без заказов - нули
+    @Transactional(readOnly = true)
+    public OrderStatistics getStatistics(long chatId) {
+        return statsRepository.findById(chatId)
+                .map(stats -> OrderStatistics.builder()
+                        .totalOrders(stats.getNewCount() + stats.getInProgressCount()
+                                + stats.getCompletedCount() + stats.getCancelledCount())
+                        .activeOrders((int) stats.getNewCount())
+                        .completedOrders((int) stats.getCompletedCount())
+                        .build())
+                .orElseGet(() -> OrderStatistics.builder().build());
+    }
+
+    // Сверка со orders. Первый проход - один запрос без блокировок; найденные чаты пересчитываются
+    // по одному под блокировкой строки счетчиков, поэтому параллельные заказы не теряются.
+    // Пустая таблица счетчиков (первый запуск) заполняется этим же проходом
+    @Scheduled(initialDelayString = "${telegram.bot.orders.stats.verify-initial-delay-ms:60000}",
+            fixedDelayString = "${telegram.bot.orders.stats.verify-interval-ms:21600000}")
+    public void verify() {
+        List<Long> drifted = statsRepository.findDriftedChatIds();
+        if (drifted.isEmpty()) {
+            log.debug("Счетчики заказов сходятся с таблицей orders");
+            return;
+        }
+
+        int fixed = 0;
+        for (Long chatId : drifted) {
+            try {
+                Boolean changed = transactionTemplate.execute(status -> rebuild(chatId));
+                if (Boolean.TRUE.equals(changed)) {
+                    fixed++;
+                }
+            } catch (Exception e) {
+                log.error("Ошибка пересчета счетчиков заказов чата {}: {}", chatId, e.getMessage());
+            }
+        }
+        driftCounter.increment(fixed);
+        log.warn("Сверка счетчиков заказов: расхождений {}, исправлено {}", drifted.size(), fixed);
+    }
+
+    private boolean rebuild(long chatId) {
+        // Пустое приращение создает или блокирует строку чата до конца транзакции
+        statsRepository.addCounts(chatId, 0, 0, 0, 0);
+        UserOrderStatsEntity current = statsRepository.findById(chatId).orElseThrow();
+
+        Map<OrderStatus, Long> actual = new EnumMap<>(OrderStatus.class);
+        for (Object[] row : statsRepository.countOrdersByStatus(chatId)) {
+            actual.put(OrderStatus.valueOf((String) row[0]), ((Number) row[1]).longValue());
+        }
+        long newCount = actual.getOrDefault(OrderStatus.NEW, 0L);
+        long inProgressCount = actual.getOrDefault(OrderStatus.IN_PROGRESS, 0L);
+        long completedCount = actual.getOrDefault(OrderStatus.COMPLETED, 0L);
+        long cancelledCount = actual.getOrDefault(OrderStatus.CANCELLED, 0L);
+
+        if (current.getNewCount() == newCount && current.getInProgressCount() == inProgressCount
+                && current.getCompletedCount() == completedCount && current.getCancelledCount() == cancelledCount) {
+            return false;
+        }
+        statsRepository.replaceCounts(chatId, newCount, inProgressCount, completedCount, cancelledCount);
+        log.info("Счетчики заказов чата {} пересчитаны: новых {}, в работе {}, выполнено {}, отменено {}",
+                chatId, newCount, inProgressCount, completedCount, cancelledCount);
+        return true;
+    }
+}
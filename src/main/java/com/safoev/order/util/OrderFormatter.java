@@ -1,94 +1,82 @@
 package com.safoev.order.util;
 
+import com.safoev.bot.template.DateFormats;
+import com.safoev.bot.template.MessageTemplate;
+import com.safoev.order.domain.db.OrderEntity;
+import com.safoev.order.domain.dto.OrderPage;
 import com.safoev.order.domain.dto.response.OrderDetailDto;
 import com.safoev.order.domain.dto.response.OrderListItemDto;
-import com.safoev.order.domain.enums.OrderStatus;
 import org.springframework.stereotype.Component;
 
-import java.time.format.DateTimeFormatter;
-
+// Тексты о заказах. Шаблоны разбираются один раз при загрузке класса,
+// список заказов дописывается в один StringBuilder без промежуточных строк
 @Component
 public class OrderFormatter {
 
-    private static final DateTimeFormatter DATE_FORMATTER =
-            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
-    private static final DateTimeFormatter DATE_ONLY_FORMATTER =
-            DateTimeFormatter.ofPattern("dd.MM.yyyy");
-
-    public String formatOrderDetails(OrderDetailDto order) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("┌─────────────────────┐\n");
-        sb.append("│   ДЕТАЛИ ЗАКАЗА     │\n");
-        sb.append("└─────────────────────┘\n\n");
-
-        sb.append("🆔 Номер: ").append(order.getOrderNumber()).append("\n");
-        sb.append("📅 Дата: ").append(formatDate(order.getCreatedAt())).append("\n");
-        sb.append("📊 Статус: ").append(formatStatus(order.getStatus())).append("\n");
-        sb.append("─────────────────────\n");
-
-        if (order.getTelegramUsername() != null && !order.getTelegramUsername().isEmpty()) {
-            sb.append("📱 Telegram: @").append(order.getTelegramUsername()).append("\n");
-        }
-
-        sb.append("👤 Клиент: ").append(order.getCustomerName()).append("\n");
-        sb.append("📞 Телефон: ").append(order.getCustomerPhone()).append("\n");
-        sb.append("─────────────────────\n");
-        sb.append("📝 Услуга:\n").append(order.getOrderDetails()).append("\n");
-
-        return sb.toString();
-    }
-
-    public String formatOrderListItem(OrderListItemDto order) {
-        return String.format("""
-                🆔 %s
-                📊 %s
-                📝 %s
-                📅 %s
-                """,
+    private static final MessageTemplate ORDER_CREATED = MessageTemplate.compile("""
+            ✅ Заказ успешно создан!
+            
+            🆔 Номер: {0}
+            📝 Услуга: {1}
+            📊 Статус: {2}
+            
+            Выберите действие:""");
+
+    private static final MessageTemplate ORDER_LIST_ITEM = MessageTemplate.compile("""
+            {0}. 🆔 {1}
+               📊 {2}
+               📝 {3}
+               📅 {4}
+            
+            """);
+
+    private static final MessageTemplate ORDER_DETAILS = MessageTemplate.compile("""
+            🆔 Номер: {0}
+            📅 Дата: {1}
+            📊 Статус: {2}
+            👤 Клиент: {3}
+            📞 Телефон: {4}
+            📝 Услуга: {5}
+            """);
+
+    public String formatOrderCreated(OrderEntity order) {
+        return ORDER_CREATED.render(
                 order.getOrderNumber(),
-                formatStatus(order.getStatus()),
                 order.getOrderDetails(),
-                formatDateShort(order.getCreatedAt())
+                order.getStatus().getDisplayName()
         );
     }
 
-    public String formatOrderListHeader(int totalOrders) {
-        return String.format("""
-                ┌─────────────────────┐
-                │   ВАШИ ЗАКАЗЫ       │
-                └─────────────────────┘
-                
-                📋 Всего заказов: %d
-                
-                """, totalOrders);
+    public String formatOrderDetails(OrderDetailDto order) {
+        return ORDER_DETAILS.render(
+                order.getOrderNumber(),
+                DateFormats.dateTime(order.getCreatedAt()),
+                order.getStatus().getDisplayName(),
+                order.getCustomerName(),
+                order.getCustomerPhone(),
+                order.getOrderDetails()
+        );
     }
 
-    public String formatEmptyOrderList() {
-        return """
-                📋 У вас пока нет заказов.
-                
-                Хотите создать первый заказ?
-                """;
-    }
+    public String formatOrdersPage(OrderPage page) {
+        StringBuilder message = new StringBuilder("📋 Ваши заказы:\n\n");
 
-    private String formatStatus(OrderStatus status) {
-        switch (status) {
-            case NEW: return "🆕 Новый";
-            case IN_PROGRESS: return "⚙️ В работе";
-            case COMPLETED: return "✅ Выполнен";
-            case CANCELLED: return "❌ Отменен";
-            default: return status.name();
+        if (page.getItems().isEmpty()) {
+            message.append("У вас пока нет заказов.");
+            return message.toString();
         }
-    }
-
-    private String formatDate(java.time.LocalDateTime date) {
-        if (date == null) return "неизвестно";
-        return date.format(DATE_FORMATTER);
-    }
 
-    private String formatDateShort(java.time.LocalDateTime date) {
-        if (date == null) return "неизвестно";
-        return date.format(DATE_ONLY_FORMATTER);
+        int position = page.getFirstPosition();
+        for (OrderListItemDto order : page.getItems()) {
+            ORDER_LIST_ITEM.renderTo(message,
+                    position++,
+                    order.getOrderNumber(),
+                    order.getStatus().getDisplayName(),
+                    order.getOrderDetails(),
+                    DateFormats.dateTime(order.getCreatedAt())
+            );
+        }
+        message.append("Чтобы посмотреть детали заказа, введите его номер:");
+        return message.toString();
     }
-}
\ No newline at end of file
+}
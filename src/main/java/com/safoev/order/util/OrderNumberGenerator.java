@@ -0,0 +1,132 @@
+package com.safoev.order.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Номера заказов по схеме Snowflake: 41 бит - миллисекунды от 2025-01-01 UTC, 10 бит - номер узла,
+// 12 бит - счетчик внутри миллисекунды. Время и счетчик хранятся в одном AtomicLong и растут
+// монотонно (CAS без блокировок): при переполнении счетчика или откате часов номер берется
+// из следующей миллисекунды, поэтому внутри узла повторов нет, а между узлами их исключает номер узла.
+// Номер узла по умолчанию 0 - только для одиночного узла; роль worker без явного номера не запускается.
+// Вид: ORD- + 13 символов base32 Крокфорда (без I, L, O, U) + контрольный символ (Luhn mod 32),
+// например ORD-06JST8QVW0000W. Номера сортируются по времени создания.
+@Slf4j
+@Component
+public class OrderNumberGenerator {
+
+    public static final String PREFIX = "ORD-";
+
+    private static final long EPOCH_MILLIS = 1_735_689_600_000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final int BODY_LENGTH = 13;
+    private static final int NUMBER_LENGTH = PREFIX.length() + BODY_LENGTH + 1;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = (byte) i;
+            VALUES[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+        // Похожие символы при ручном вводе
+        VALUES['O'] = VALUES['o'] = 0;
+        VALUES['I'] = VALUES['i'] = VALUES['L'] = VALUES['l'] = 1;
+    }
+
+    private final long nodeId;
+    // (миллисекунды от EPOCH << SEQUENCE_BITS) | счетчик - последний выданный номер узла
+    private final AtomicLong lastTick = new AtomicLong();
+
+    public OrderNumberGenerator(@Value("${telegram.bot.orders.number-node-id:}") Long nodeId,
+                                @Value("${telegram.bot.role:standalone}") String role) {
+        if (nodeId == null) {
+            // Узлов обработки несколько: с одинаковым номером они выдали бы одинаковые номера заказов
+            if ("worker".equals(role)) {
+                throw new IllegalArgumentException("Роль worker требует telegram.bot.orders.number-node-id (ORDER_NODE_ID), "
+                        + "свой у каждого узла, от 0 до " + MAX_NODE_ID);
+            }
+            nodeId = 0L;
+        }
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("telegram.bot.orders.number-node-id должен быть от 0 до " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        log.info("Генератор номеров заказов: узел {}", nodeId);
+    }
+
+    public String next() {
+        return next(System.currentTimeMillis());
+    }
+
+    // currentMillis - показания часов; отдельно от next() ради проверки отката часов
+    String next(long currentMillis) {
+        long now = (currentMillis - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long tick;
+        long previous;
+        do {
+            previous = lastTick.get();
+            // Новая миллисекунда - счетчик с нуля; иначе (та же или часы отстали) - следующий по порядку
+            tick = now > previous ? now : previous + 1;
+        } while (!lastTick.compareAndSet(previous, tick));
+
+        long timestamp = tick >>> SEQUENCE_BITS;
+        long sequence = tick & ((1L << SEQUENCE_BITS) - 1);
+        return encode((timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence);
+    }
+
+    // Канонический вид введенного номера: регистр и похожие символы исправляются.
+    // null - номер нового формата с неверной контрольной суммой; номера старого формата
+    // (ORD-yyyyMMddHHmm-XXXX) возвращаются без изменений
+    public static String normalize(String input) {
+        String number = input.trim();
+        if (number.length() != NUMBER_LENGTH || !number.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return number;
+        }
+
+        char[] chars = new char[NUMBER_LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = PREFIX.length(); i < NUMBER_LENGTH; i++) {
+            char c = number.charAt(i);
+            int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            chars[i] = ALPHABET[value];
+        }
+        return checkSymbol(chars, PREFIX.length(), BODY_LENGTH) == chars[NUMBER_LENGTH - 1]
+                ? new String(chars)
+                : null;
+    }
+
+    private static String encode(long id) {
+        char[] chars = new char[NUMBER_LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = PREFIX.length() + BODY_LENGTH - 1; i >= PREFIX.length(); i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        chars[NUMBER_LENGTH - 1] = checkSymbol(chars, PREFIX.length(), BODY_LENGTH);
+        return new String(chars);
+    }
+
+    // Luhn mod 32: ловит любую ошибку в одном символе и перестановку соседних
+    private static char checkSymbol(char[] chars, int offset, int length) {
+        int factor = 2;
+        int sum = 0;
+        for (int i = offset + length - 1; i >= offset; i--) {
+            int addend = factor * VALUES[chars[i]];
+            factor = factor == 2 ? 1 : 2;
+            sum += addend / ALPHABET.length + addend % ALPHABET.length;
+        }
+        int remainder = sum % ALPHABET.length;
+        return ALPHABET[(ALPHABET.length - remainder) % ALPHABET.length];
+    }
+}
@@ -0,0 +1,41 @@
+package com.safoev.outbox.domain.db;
+
+import com.safoev.outbox.domain.enums.OutboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessageEntity, Long> {
+
+    // Готовые к отправке сообщения, включая SENDING с истекшей арендой (узел упал во время отправки).
+    // Строки, заблокированные другим узлом, пропускаются
+    @Query(value = "SELECT * FROM outbox_messages " +
+            "WHERE status IN ('PENDING', 'SENDING') AND next_attempt_at <= :now " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxMessageEntity> lockReady(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE OutboxMessageEntity m SET m.status = com.safoev.outbox.domain.enums.OutboxStatus.SENT, " +
+            "m.sentAt = :sentAt, m.lastError = null " +
+            "WHERE m.id = :id AND m.status = com.safoev.outbox.domain.enums.OutboxStatus.SENDING")
+    int markSent(@Param("id") Long id, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("UPDATE OutboxMessageEntity m SET m.status = :status, m.lastError = :error, m.nextAttemptAt = :nextAttemptAt " +
+            "WHERE m.id = :id AND m.status = com.safoev.outbox.domain.enums.OutboxStatus.SENDING")
+    int markFailed(@Param("id") Long id,
+                   @Param("status") OutboxStatus status,
+                   @Param("error") String error,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    @Modifying
+    @Query("DELETE FROM OutboxMessageEntity m " +
+            "WHERE m.status = com.safoev.outbox.domain.enums.OutboxStatus.SENT AND m.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
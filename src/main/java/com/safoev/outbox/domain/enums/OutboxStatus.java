@@ -0,0 +1,8 @@
+package com.safoev.outbox.domain.enums;
+
+public enum OutboxStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,182 @@
+package com.safoev.outbox.domain.service;
+
+import com.safoev.bot.handler.MessageSender;
+import com.safoev.bot.keyboard.KeyboardFactory;
+import com.safoev.outbox.domain.db.OutboxMessageEntity;
+import com.safoev.outbox.domain.db.OutboxMessageRepository;
+import com.safoev.outbox.domain.enums.OutboxStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Отправка сообщений из outbox_messages. Пачка строк захватывается короткой транзакцией
+// (FOR UPDATE SKIP LOCKED, статус SENDING с арендой), отправляется через очередь OutboundDispatcher,
+// а результат фиксируется отдельной транзакцией - HTTP-запросы идут без открытой транзакции.
+// Доставка "хотя бы один раз": если узел упал во время отправки, строку заберут после конца аренды.
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private static final Duration RETRY_BASE = Duration.ofSeconds(5);
+    private static final Duration RETRY_MAX = Duration.ofMinutes(10);
+    private static final long SENT_RETENTION_DAYS = 7;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final MessageSender messageSender;
+    private final KeyboardFactory keyboardFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "outbox-relay"));
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository,
+                       MessageSender messageSender,
+                       KeyboardFactory keyboardFactory,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${telegram.bot.outbox.batch-size:100}") int batchSize,
+                       @Value("${telegram.bot.outbox.max-attempts:10}") int maxAttempts,
+                       @Value("${telegram.bot.outbox.lease:5m}") Duration lease) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.messageSender = messageSender;
+        this.keyboardFactory = keyboardFactory;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+    }
+
+    // Запускает разбор очереди; повторные вызовы во время ожидания запуска схлопываются
+    public void wakeUp() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    // Подстраховка: сообщения, отложенные на повтор, и чужие просроченные аренды
+    @Scheduled(fixedDelayString = "${telegram.bot.outbox.poll-interval-ms:1000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    @Scheduled(fixedDelayString = "${telegram.bot.outbox.cleanup-interval-ms:3600000}")
+    public void cleanup() {
+        Integer removed = transactionTemplate.execute(status ->
+                outboxMessageRepository.deleteSentBefore(LocalDateTime.now().minusDays(SENT_RETENTION_DAYS)));
+        log.debug("Очищено отправленных сообщений outbox: {}", removed);
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        try {
+            List<OutboxMessageEntity> batch;
+            do {
+                batch = claim();
+                deliver(batch);
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            log.error("Ошибка отправки сообщений outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    private List<OutboxMessageEntity> claim() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxMessageEntity> batch = outboxMessageRepository.lockReady(now, batchSize);
+            for (OutboxMessageEntity message : batch) {
+                message.setStatus(OutboxStatus.SENDING);
+                message.setAttempts(message.getAttempts() + 1);
+                message.setNextAttemptAt(now.plus(lease));
+            }
+            return batch;
+        });
+    }
+
+    private void deliver(List<OutboxMessageEntity> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // Вся пачка ставится в очередь отправки сразу, порядок внутри чата сохраняет OutboundDispatcher
+        List<CompletableFuture<Throwable>> results = new ArrayList<>(batch.size());
+        for (OutboxMessageEntity message : batch) {
+            results.add(send(message));
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxMessageEntity message = batch.get(i);
+            Throwable error = results.get(i).join();
+            transactionTemplate.executeWithoutResult(status -> complete(message, error));
+        }
+    }
+
+    private CompletableFuture<Throwable> send(OutboxMessageEntity message) {
+        try {
+            InlineKeyboardMarkup keyboard = message.getReplyMarkup() != null
+                    ? keyboardFactory.fromJson(message.getReplyMarkup())
+                    : null;
+            return messageSender.sendNotification(message.getChatId(), message.getText(), keyboard)
+                    .handle((sent, error) -> error);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(e);
+        }
+    }
+
+    private void complete(OutboxMessageEntity message, Throwable error) {
+        LocalDateTime now = LocalDateTime.now();
+        if (error == null) {
+            outboxMessageRepository.markSent(message.getId(), now);
+            return;
+        }
+
+        String reason = String.valueOf(error.getMessage());
+        if (reason.length() > MAX_ERROR_LENGTH) {
+            reason = reason.substring(0, MAX_ERROR_LENGTH);
+        }
+
+        if (message.getAttempts() >= maxAttempts) {
+            outboxMessageRepository.markFailed(message.getId(), OutboxStatus.FAILED, reason, now);
+            log.error("Сообщение outbox {} для чата {} не доставлено после {} попыток: {}",
+                    message.getId(), message.getChatId(), message.getAttempts(), reason);
+        } else {
+            outboxMessageRepository.markFailed(message.getId(), OutboxStatus.PENDING, reason, now.plus(retryDelay(message.getAttempts())));
+            log.warn("Сообщение outbox {} для чата {} не отправлено (попытка {}): {}",
+                    message.getId(), message.getChatId(), message.getAttempts(), reason);
+        }
+    }
+
+    private static Duration retryDelay(int attempts) {
+        Duration delay = RETRY_BASE.multipliedBy(1L << Math.min(attempts - 1, 16));
+        return delay.compareTo(RETRY_MAX) > 0 ? RETRY_MAX : delay;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.safoev.outbox.domain.service;
+
+import com.safoev.bot.keyboard.KeyboardFactory;
+import com.safoev.outbox.domain.db.OutboxMessageEntity;
+import com.safoev.outbox.domain.db.OutboxMessageRepository;
+import com.safoev.outbox.domain.enums.OutboxStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.time.LocalDateTime;
+
+// Сообщения, которые нельзя потерять (подтверждения заказов), пишутся в outbox_messages
+// в той же транзакции, что и изменение заказа, и отправляются OutboxRelay после фиксации
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final OutboxRelay outboxRelay;
+    private final KeyboardFactory keyboardFactory;
+
+    // Вызывается только внутри транзакции, меняющей данные, о которых сообщаем
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(Long chatId, String text, InlineKeyboardMarkup keyboard) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessageEntity message = OutboxMessageEntity.builder()
+                .chatId(chatId)
+                .text(text)
+                .replyMarkup(keyboard != null ? keyboardFactory.toJson(keyboard) : null)
+                .status(OutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+        outboxMessageRepository.save(message);
+
+        // Не ждем очередного опроса - будим отправку сразу после фиксации
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxRelay.wakeUp();
+            }
+        });
+    }
+}
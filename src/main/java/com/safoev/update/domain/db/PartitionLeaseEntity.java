@@ -0,0 +1,29 @@
+package com.safoev.update.domain.db;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Владелец партиции update_queue; работа с таблицей - через PartitionLeases
+@Entity
+@Table(name = "partition_leases")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartitionLeaseEntity {
+
+    @Id
+    @Column(name = "partition_id")
+    private Integer partitionId;
+
+    @Column(name = "owner", length = 100)
+    private String owner;
+
+    @Column(name = "lease_until", nullable = false)
+    private LocalDateTime leaseUntil;
+}
@@ -0,0 +1,28 @@
+package com.safoev.update.domain.db;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "processed_updates")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedUpdateEntity {
+
+    @Id
+    @Column(name = "update_id")
+    private Long updateId;
+
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+}
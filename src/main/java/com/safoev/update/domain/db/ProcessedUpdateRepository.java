@@ -0,0 +1,30 @@
+package com.safoev.update.domain.db;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProcessedUpdateRepository extends JpaRepository<ProcessedUpdateEntity, Long> {
+
+    // 1 - обновление отмечено впервые, 0 - уже было обработано
+    @Modifying
+    @Query(value = "INSERT INTO processed_updates (update_id, chat_id, processed_at) " +
+            "VALUES (:updateId, :chatId, now()) ON CONFLICT (update_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("updateId") long updateId, @Param("chatId") long chatId);
+
+    // Очистка записей, которые уже покрыты сохраненным смещением; возраст - по часам БД,
+    // как и processed_at
+    @Modifying
+    @Query(value = "DELETE FROM processed_updates " +
+            "WHERE update_id <= :updateId AND processed_at < now() - make_interval(hours => :hours)", nativeQuery = true)
+    int deleteCoveredOlderThan(@Param("updateId") long updateId, @Param("hours") int hours);
+
+    // Без смещения (webhook): повторной доставки старше hours уже не будет
+    @Modifying
+    @Query(value = "DELETE FROM processed_updates WHERE processed_at < now() - make_interval(hours => :hours)",
+            nativeQuery = true)
+    int deleteOlderThan(@Param("hours") int hours);
+}
@@ -0,0 +1,29 @@
+package com.safoev.update.domain.db;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "update_checkpoints")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateCheckpointEntity {
+
+    @Id
+    @Column(name = "id", length = 50)
+    private String id;
+
+    // Все обновления с update_id <= last_update_id обработаны
+    @Column(name = "last_update_id", nullable = false)
+    private Long lastUpdateId;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,26 @@
+package com.safoev.update.domain.db;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+// Время смещения ставит и сравнивает БД: часы узлов между перезапусками могут расходиться
+@Repository
+public interface UpdateCheckpointRepository extends JpaRepository<UpdateCheckpointEntity, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO update_checkpoints (id, last_update_id, updated_at) " +
+            "VALUES (:id, :lastUpdateId, now()) " +
+            "ON CONFLICT (id) DO UPDATE SET last_update_id = excluded.last_update_id, updated_at = excluded.updated_at",
+            nativeQuery = true)
+    int upsert(@Param("id") String id, @Param("lastUpdateId") long lastUpdateId);
+
+    // Смещение, сохраненное не раньше maxAgeDays назад
+    @Query(value = "SELECT last_update_id FROM update_checkpoints " +
+            "WHERE id = :id AND updated_at > now() - make_interval(days => :maxAgeDays)", nativeQuery = true)
+    Optional<Long> findFresh(@Param("id") String id, @Param("maxAgeDays") int maxAgeDays);
+}
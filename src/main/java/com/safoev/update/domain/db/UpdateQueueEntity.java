@@ -0,0 +1,42 @@
+package com.safoev.update.domain.db;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Схема очереди обновлений между ingress и worker; запись и чтение идут через UpdateQueue
+@Entity
+@Table(name = "update_queue", indexes = {
+        @Index(name = "idx_update_queue_partition_id", columnList = "partition_id, id"),
+        @Index(name = "uk_update_queue_update_id", columnList = "update_id", unique = true)
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateQueueEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "partition_id", nullable = false)
+    private Integer partitionId;
+
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    @Column(name = "update_id", nullable = false)
+    private Long updateId;
+
+    // Update в JSON
+    @Column(name = "payload", nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,29 @@
+package com.safoev.update.domain.db;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Живые worker-узлы (по heartbeat); по их числу считается доля партиций на узел
+@Entity
+@Table(name = "worker_nodes")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkerNodeEntity {
+
+    @Id
+    @Column(name = "node_id", length = 100)
+    private String nodeId;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+}
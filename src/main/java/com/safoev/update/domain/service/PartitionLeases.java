@@ -0,0 +1,172 @@
+package com.safoev.update.domain.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Распределение партиций update_queue между worker-узлами через аренду в partition_leases.
+// Каждый узел по heartbeat продлевает свои аренды, отдает излишек сверх справедливой доли
+// (partitions / живые узлы) и забирает свободные или просроченные партиции (SKIP LOCKED).
+// Узел, переставший отвечать, теряет партиции по истечении lease. Время берется из БД.
+// О каждой смене владельца узнают PartitionListener (например, чтобы передать состояние диалогов).
+@Slf4j
+@Service
+public class PartitionLeases {
+
+    private static final String REGISTER_NODE = "INSERT INTO worker_nodes (node_id, started_at, heartbeat_at) " +
+            "VALUES (?, now(), now()) ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = now()";
+    private static final String COUNT_LIVE_NODES = "SELECT count(*) FROM worker_nodes " +
+            "WHERE heartbeat_at > now() - ? * interval '1 millisecond'";
+    private static final String DELETE_DEAD_NODES = "DELETE FROM worker_nodes " +
+            "WHERE heartbeat_at < now() - ? * interval '1 millisecond'";
+    private static final String INIT_PARTITIONS = "INSERT INTO partition_leases (partition_id, owner, lease_until) " +
+            "SELECT p, NULL, now() FROM generate_series(0, ? - 1) p ON CONFLICT (partition_id) DO NOTHING";
+    private static final String RENEW = "UPDATE partition_leases SET lease_until = now() + ? * interval '1 millisecond' " +
+            "WHERE owner = ? RETURNING partition_id";
+    private static final String CLAIM = "UPDATE partition_leases SET owner = ?, lease_until = now() + ? * interval '1 millisecond' " +
+            "WHERE partition_id IN (SELECT partition_id FROM partition_leases " +
+            "WHERE partition_id < ? AND (owner IS NULL OR lease_until < now()) " +
+            "ORDER BY partition_id LIMIT ? FOR UPDATE SKIP LOCKED) RETURNING partition_id";
+    private static final String RELEASE = "UPDATE partition_leases SET owner = NULL, lease_until = now() " +
+            "WHERE owner = ? AND partition_id = ?";
+    private static final String RELEASE_ALL = "UPDATE partition_leases SET owner = NULL, lease_until = now() WHERE owner = ?";
+    private static final String DELETE_NODE = "DELETE FROM worker_nodes WHERE node_id = ?";
+
+    // Запас до истечения аренды, после которого узел сам перестает брать работу из партиций
+    private static final double SAFE_LEASE_FRACTION = 0.8;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int partitions;
+    private final long leaseMillis;
+    private final String nodeId;
+    private final List<PartitionListener> listeners;
+
+    private int[] owned = new int[0];
+    // Партиции, о получении которых уже сообщено слушателям; меняется только в rebalance
+    private int[] announced = new int[0];
+    private long ownedUntilNanos;
+
+    public PartitionLeases(JdbcTemplate jdbcTemplate,
+                           @Value("${telegram.bot.queue.partitions:64}") int partitions,
+                           @Value("${telegram.bot.queue.lease:10s}") Duration lease,
+                           @Value("${telegram.bot.queue.node-id:}") String nodeId,
+                           List<PartitionListener> listeners) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listeners = listeners;
+        this.partitions = partitions;
+        this.leaseMillis = lease.toMillis();
+        // По умолчанию pid@host - уникально для нескольких JVM на одной машине
+        this.nodeId = nodeId.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public synchronized void initialize() {
+        jdbcTemplate.update(INIT_PARTITIONS, partitions);
+        log.info("Узел {} подключается к очереди обновлений: партиций {}, аренда {} мс", nodeId, partitions, leaseMillis);
+    }
+
+    // Heartbeat и перераспределение; возвращает партиции, которыми узел владеет после шага
+    public synchronized int[] rebalance() {
+        long startedAt = System.nanoTime();
+        jdbcTemplate.update(REGISTER_NODE, nodeId);
+        jdbcTemplate.update(DELETE_DEAD_NODES, leaseMillis * 10);
+        Integer liveNodes = jdbcTemplate.queryForObject(COUNT_LIVE_NODES, Integer.class, leaseMillis);
+        int nodes = Math.max(1, liveNodes == null ? 1 : liveNodes);
+        int target = (partitions + nodes - 1) / nodes;
+
+        List<Integer> current = jdbcTemplate.queryForList(RENEW, Integer.class, leaseMillis, nodeId);
+        current.sort(null);
+
+        int[] lost = minus(announced, current);
+        if (lost.length > 0) {
+            log.warn("Узел {} потерял партиции {} по истечении аренды", nodeId, Arrays.toString(lost));
+            listeners.forEach(listener -> listener.lost(lost));
+            announced = minus(announced, lost);
+        }
+
+        if (current.size() > target) {
+            // Излишек отдаем с конца: вновь подключившийся узел заберет его на своем heartbeat
+            List<Integer> surplus = current.subList(target, current.size());
+            int[] released = surplus.stream().mapToInt(Integer::intValue).toArray();
+            listeners.forEach(listener -> listener.beforeRelease(released));
+            announced = minus(announced, surplus);
+            for (Integer partition : surplus) {
+                jdbcTemplate.update(RELEASE, nodeId, partition);
+            }
+            log.info("Узел {} отдал партиции {} (доля {})", nodeId, surplus, target);
+            current = current.subList(0, target);
+        } else if (current.size() < target) {
+            List<Integer> claimed = jdbcTemplate.queryForList(CLAIM, Integer.class,
+                    nodeId, leaseMillis, partitions, target - current.size());
+            if (!claimed.isEmpty()) {
+                log.info("Узел {} получил партиции {}", nodeId, claimed);
+                current = new ArrayList<>(current);
+                current.addAll(claimed);
+            }
+        }
+
+        // Полученные партиции (и те, загрузка которых не удалась в прошлый раз) обрабатываются
+        // только после того, как слушатели подготовились
+        int[] ownedNow = current.stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[] acquired = minus(ownedNow, Arrays.stream(announced).boxed().toList());
+        if (acquired.length > 0) {
+            listeners.forEach(listener -> listener.acquired(acquired));
+        }
+        announced = ownedNow;
+
+        owned = ownedNow;
+        ownedUntilNanos = startedAt + (long) (leaseMillis * SAFE_LEASE_FRACTION) * 1_000_000;
+        return owned;
+    }
+
+    // Только продление - на время обработки пачки, когда отдавать партиции нельзя.
+    // false - часть партиций уже у другого узла
+    public synchronized boolean renew() {
+        long startedAt = System.nanoTime();
+        jdbcTemplate.update(REGISTER_NODE, nodeId);
+        List<Integer> renewed = jdbcTemplate.queryForList(RENEW, Integer.class, leaseMillis, nodeId);
+        boolean lost = renewed.size() < owned.length;
+        if (lost) {
+            log.warn("Узел {} потерял часть партиций: было {}, продлено {}", nodeId, owned.length, renewed.size());
+            owned = renewed.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+        ownedUntilNanos = startedAt + (long) (leaseMillis * SAFE_LEASE_FRACTION) * 1_000_000;
+        return !lost;
+    }
+
+    // Аренда еще точно не истекла
+    public synchronized boolean isValid() {
+        return owned.length > 0 && System.nanoTime() < ownedUntilNanos;
+    }
+
+    // При остановке: партиции сразу переходят другим узлам, не дожидаясь истечения аренды
+    public synchronized void releaseAll() {
+        int[] releasing = announced;
+        if (releasing.length > 0) {
+            listeners.forEach(listener -> listener.beforeRelease(releasing));
+        }
+        announced = new int[0];
+        int released = jdbcTemplate.update(RELEASE_ALL, nodeId);
+        jdbcTemplate.update(DELETE_NODE, nodeId);
+        owned = new int[0];
+        log.info("Узел {} освободил партиций: {}", nodeId, released);
+    }
+
+    private static int[] minus(int[] partitions, List<Integer> excluded) {
+        return Arrays.stream(partitions).filter(p -> !excluded.contains(p)).toArray();
+    }
+
+    private static int[] minus(int[] partitions, int[] excluded) {
+        return minus(partitions, Arrays.stream(excluded).boxed().toList());
+    }
+}
@@ -0,0 +1,15 @@
+package com.safoev.update.domain.service;
+
+// Смена владельца партиций update_queue на этом узле. Вызывается из потока worker
+// между пачками, то есть когда обновления отдаваемых партиций уже обработаны
+public interface PartitionListener {
+
+    // Партиции сейчас будут отданы другим узлам (перераспределение или остановка)
+    void beforeRelease(int[] partitions);
+
+    // Аренда истекла, партиции уже могут обрабатываться другим узлом
+    void lost(int[] partitions);
+
+    // Партиции получены узлом, их обновления еще не обрабатывались
+    void acquired(int[] partitions);
+}
@@ -0,0 +1,184 @@
+package com.safoev.update.domain.service;
+
+import com.safoev.update.domain.db.ProcessedUpdateRepository;
+import com.safoev.update.domain.db.UpdateCheckpointRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Однократная обработка обновлений Telegram:
+// - отметка update_id пишется в той же транзакции, что и изменения домена;
+// - повторно доставленные обновления отсекаются окном в памяти и таблицей processed_updates;
+// - непрерывно обработанный префикс (смещение) периодически сохраняется в update_checkpoints.
+// Смещение ведет только узел, который получает обновления long polling: getUpdates для токена
+// отдается одному процессу, поэтому строка смещения одна. В режиме webhook обновления делятся
+// между экземплярами и общий префикс не определен - там остается только processed_updates.
+// worker читает update_queue и смещение не ведет.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UpdateProcessingService {
+
+    private static final String CHECKPOINT_ID = "bot";
+    private static final int RECENT_WINDOW_SIZE = 4096;
+    // После недели без обновлений Telegram выдает update_id случайно - старое смещение неприменимо
+    private static final int CHECKPOINT_MAX_AGE_DAYS = 6;
+    private static final int PROCESSED_RETENTION_HOURS = 24;
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final ProcessedUpdateRepository processedUpdateRepository;
+    private final UpdateCheckpointRepository updateCheckpointRepository;
+
+    private final RecentUpdates recentUpdates = new RecentUpdates(RECENT_WINDOW_SIZE);
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final AtomicLong maxAccepted = new AtomicLong(-1);
+    private final AtomicLong savedCheckpoint = new AtomicLong(-1);
+    private volatile long skipUpTo = -1;
+    private volatile long lastCleanupNanos = System.nanoTime();
+
+    @Value("${telegram.bot.role:standalone}")
+    private String role;
+
+    @Value("${telegram.bot.mode:longpolling}")
+    private String mode;
+
+    @PostConstruct
+    public void loadCheckpoint() {
+        if (!keepsCheckpoint()) {
+            // worker: обновления до смещения приемника могут еще лежать в update_queue
+            return;
+        }
+        updateCheckpointRepository.findFresh(CHECKPOINT_ID, CHECKPOINT_MAX_AGE_DAYS).ifPresent(lastUpdateId -> {
+            savedCheckpoint.set(lastUpdateId);
+            maxAccepted.set(lastUpdateId);
+            skipUpTo = lastUpdateId;
+            log.info("Загружено смещение обновлений: {}", lastUpdateId);
+        });
+    }
+
+    // Вызывается при постановке обновления в очередь (в порядке получения)
+    public void accepted(long updateId) {
+        inFlight.add(updateId);
+        maxAccepted.accumulateAndGet(updateId, Math::max);
+    }
+
+    // Вызывается после обработки обновления, в том числе неудачной
+    public void finished(long updateId) {
+        inFlight.remove(updateId);
+    }
+
+    // Быстрая проверка без обращения к БД
+    public boolean isDuplicate(long updateId) {
+        return updateId <= skipUpTo || recentUpdates.contains(updateId);
+    }
+
+    // Выполняет обработчик, если обновление еще не обрабатывалось.
+    // Все записи в БД, сделанные обработчиком, попадают в эту же транзакцию.
+    @Transactional
+    public boolean processOnce(long updateId, long chatId, Runnable handler) {
+        if (processedUpdateRepository.insertIfAbsent(updateId, chatId) == 0) {
+            recentUpdates.add(updateId);
+            return false;
+        }
+
+        handler.run();
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentUpdates.add(updateId);
+            }
+        });
+        return true;
+    }
+
+    // Последний update_id, до которого включительно все обновления обработаны
+    public long currentWatermark() {
+        long max = maxAccepted.get();
+        Long oldestInFlight = inFlight.ceiling(Long.MIN_VALUE);
+        return oldestInFlight == null ? max : Math.min(max, oldestInFlight - 1);
+    }
+
+    @Scheduled(fixedDelayString = "${telegram.bot.checkpoint.interval-ms:5000}")
+    @Transactional
+    public void checkpoint() {
+        if (isWorker()) {
+            return;
+        }
+        if (!keepsCheckpoint()) {
+            cleanupProcessed();
+            return;
+        }
+        long watermark = currentWatermark();
+        if (watermark <= savedCheckpoint.get()) {
+            return;
+        }
+
+        updateCheckpointRepository.upsert(CHECKPOINT_ID, watermark);
+        savedCheckpoint.set(watermark);
+
+        int removed = processedUpdateRepository.deleteCoveredOlderThan(watermark, PROCESSED_RETENTION_HOURS);
+        log.debug("Смещение обновлений сохранено: {}, очищено отметок: {}", watermark, removed);
+    }
+
+    // Без смещения отметки чистятся только по возрасту, и не чаще раза в CLEANUP_INTERVAL
+    private void cleanupProcessed() {
+        long now = System.nanoTime();
+        if (now - lastCleanupNanos < CLEANUP_INTERVAL_NANOS) {
+            return;
+        }
+        lastCleanupNanos = now;
+        int removed = processedUpdateRepository.deleteOlderThan(PROCESSED_RETENTION_HOURS);
+        log.debug("Очищено отметок обработанных обновлений: {}", removed);
+    }
+
+    private boolean keepsCheckpoint() {
+        return !isWorker() && "longpolling".equals(mode);
+    }
+
+    private boolean isWorker() {
+        return "worker".equals(role);
+    }
+
+    // Кольцевой буфер последних обработанных update_id
+    private static class RecentUpdates {
+        private final long[] ring;
+        private final Set<Long> ids;
+        private int next;
+
+        RecentUpdates(int capacity) {
+            this.ring = new long[capacity];
+            this.ids = new HashSet<>(capacity * 2);
+            Arrays.fill(ring, -1);
+        }
+
+        synchronized boolean contains(long updateId) {
+            return ids.contains(updateId);
+        }
+
+        synchronized void add(long updateId) {
+            if (!ids.add(updateId)) {
+                return;
+            }
+            long evicted = ring[next];
+            if (evicted != -1) {
+                ids.remove(evicted);
+            }
+            ring[next] = updateId;
+            next = (next + 1) % ring.length;
+        }
+    }
+}
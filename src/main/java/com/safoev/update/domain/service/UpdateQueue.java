@@ -0,0 +1,132 @@
+package com.safoev.update.domain.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+// Очередь обновлений в PostgreSQL между ingress (прием) и worker-узлами (обработка).
+// Партиция = chatId mod partitions: все обновления чата лежат в одной партиции,
+// а партицию в каждый момент обрабатывает один узел, поэтому порядок внутри чата сохраняется.
+@Slf4j
+@Service
+public class UpdateQueue {
+
+    private static final String INSERT = "INSERT INTO update_queue (partition_id, chat_id, update_id, payload, created_at) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (update_id) DO NOTHING";
+    private static final String SELECT_BATCH = "SELECT id, chat_id, payload FROM update_queue " +
+            "WHERE partition_id = ANY(?) ORDER BY id LIMIT ?";
+    private static final String DELETE_BATCH = "DELETE FROM update_queue WHERE id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int partitions;
+    private final Counter appendedCounter;
+    private final Counter ackedCounter;
+
+    public UpdateQueue(JdbcTemplate jdbcTemplate,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${telegram.bot.queue.partitions:64}") int partitions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.partitions = partitions;
+        this.appendedCounter = Counter.builder("bot.queue.appended")
+                .description("Обновления, записанные в update_queue")
+                .register(meterRegistry);
+        this.ackedCounter = Counter.builder("bot.queue.acked")
+                .description("Обновления, обработанные и удаленные из update_queue")
+                .register(meterRegistry);
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int partitionOf(long chatId) {
+        return (int) Math.floorMod(chatId, (long) partitions);
+    }
+
+    // Одна пачка - один batch INSERT; повторно доставленные update_id пропускаются
+    public void append(List<QueuedUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(updates.size());
+        for (QueuedUpdate queued : updates) {
+            rows.add(new Object[]{
+                    partitionOf(queued.chatId()),
+                    queued.chatId(),
+                    queued.update().getUpdateId(),
+                    toJson(queued.update()),
+                    now
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        appendedCounter.increment(updates.size());
+    }
+
+    // Старейшие обновления указанных партиций в порядке поступления
+    public List<QueuedUpdate> poll(int[] ownedPartitions, int limit) {
+        return jdbcTemplate.query(SELECT_BATCH,
+                ps -> {
+                    Array array = ps.getConnection().createArrayOf("integer", box(ownedPartitions));
+                    ps.setArray(1, array);
+                    ps.setInt(2, limit);
+                },
+                (rs, rowNum) -> new QueuedUpdate(rs.getLong("id"), rs.getLong("chat_id"), fromJson(rs.getString("payload"))));
+    }
+
+    public void acknowledge(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(DELETE_BATCH, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+        ackedCounter.increment(ids.size());
+    }
+
+    private String toJson(Update update) {
+        try {
+            return objectMapper.writeValueAsString(update);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать обновление " + update.getUpdateId(), e);
+        }
+    }
+
+    // null - запись не читается; worker удаляет ее, чтобы не блокировать партицию
+    private Update fromJson(String payload) {
+        try {
+            return objectMapper.readValue(payload, Update.class);
+        } catch (JsonProcessingException e) {
+            log.error("Не удалось прочитать обновление из очереди: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Integer[] box(int[] values) {
+        Integer[] boxed = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+
+    // id назначается БД при записи; для новых обновлений - 0
+    public record QueuedUpdate(long id, long chatId, Update update) {
+
+        public static QueuedUpdate of(long chatId, Update update) {
+            return new QueuedUpdate(0, chatId, update);
+        }
+    }
+}
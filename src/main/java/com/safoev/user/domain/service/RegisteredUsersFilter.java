@@ -0,0 +1,203 @@
+package com.safoev.user.domain.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+// Предварительная проверка "зарегистрирован ли пользователь / занят ли телефон" без запроса к БД.
+// Два фильтра Блума (Telegram ID и нормализованные телефоны) строятся из таблицы users при старте
+// и периодически перестраиваются под текущее число пользователей.
+// "Нет" - окончательный ответ; "возможно" - нужна проверка в БД.
+// Новые регистрации добавляются после фиксации транзакции, в том числе во фильтр, который
+// строится в этот момент. Регистрации на других узлах приходят через CacheInvalidationBus (UserService).
+@Slf4j
+@Component
+public class RegisteredUsersFilter {
+
+    private static final String COUNT_USERS = "SELECT count(*) FROM users";
+    private static final String SELECT_KEYS = "SELECT telegram_id, phone FROM users";
+    // Запас емкости до следующей перестройки
+    private static final int CAPACITY_FACTOR = 2;
+    private static final int MIN_CAPACITY = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final Counter negativeCounter;
+    private final Counter positiveCounter;
+    private final Counter falsePositiveCounter;
+
+    private volatile Filters current;
+    // Фильтр, который строится сейчас; под монитором this
+    private Filters building;
+    // Перестройки по расписанию и после потери оповещений не идут одновременно
+    private final Object rebuildLock = new Object();
+
+    public RegisteredUsersFilter(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${telegram.bot.users.filter.enabled:true}") boolean enabled,
+                                 @Value("${telegram.bot.users.filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+
+        this.negativeCounter = Counter.builder("bot.users.filter.checks")
+                .description("Проверки фильтра пользователей")
+                .tag("result", "negative")
+                .register(meterRegistry);
+        this.positiveCounter = Counter.builder("bot.users.filter.checks")
+                .description("Проверки фильтра пользователей")
+                .tag("result", "positive")
+                .register(meterRegistry);
+        this.falsePositiveCounter = Counter.builder("bot.users.filter.false_positives")
+                .description("Срабатывания фильтра, не подтвержденные БД")
+                .register(meterRegistry);
+
+        registerGauges(meterRegistry, "telegram_id", Filters::telegramIds);
+        registerGauges(meterRegistry, "phone", Filters::phones);
+    }
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${telegram.bot.users.filter.rebuild-interval-ms:600000}",
+            fixedDelayString = "${telegram.bot.users.filter.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            build();
+        }
+    }
+
+    private void build() {
+        long started = System.nanoTime();
+        Long users = jdbcTemplate.queryForObject(COUNT_USERS, Long.class);
+        long capacity = Math.max(MIN_CAPACITY, (users == null ? 0 : users) * CAPACITY_FACTOR);
+
+        Filters next = new Filters(
+                LongBloomFilter.create(capacity, falsePositiveRate),
+                LongBloomFilter.create(capacity, falsePositiveRate));
+        // Регистрации, зафиксированные во время чтения, add() кладет и в новый фильтр
+        synchronized (this) {
+            building = next;
+        }
+        try {
+            jdbcTemplate.query(SELECT_KEYS, rs -> {
+                next.telegramIds().put(rs.getLong("telegram_id"));
+                Long phone = normalizePhone(rs.getString("phone"));
+                if (phone != null) {
+                    next.phones().put(phone);
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                building = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            current = next;
+            building = null;
+        }
+
+        log.info("Фильтр пользователей перестроен: {} записей, {} КБ, за {} мс",
+                next.telegramIds().entries(),
+                (next.telegramIds().memoryBytes() + next.phones().memoryBytes()) / 1024,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // false - пользователь точно не зарегистрирован
+    public boolean mightBeRegistered(long telegramId) {
+        Filters filters = current;
+        return record(filters == null || filters.telegramIds().mightContain(telegramId));
+    }
+
+    // false - телефон точно никем не занят
+    public boolean mightUsePhone(String phone) {
+        Filters filters = current;
+        Long normalized = normalizePhone(phone);
+        return record(filters == null || normalized == null || filters.phones().mightContain(normalized));
+    }
+
+    // Вызывается после фиксации регистрации
+    public synchronized void add(long telegramId, String phone) {
+        Long normalized = normalizePhone(phone);
+        for (Filters filters : new Filters[]{current, building}) {
+            if (filters == null) {
+                continue;
+            }
+            filters.telegramIds().put(telegramId);
+            if (normalized != null) {
+                filters.phones().put(normalized);
+            }
+        }
+    }
+
+    // Фильтр ответил "возможно", а БД записи не нашла
+    public void recordFalsePositive() {
+        falsePositiveCounter.increment();
+    }
+
+    private boolean record(boolean mightContain) {
+        (mightContain ? positiveCounter : negativeCounter).increment();
+        return mightContain;
+    }
+
+    private void registerGauges(MeterRegistry meterRegistry, String key, Function<Filters, LongBloomFilter> filter) {
+        gauge(meterRegistry, "bot.users.filter.fpp", "Ожидаемая доля ложных срабатываний", key,
+                f -> filter.apply(f).expectedFalsePositiveRate());
+        gauge(meterRegistry, "bot.users.filter.entries", "Записей в фильтре", key,
+                f -> filter.apply(f).entries());
+        Gauge.builder("bot.users.filter.memory", this, self -> {
+                    Filters filters = self.current;
+                    return filters == null ? 0 : filter.apply(filters).memoryBytes();
+                })
+                .description("Память фильтра")
+                .baseUnit("bytes")
+                .tag("key", key)
+                .register(meterRegistry);
+    }
+
+    private void gauge(MeterRegistry meterRegistry, String name, String description, String key,
+                       ToDoubleFunction<Filters> value) {
+        Gauge.builder(name, this, self -> {
+                    Filters filters = self.current;
+                    return filters == null ? 0 : value.applyAsDouble(filters);
+                })
+                .description(description)
+                .tag("key", key)
+                .register(meterRegistry);
+    }
+
+    // Только цифры: "+7 (999) 123-45-67" и "79991234567" - один ключ
+    static Long normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 18) {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+        }
+        return digits == 0 ? null : value;
+    }
+
+    private record Filters(LongBloomFilter telegramIds, LongBloomFilter phones) {
+    }
+}
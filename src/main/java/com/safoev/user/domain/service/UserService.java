@@ -1,36 +1,99 @@
 package com.safoev.user.domain.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.safoev.cache.CacheInvalidationBus;
+import com.safoev.cache.CacheInvalidationListener;
 import com.safoev.user.domain.db.UserEntity;
 import com.safoev.user.domain.db.UserRepository;
 import com.safoev.user.domain.dto.request.UserRegisterRequestDto;
 import com.safoev.user.domain.dto.response.UserRegisterResponseDto;
 import com.safoev.user.domain.service.exception.UserAlreadyExistsException;
 import com.safoev.user.domain.service.exception.UserNotFoundException;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+// Пользователи по Telegram ID с кэшем в памяти процесса (Caffeine, вытеснение W-TinyLFU).
+// Кэшируется и отсутствие пользователя (незарегистрированные чаты), с более коротким сроком.
+// Регистрация кладет пользователя в кэш после фиксации транзакции; до нее кэш для этого ID не используется.
+// Промах кэша сначала проверяется фильтром RegisteredUsersFilter: для незарегистрированных запроса нет.
+// О регистрации узнают все узлы через CacheInvalidationBus: она попадает в их фильтры,
+// а отрицательная запись кэша для этого ID сбрасывается.
 @Slf4j
 @Service
-@RequiredArgsConstructor  // Заменяем @AllArgsConstructor на @RequiredArgsConstructor
-public class UserService {
+public class UserService implements CacheInvalidationListener {
+
+    private static final String TOPIC = "users";
+
+    // Ключ ресурса транзакции: Telegram ID, зарегистрированные в текущей транзакции
+    private static final Object REGISTERED_IN_TRANSACTION = new Object();
 
     private final UserRepository userRepository;
-    // Убираем CharacterEncodingFilter - он здесь не нужен
+    private final RegisteredUsersFilter registeredUsersFilter;
+    private final CacheInvalidationBus invalidationBus;
+    private final Cache<Long, Optional<UserEntity>> usersByTelegramId;
+
+    public UserService(UserRepository userRepository,
+                       RegisteredUsersFilter registeredUsersFilter,
+                       CacheInvalidationBus invalidationBus,
+                       MeterRegistry meterRegistry,
+                       @Value("${telegram.bot.users.cache.max-size:100000}") long maxSize,
+                       @Value("${telegram.bot.users.cache.ttl:10m}") Duration ttl,
+                       @Value("${telegram.bot.users.cache.negative-ttl:1m}") Duration negativeTtl) {
+        this.userRepository = userRepository;
+        this.registeredUsersFilter = registeredUsersFilter;
+        this.invalidationBus = invalidationBus;
+        this.usersByTelegramId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Long, Optional<UserEntity>>() {
+                    @Override
+                    public long expireAfterCreate(Long key, Optional<UserEntity> value, long currentTime) {
+                        return (value.isPresent() ? ttl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long key, Optional<UserEntity> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long key, Optional<UserEntity> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, usersByTelegramId, "users");
+        invalidationBus.subscribe(TOPIC, this);
+    }
 
-    @Transactional
+    // Регистрация идет в транзакции обновления: отказ из-за дубликата бросается до записи
+    // и не должен откатывать ее, иначе ответ с ошибкой не дойдет до пользователя
+    @Transactional(noRollbackFor = UserAlreadyExistsException.class)
     public UserRegisterResponseDto registerUser(Long telegramId, UserRegisterRequestDto requestDto) {
         log.info("Регистрация пользователя с Telegram ID: {}", telegramId);
 
         // Проверяем существование
-        if (userRepository.existsByTelegramId(telegramId)) {
+        if (registeredUsersFilter.mightBeRegistered(telegramId) && userRepository.existsByTelegramId(telegramId)) {
             throw new UserAlreadyExistsException("Пользователь с таким Telegram ID уже зарегистрирован!");
         }
 
-        if (requestDto.getPhone() != null && userRepository.existsByPhone(requestDto.getPhone())) {
+        if (requestDto.getPhone() != null
+                && registeredUsersFilter.mightUsePhone(requestDto.getPhone())
+                && userRepository.existsByPhone(requestDto.getPhone())) {
             throw new UserAlreadyExistsException("Этот номер телефона уже используется");
         }
 
@@ -46,6 +109,7 @@ public class UserService {
 
         UserEntity savedUser = userRepository.save(user);
         log.info("Пользователь успешно зарегистрирован: {}", savedUser.getTelegramId());
+        cacheAfterCommit(savedUser);
 
         return UserRegisterResponseDto.builder()
                 .firstName(savedUser.getFirstName())
@@ -53,31 +117,124 @@ public class UserService {
                 .build();
     }
 
-    // Реализация метода findByTelegramId
-    @Transactional(readOnly = true)
+    // Реализация метода findByTelegramId.
+    // Без @Transactional: попадание в кэш не должно открывать транзакцию и брать соединение
     public UserEntity findByTelegramId(Long telegramId) {
         log.debug("Поиск пользователя по Telegram ID: {}", telegramId);
 
-        return userRepository.findByTelegramId(telegramId)
+        return lookup(telegramId)
+                .map(UserService::copyOf)
                 .orElse(null);  // Возвращаем null если не найден
     }
 
     // Альтернативный вариант с исключением
-    @Transactional(readOnly = true)
     public UserEntity findByTelegramIdOrThrow(Long telegramId) {
         log.debug("Поиск пользователя по Telegram ID: {}", telegramId);
 
-        return userRepository.findByTelegramId(telegramId)
+        return lookup(telegramId)
+                .map(UserService::copyOf)
                 .orElseThrow(() -> new UserNotFoundException("Пользователь с Telegram ID " + telegramId + " не найден"));
     }
 
-    @Transactional(readOnly = true)
     public boolean existsByTelegramId(Long telegramId) {
-        return userRepository.existsByTelegramId(telegramId);
+        return lookup(telegramId).isPresent();
     }
 
     @Transactional(readOnly = true)
     public UserEntity findByPhone(String phone) {
         return userRepository.findByPhone(phone).orElse(null);
     }
+
+    // В кэше лежат отсоединенные снимки; наружу отдаются копии, чтобы изменения вызывающего кода
+    // не попадали в общий экземпляр
+    private Optional<UserEntity> lookup(Long telegramId) {
+        if (registeredInCurrentTransaction(telegramId)) {
+            return userRepository.findByTelegramId(telegramId);
+        }
+        return usersByTelegramId.get(telegramId, this::load);
+    }
+
+    private Optional<UserEntity> load(Long telegramId) {
+        if (!registeredUsersFilter.mightBeRegistered(telegramId)) {
+            return Optional.empty();
+        }
+        Optional<UserEntity> user = userRepository.findByTelegramId(telegramId).map(UserService::copyOf);
+        if (user.isEmpty()) {
+            registeredUsersFilter.recordFalsePositive();
+        }
+        return user;
+    }
+
+    private void cacheAfterCommit(UserEntity savedUser) {
+        Long telegramId = savedUser.getTelegramId();
+        UserEntity snapshot = copyOf(savedUser);
+
+        @SuppressWarnings("unchecked")
+        Set<Long> registered = (Set<Long>) TransactionSynchronizationManager.getResource(REGISTERED_IN_TRANSACTION);
+        if (registered == null) {
+            registered = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(REGISTERED_IN_TRANSACTION, registered);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(REGISTERED_IN_TRANSACTION);
+                }
+            });
+        }
+        registered.add(telegramId);
+
+        // Фильтры всех узлов, включая этот, пополняются после фиксации
+        invalidationBus.publish(TOPIC, telegramId + "|" + (snapshot.getPhone() != null ? snapshot.getPhone() : ""));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // Заменяет и отрицательную запись, и значение, загруженное параллельно до фиксации
+                usersByTelegramId.put(telegramId, Optional.of(snapshot));
+            }
+        });
+    }
+
+    // Зарегистрирован пользователь (на этом или другом узле): payload - "telegramId|телефон"
+    @Override
+    public void invalidate(String payload) {
+        String[] parts = payload.split("\\|", 2);
+        if (parts.length != 2) {
+            log.warn("Некорректное оповещение о регистрации: {}", payload);
+            invalidateAll();
+            return;
+        }
+        long telegramId = Long.parseLong(parts[0]);
+        registeredUsersFilter.add(telegramId, parts[1].isEmpty() ? null : parts[1]);
+        // Положительную запись (после своей регистрации) не трогаем
+        usersByTelegramId.asMap().computeIfPresent(telegramId, (id, user) -> user.isPresent() ? user : null);
+    }
+
+    // Оповещения могли потеряться: фильтр перестраивается, отрицательные записи сбрасываются
+    @Override
+    public void invalidateAll() {
+        registeredUsersFilter.rebuild();
+        usersByTelegramId.asMap().values().removeIf(Optional::isEmpty);
+    }
+
+    private static boolean registeredInCurrentTransaction(Long telegramId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        Set<?> registered = (Set<?>) TransactionSynchronizationManager.getResource(REGISTERED_IN_TRANSACTION);
+        return registered != null && registered.contains(telegramId);
+    }
+
+    private static UserEntity copyOf(UserEntity user) {
+        return UserEntity.builder()
+                .id(user.getId())
+                .telegramId(user.getTelegramId())
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .phone(user.getPhone())
+                .createdAt(user.getCreatedAt())
+                .updatedAt(user.getUpdatedAt())
+                .registeredAt(user.getRegisteredAt())
+                .telegramUserName(user.getTelegramUserName())
+                .build();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+-- Базовая схема. Написана через IF NOT EXISTS: на базе, которую раньше вел ddl-auto,
+-- миграция только добавляет недостающее (baseline-on-migrate с версией 0)
+
+-- ============= ПОЛЬЗОВАТЕЛИ И ЗАКАЗЫ =============
+
+-- id выдаются пулами по 50 (allocationSize в сущностях)
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS orders_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS users (
+    id                 bigint       PRIMARY KEY,
+    telegram_id        bigint       NOT NULL UNIQUE,
+    first_name         varchar(50),
+    last_name          varchar(50),
+    phone              varchar(255) UNIQUE,
+    created_at         timestamp(6),
+    updated_at         timestamp(6),
+    registered_at      timestamp(6),
+    telegram_user_name varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS orders (
+    id                bigint        PRIMARY KEY,
+    order_number      varchar(50)   NOT NULL UNIQUE,
+    idempotency_key   varchar(64),
+    chat_id           bigint,
+    user_id           bigint        REFERENCES users (id),
+    telegram_username varchar(50),
+    customer_name     varchar(100)  NOT NULL,
+    customer_phone    varchar(20)   NOT NULL,
+    order_details     varchar(2000) NOT NULL,
+    status            varchar(255)  NOT NULL,
+    created_at        timestamp(6)
+);
+
+-- Колонки, появившиеся позже первых версий таблицы
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS idempotency_key varchar(64);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS chat_id bigint;
+-- Заказы зарегистрированных пользователей, созданные до chat_id: чат - telegram_id владельца
+UPDATE orders o SET chat_id = u.telegram_id FROM users u WHERE o.chat_id IS NULL AND o.user_id = u.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_orders_idempotency_key ON orders (idempotency_key);
+
+-- Страницы "Мои заказы" (keyset по created_at, id в обе стороны) и общий счетчик по владельцу
+CREATE INDEX IF NOT EXISTS idx_orders_user_created ON orders (user_id, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_orders_username_created ON orders (telegram_username, created_at, id);
+-- Пересчет user_order_stats по чату
+CREATE INDEX IF NOT EXISTS idx_orders_chat_status ON orders (chat_id, status);
+
+CREATE TABLE IF NOT EXISTS user_order_stats (
+    chat_id           bigint       PRIMARY KEY,
+    new_count         bigint       NOT NULL DEFAULT 0,
+    in_progress_count bigint       NOT NULL DEFAULT 0,
+    completed_count   bigint       NOT NULL DEFAULT 0,
+    cancelled_count   bigint       NOT NULL DEFAULT 0,
+    updated_at        timestamp(6) NOT NULL
+);
+
+-- Раньше id выдавал IDENTITY: последовательности продолжают после уже выданных id.
+-- Только вперед - работающие узлы могли уже взять пул из последовательности
+SELECT setval('users_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM users), (SELECT last_value FROM users_seq)));
+SELECT setval('orders_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM orders), (SELECT last_value FROM orders_seq)));
+
+-- ============= OUTBOX =============
+
+CREATE TABLE IF NOT EXISTS outbox_messages (
+    id              bigint        GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    chat_id         bigint        NOT NULL,
+    text            varchar(4096) NOT NULL,
+    reply_markup    text,
+    status          varchar(20)   NOT NULL,
+    attempts        integer       NOT NULL,
+    last_error      varchar(1000),
+    next_attempt_at timestamp(6)  NOT NULL,
+    created_at      timestamp(6)  NOT NULL,
+    sent_at         timestamp(6)
+);
+
+-- Выборка готовых к отправке (lockReady)
+CREATE INDEX IF NOT EXISTS idx_outbox_status_next_attempt ON outbox_messages (status, next_attempt_at);
+-- Очистка отправленных (deleteSentBefore)
+CREATE INDEX IF NOT EXISTS idx_outbox_sent_at ON outbox_messages (sent_at) WHERE status = 'SENT';
+
+-- ============= ОБНОВЛЕНИЯ TELEGRAM =============
+
+CREATE TABLE IF NOT EXISTS processed_updates (
+    update_id    bigint       PRIMARY KEY,
+    chat_id      bigint       NOT NULL,
+    processed_at timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS update_checkpoints (
+    id             varchar(50)  PRIMARY KEY,
+    last_update_id bigint       NOT NULL,
+    updated_at     timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS update_queue (
+    id           bigint       GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    partition_id integer      NOT NULL,
+    chat_id      bigint       NOT NULL,
+    update_id    bigint       NOT NULL,
+    payload      text         NOT NULL,
+    created_at   timestamp(6) NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_update_queue_update_id ON update_queue (update_id);
+CREATE INDEX IF NOT EXISTS idx_update_queue_partition_id ON update_queue (partition_id, id);
+
+CREATE TABLE IF NOT EXISTS partition_leases (
+    partition_id integer      PRIMARY KEY,
+    owner        varchar(100),
+    lease_until  timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS worker_nodes (
+    node_id      varchar(100) PRIMARY KEY,
+    started_at   timestamp(6) NOT NULL,
+    heartbeat_at timestamp(6) NOT NULL
+);
+
+-- ============= ДИАЛОГИ =============
+
+CREATE TABLE IF NOT EXISTS conversation_states (
+    chat_id           bigint        PRIMARY KEY,
+    step              varchar(30)   NOT NULL,
+    telegram_username varchar(50),
+    first_name        varchar(4096),
+    last_name         varchar(4096),
+    phone             varchar(20),
+    updated_at        timestamp(6)  NOT NULL
+);
@@ -0,0 +1,52 @@
+package com.safoev.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.support.IntegrationTest;
+import com.safoev.support.TelegramUpdates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// На нажатие кнопки бот отвечает до транзакции обновления: и повторно доставленное
+// обновление, которое уже обработано, и устаревшие данные кнопки получают ответ
+class CallbackAnswerTest extends IntegrationTest {
+
+    @Autowired
+    private UpdateConsumer updateConsumer;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final CallbackCodec callbackCodec = new CallbackCodec();
+    private TelegramUpdates updates;
+
+    @BeforeEach
+    void setUp() {
+        updates = new TelegramUpdates(updateConsumer, objectMapper, telegramClient);
+    }
+
+    @Test
+    void redeliveredCallbackIsAnswered() throws Exception {
+        long chatId = ThreadLocalRandom.current().nextLong(1, 1L << 40);
+        updates.callback(chatId, callbackCodec.encode(CallbackAction.HELP));
+        String queryId = updates.awaitAnswered(1).get(0);
+
+        updates.redeliver();
+        assertThat(updates.awaitAnswered(2)).containsExactly(queryId, queryId);
+        // Сама обработка прошла один раз
+        assertThat(updates.sentTexts(chatId)).hasSize(1);
+    }
+
+    @Test
+    void staleCallbackIsAnswered() throws Exception {
+        long chatId = ThreadLocalRandom.current().nextLong(1, 1L << 40);
+        updates.callback(chatId, "view_order_ORD-20240101-000001");
+
+        assertThat(updates.awaitAnswered(1)).hasSize(1);
+    }
+}
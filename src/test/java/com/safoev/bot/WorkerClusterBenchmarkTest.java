@@ -0,0 +1,261 @@
+package com.safoev.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.TelegramBotApplication;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.support.EmbeddedPostgres;
+import com.safoev.update.domain.service.UpdateQueue.QueuedUpdate;
+import com.safoev.update.domain.service.UpdateQueue;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Несколько worker-JVM на одной очереди: пропускная способность от числа узлов и передача диалогов
+// при перераспределении партиций (узел добавлен, узел остановлен посреди регистрации).
+// Долгий (запуск нескольких JVM), поэтому только по запросу:
+// BOT_CLUSTER_BENCHMARK=true ./gradlew test --tests WorkerClusterBenchmarkTest
+@EnabledIfEnvironmentVariable(named = "BOT_CLUSTER_BENCHMARK", matches = "true")
+class WorkerClusterBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerClusterBenchmarkTest.class);
+
+    private static final int PARTITIONS = 16;
+    private static final int CHATS = 200;
+    private static final int UPDATES_PER_CHAT = 10;
+    private static final long FIRST_CHAT = 5_000_000_000L;
+    private static final Duration TIMEOUT = Duration.ofMinutes(3);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CallbackCodec callbackCodec = new CallbackCodec();
+    private final List<Process> workers = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private UpdateQueue updateQueue;
+    private HttpServer botApi;
+    private Path logs;
+    private int nextUpdateId = 1_000_000_000;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jdbcTemplate = new JdbcTemplate(EmbeddedPostgres.migratedDataSource());
+        jdbcTemplate.update("DELETE FROM update_queue");
+        jdbcTemplate.update("DELETE FROM partition_leases");
+        jdbcTemplate.update("DELETE FROM worker_nodes");
+        jdbcTemplate.update("DELETE FROM conversation_states");
+        updateQueue = new UpdateQueue(jdbcTemplate, objectMapper, new SimpleMeterRegistry(), PARTITIONS);
+        logs = Files.createTempDirectory("workers");
+
+        // Заглушка Bot API: любой метод успешен, отправка возвращает сообщение
+        botApi = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        botApi.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            String result = exchange.getRequestURI().getPath().endsWith("/answerCallbackQuery") ? "true"
+                    : "{\"message_id\":1,\"date\":1700000000,\"chat\":{\"id\":1,\"type\":\"private\"}}";
+            byte[] response = ("{\"ok\":true,\"result\":" + result + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        });
+        botApi.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (Process worker : workers) {
+            worker.destroy();
+        }
+        for (Process worker : workers) {
+            worker.waitFor(30, TimeUnit.SECONDS);
+        }
+        botApi.stop(0);
+        log.info("Логи узлов: {}", logs);
+    }
+
+    @Test
+    void throughputByNodeCount() throws Exception {
+        for (int nodes = 1; nodes <= 3; nodes++) {
+            startWorker();
+            awaitOwners(nodes);
+
+            List<String> updates = new ArrayList<>();
+            for (int i = 0; i < UPDATES_PER_CHAT; i++) {
+                for (long chat = 0; chat < CHATS; chat++) {
+                    updates.add(message(FIRST_CHAT + chat, "привет"));
+                }
+            }
+            long started = System.nanoTime();
+            enqueue(updates);
+            awaitDrained();
+            double perSecond = updates.size() / ((System.nanoTime() - started) / 1e9);
+            log.info("узлов {}: {} обновлений/с ({} обновлений, {} чатов, {} ядер)", nodes, Math.round(perSecond),
+                    updates.size(), CHATS, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    // Каждый шаг регистрации приходит после перераспределения: диалоги должны дойти до конца на любом узле
+    @Test
+    void registrationSurvivesPartitionMoves() throws Exception {
+        startWorker();
+        startWorker();
+        awaitOwners(2);
+
+        List<String> step = new ArrayList<>();
+        for (long chat = 0; chat < CHATS; chat++) {
+            step.add(callback(FIRST_CHAT + chat, callbackCodec.encode(CallbackAction.REGISTRATION)));
+        }
+        enqueue(step);
+        awaitDrained();
+        enqueue(texts(chat -> "Иван"));
+        awaitDrained();
+
+        // Узел добавлен: часть партиций переходит к нему
+        long started = System.nanoTime();
+        startWorker();
+        awaitOwners(3);
+        log.info("добавление узла: запуск JVM и перераспределение партиций за {} мс",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        enqueue(texts(chat -> "Петров"));
+        awaitDrained();
+
+        // Узел остановлен: его партиции и диалоги забирают оставшиеся
+        started = System.nanoTime();
+        Process stopped = workers.remove(0);
+        stopped.destroy();
+        assertThat(stopped.waitFor(60, TimeUnit.SECONDS)).isTrue();
+        awaitOwners(2);
+        log.info("остановка узла: партиции перераспределены за {} мс",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        enqueue(texts(chat -> "+7999" + (1_000_000 + chat)));
+        awaitDrained();
+
+        Integer registered = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM users WHERE telegram_id BETWEEN ? AND ? AND last_name = 'Петров'",
+                Integer.class, FIRST_CHAT, FIRST_CHAT + CHATS - 1);
+        assertThat(registered).isEqualTo(CHATS);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM conversation_states", Integer.class)).isZero();
+    }
+
+    private void startWorker() throws IOException {
+        int node = workers.size() + 1;
+        ProcessBuilder builder = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx256m",
+                "-cp", System.getProperty("java.class.path"),
+                TelegramBotApplication.class.getName(),
+                "--spring.profiles.active=worker",
+                "--spring.main.banner-mode=off",
+                "--spring.datasource.url=" + EmbeddedPostgres.jdbcUrl(),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--logging.level.root=WARN",
+                "--logging.level.com.safoev=INFO",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--spring.jpa.show-sql=false",
+                "--telegram.bot.token=123:test",
+                "--telegram.bot.username=test_bot",
+                "--telegram.bot.api-url=http://127.0.0.1:" + botApi.getAddress().getPort(),
+                "--telegram.bot.queue.node-id=worker-" + node + "-" + System.nanoTime(),
+                "--telegram.bot.orders.number-node-id=" + node,
+                "--telegram.bot.queue.partitions=" + PARTITIONS,
+                "--telegram.bot.queue.lease=5s",
+                "--telegram.bot.queue.heartbeat-interval=500ms",
+                "--telegram.bot.queue.poll-interval-ms=20",
+                // Заглушка Bot API не ограничивает частоту
+                "--telegram.bot.outbound.global-per-second=100000",
+                "--telegram.bot.outbound.chat-per-second=1000",
+                "--telegram.bot.outbound.chat-burst=1000");
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(logs.resolve("worker-" + node + ".log").toFile());
+        workers.add(builder.start());
+    }
+
+    // Все партиции разобраны живыми узлами, и их ровно nodes
+    private void awaitOwners(int nodes) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            Integer owners = jdbcTemplate.queryForObject("SELECT count(DISTINCT owner) FROM partition_leases " +
+                    "WHERE partition_id < ? AND owner IS NOT NULL AND lease_until > now()", Integer.class, PARTITIONS);
+            Integer free = jdbcTemplate.queryForObject("SELECT count(*) FROM partition_leases " +
+                    "WHERE partition_id < ? AND (owner IS NULL OR lease_until <= now())", Integer.class, PARTITIONS);
+            Integer leased = jdbcTemplate.queryForObject("SELECT count(*) FROM partition_leases WHERE partition_id < ?",
+                    Integer.class, PARTITIONS);
+            if (owners != null && owners == nodes && free != null && free == 0 && leased != null && leased == PARTITIONS) {
+                return;
+            }
+            workers.forEach(worker -> assertThat(worker.isAlive()).as("узел упал, логи: " + logs).isTrue());
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Партиции не распределились между " + nodes + " узлами, логи: " + logs);
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            Integer left = jdbcTemplate.queryForObject("SELECT count(*) FROM update_queue", Integer.class);
+            if (left != null && left == 0) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Очередь не разобрана, логи: " + logs);
+    }
+
+    private void enqueue(List<String> updates) throws IOException {
+        List<QueuedUpdate> queued = new ArrayList<>(updates.size());
+        for (String json : updates) {
+            Update update = objectMapper.readValue(json, Update.class);
+            queued.add(QueuedUpdate.of(update.hasMessage() ? update.getMessage().getChatId()
+                    : update.getCallbackQuery().getFrom().getId(), update));
+        }
+        updateQueue.append(queued);
+    }
+
+    private List<String> texts(LongFunction<String> text) {
+        List<String> updates = new ArrayList<>();
+        for (long chat = 0; chat < CHATS; chat++) {
+            updates.add(message(FIRST_CHAT + chat, text.apply(chat)));
+        }
+        return updates;
+    }
+
+    private String message(long chatId, String text) {
+        int updateId = nextUpdateId++;
+        return "{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId + ",\"date\":1700000000,"
+                + "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}," + from(chatId)
+                + ",\"text\":\"" + text + "\"}}";
+    }
+
+    private String callback(long chatId, String data) {
+        int updateId = nextUpdateId++;
+        return "{\"update_id\":" + updateId + ",\"callback_query\":{\"id\":\"cb" + updateId + "\"," + from(chatId)
+                + ",\"chat_instance\":\"1\",\"data\":\"" + data + "\",\"message\":{\"message_id\":1,\"date\":1700000000,"
+                + "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}}}}";
+    }
+
+    private static String from(long chatId) {
+        return "\"from\":{\"id\":" + chatId + ",\"is_bot\":false,\"first_name\":\"Test\",\"username\":\"u" + chatId + "\"}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.safoev.bot.context;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.UpdateConsumer;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import com.safoev.order.domain.service.OrderService;
+import com.safoev.support.IntegrationTest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Map.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Бюджет обращений к БД по маршрутам: каждое обновление проходит через UpdateConsumer целиком
+// (дедупликация, контекст, обработчик, outbox), запросы считаются на уровне JDBC.
+// Кэши холодные: каждый маршрут вызывается впервые для своих данных
+class SqlStatementBudgetTest extends IntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlStatementBudgetTest.class);
+
+    // Максимум запросов за одно обновление; рост - повод разобраться, а не поднять число
+    private static final Map<String, Integer> BUDGETS = Map.ofEntries(
+            entry("command:/start", 1),
+            entry("command:/help", 1),
+            entry("conversation:REGISTRATION", 3),
+            entry("conversation:ORDER", 2),
+            entry("prefix:ORD-", 2),
+            entry("pattern:\\d+", 1),
+            entry("unmatched", 1),
+            entry("callback:REGISTRATION", 1),
+            entry("callback:NON_REGISTRATION", 1),
+            entry("callback:CANCEL_REGISTRATION", 1),
+            entry("callback:NEW_ORDER", 1),
+            entry("callback:MY_ORDERS", 2),
+            entry("callback:MY_PROFILE", 2),
+            entry("callback:HELP", 1),
+            entry("callback:BACK_TO_MENU", 1),
+            entry("callback:VIEW_ORDER", 2),
+            entry("callback:CONFIRM_CANCEL", 7),
+            entry("callback:ORDERS_NEWER", 2),
+            entry("callback:ORDERS_OLDER", 2));
+
+    private static final int PAGE_SIZE = 5;
+
+    @Autowired
+    private UpdateConsumer updateConsumer;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final CallbackCodec callbackCodec = new CallbackCodec();
+    private int nextUpdateId = ThreadLocalRandom.current().nextInt(100_000_000, 2_000_000_000);
+
+    @Test
+    void everyRouteStaysWithinBudget() throws Exception {
+        long chatId = ThreadLocalRandom.current().nextLong(1, 1L << 40);
+        String username = "u" + chatId;
+
+        message(chatId, "/start");
+        callback(chatId, CallbackAction.NON_REGISTRATION);
+        callback(chatId, CallbackAction.REGISTRATION);
+        callback(chatId, CallbackAction.CANCEL_REGISTRATION);
+        callback(chatId, CallbackAction.REGISTRATION);
+        message(chatId, "Иван");
+        message(chatId, "-");
+        message(chatId, "+79991234567");
+        message(chatId, "/start");
+
+        // Больше заказов, чем на одной странице: нужны переходы в обе стороны
+        for (int i = 0; i <= PAGE_SIZE; i++) {
+            callback(chatId, CallbackAction.NEW_ORDER);
+            message(chatId, "Иван");
+            message(chatId, "-");
+            message(chatId, "+79991234567");
+            message(chatId, "Заказ " + i);
+        }
+
+        callback(chatId, CallbackAction.MY_ORDERS);
+        OrderPage first = orderService.getFirstOrdersPage(chatId, username, PAGE_SIZE);
+        callback(chatId, CallbackAction.ORDERS_OLDER, cursorArgs(first.getOlder()));
+        OrderPage second = orderService.getOrdersPage(chatId, username, first.getOlder(), true, PAGE_SIZE);
+        callback(chatId, CallbackAction.ORDERS_NEWER, cursorArgs(second.getNewer()));
+
+        OrderListItemDto order = first.getItems().get(0);
+        long orderId = order.getId();
+        callback(chatId, CallbackAction.VIEW_ORDER, orderId);
+        message(chatId, order.getOrderNumber());
+        message(chatId, "12345");
+        message(chatId, "привет");
+        message(chatId, "/help");
+        callback(chatId, CallbackAction.MY_PROFILE);
+        callback(chatId, CallbackAction.HELP);
+        callback(chatId, CallbackAction.BACK_TO_MENU);
+        callback(chatId, CallbackAction.CONFIRM_CANCEL, orderId);
+
+        Map<String, Integer> measured = new TreeMap<>();
+        for (DistributionSummary summary : meterRegistry.find("bot.update.sql.statements").summaries()) {
+            measured.put(summary.getId().getTag("route"), (int) summary.max());
+        }
+        measured.forEach((route, max) -> log.info("{}: {} (бюджет {})", route, max, BUDGETS.get(route)));
+
+        assertThat(measured).containsKeys(BUDGETS.keySet().toArray(String[]::new));
+        BUDGETS.forEach((route, budget) -> assertThat(measured.get(route)).as(route).isLessThanOrEqualTo(budget));
+    }
+
+    private static long[] cursorArgs(OrderCursor cursor) {
+        return new long[]{cursor.byUsername() ? 1 : 0, cursor.epochMicros(), cursor.id(), cursor.position()};
+    }
+
+    private void message(long chatId, String text) throws Exception {
+        int updateId = nextUpdateId++;
+        process(chatId, "{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId
+                + ",\"date\":1700000000,\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}," + from(chatId)
+                + ",\"text\":\"" + text + "\"}}");
+    }
+
+    private void callback(long chatId, CallbackAction action, long... args) throws Exception {
+        int updateId = nextUpdateId++;
+        process(chatId, "{\"update_id\":" + updateId + ",\"callback_query\":{\"id\":\"cb" + updateId + "\","
+                + from(chatId) + ",\"chat_instance\":\"1\",\"data\":\"" + callbackCodec.encode(action, args)
+                + "\",\"message\":{\"message_id\":1,\"date\":1700000000,"
+                + "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}}}}");
+    }
+
+    private void process(long chatId, String json) throws Exception {
+        Update update = objectMapper.readValue(json, Update.class);
+        updateConsumer.dispatch(update, chatId).get(30, TimeUnit.SECONDS);
+    }
+
+    private static String from(long chatId) {
+        return "\"from\":{\"id\":" + chatId + ",\"is_bot\":false,\"first_name\":\"Test\",\"username\":\"u" + chatId + "\"}";
+    }
+}
@@ -0,0 +1,108 @@
+package com.safoev.bot.conversation;
+
+import com.safoev.bot.conversation.store.HeapConversationStore;
+import com.safoev.bot.dispatch.UpdateDispatcher;
+import com.safoev.bot.timer.TimingWheel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Вытеснение по лимиту и по простою через индекс, без обхода всех диалогов
+class ConversationEngineTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationEngineTest.class);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TimingWheel timingWheel = new TimingWheel(meterRegistry, Duration.ofSeconds(1), 64, 4);
+    private final UpdateDispatcher updateDispatcher = new UpdateDispatcher(meterRegistry, 1, 100);
+    private final ConversationStore store = new HeapConversationStore();
+
+    @AfterEach
+    void tearDown() {
+        timingWheel.shutdown();
+        updateDispatcher.shutdown();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOnOverflow() {
+        ConversationEngine engine = engine(Duration.ofMinutes(30), 100);
+        for (long chatId = 0; chatId < 150; chatId++) {
+            engine.moveTo(chatId, ConversationStep.ORDER_NAME, ConversationDraft.of("user" + chatId));
+            // Первые десять диалогов активны все время
+            for (long active = 0; active < Math.min(chatId, 10); active++) {
+                assertThat(engine.get(active)).isNotNull();
+            }
+        }
+        engine.evictExpired();
+
+        assertThat(store.size()).isLessThanOrEqualTo(100);
+        for (long active = 0; active < 10; active++) {
+            assertThat(engine.get(active)).isNotNull();
+        }
+        assertThat(meterRegistry.counter("bot.conversations.evicted").count()).isEqualTo(150 - store.size());
+    }
+
+    @Test
+    void removesIdleConversations() throws InterruptedException {
+        ConversationEngine engine = engine(Duration.ofSeconds(1), 100);
+        engine.moveTo(1, ConversationStep.REG_FIRST_NAME, ConversationDraft.of("idle"));
+        engine.moveTo(2, ConversationStep.REG_FIRST_NAME, ConversationDraft.of("active"));
+
+        // Таймеры Caffeine срабатывают с точностью около секунды
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(250);
+            assertThat(engine.get(2)).isNotNull();
+        }
+        engine.evictExpired();
+
+        assertThat(store.get(1)).isNull();
+        assertThat(engine.get(2)).isNotNull();
+        assertThat(meterRegistry.counter("bot.conversations.expired").count()).isEqualTo(1);
+    }
+
+    // При переполнении каждый новый диалог вытесняет один старый за O(1)
+    @Test
+    void overflowCostDoesNotGrowWithSize() {
+        double small = insertsPerSecond(1_000);
+        double large = insertsPerSecond(50_000);
+        log.info("переполнение: лимит 1000 - {} диалогов/с, лимит 50000 - {} диалогов/с", Math.round(small), Math.round(large));
+
+        assertThat(large).isGreaterThan(small / 5);
+    }
+
+    private double insertsPerSecond(int maxSize) {
+        ConversationEngine engine = engine(Duration.ofMinutes(30), maxSize);
+        for (long chatId = 0; chatId < maxSize; chatId++) {
+            engine.moveTo(chatId, ConversationStep.ORDER_NAME, ConversationDraft.of(null));
+        }
+        int overflow = 20_000;
+        long started = System.nanoTime();
+        for (long chatId = maxSize; chatId < maxSize + overflow; chatId++) {
+            engine.moveTo(chatId, ConversationStep.ORDER_NAME, ConversationDraft.of(null));
+        }
+        double perSecond = overflow / ((System.nanoTime() - started) / 1e9);
+        store.forEach((chatId, entry) -> engine.finish(chatId));
+        return perSecond;
+    }
+
+    private ConversationEngine engine(Duration idleTtl, int maxSize) {
+        ConversationTimeoutListener listener = new ConversationTimeoutListener() {
+            @Override
+            public void onReminder(long chatId, Conversation conversation) {
+            }
+
+            @Override
+            public void onAutoCancel(long chatId, Conversation conversation) {
+            }
+        };
+        return new ConversationEngine(store, timingWheel, updateDispatcher, listener, meterRegistry,
+                idleTtl, maxSize, Duration.ofMinutes(10), Duration.ofMinutes(20));
+    }
+}
@@ -0,0 +1,174 @@
+package com.safoev.bot.conversation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.conversation.store.HeapConversationStore;
+import com.safoev.bot.conversation.store.JdbcConversationStore;
+import com.safoev.bot.dispatch.UpdateDispatcher;
+import com.safoev.bot.timer.TimingWheel;
+import com.safoev.support.EmbeddedPostgres;
+import com.safoev.update.domain.service.PartitionLeases;
+import com.safoev.update.domain.service.PartitionListener;
+import com.safoev.update.domain.service.UpdateQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Роль worker: диалог переезжает вместе с партицией чата
+class ConversationHandoffTest {
+
+    private static final int PARTITIONS = 8;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TimingWheel timingWheel = new TimingWheel(meterRegistry, Duration.ofSeconds(1), 64, 4);
+    private final UpdateDispatcher updateDispatcher = new UpdateDispatcher(meterRegistry, 1, 100);
+    private final List<JdbcConversationStore> stores = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbcTemplate = new JdbcTemplate(EmbeddedPostgres.migratedDataSource());
+        jdbcTemplate.update("DELETE FROM conversation_states");
+        jdbcTemplate.update("DELETE FROM partition_leases");
+        jdbcTemplate.update("DELETE FROM worker_nodes");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (JdbcConversationStore store : stores) {
+            store.shutdown();
+        }
+        timingWheel.shutdown();
+        updateDispatcher.shutdown();
+    }
+
+    @Test
+    void workerRefusesNodeLocalStore() {
+        new ApplicationContextRunner()
+                .withUserConfiguration(ConversationHandoff.class)
+                .withBean(ConversationEngine.class, () -> mock(ConversationEngine.class))
+                .withBean(ConversationStore.class, HeapConversationStore::new)
+                .withBean(UpdateQueue.class, () -> mock(UpdateQueue.class))
+                .withPropertyValues("telegram.bot.role=worker")
+                .run(context -> assertThat(context).hasFailed()
+                        .getFailure().rootCause().hasMessageContaining("telegram.bot.conversation.store=jdbc"));
+    }
+
+    @Test
+    void dialogFollowsPartitionToAnotherNode() {
+        Node first = new Node();
+        Node second = new Node();
+        long chatId = -1001234567890L;
+        int partition = first.queue.partitionOf(chatId);
+        ConversationDraft draft = ConversationDraft.of("user").withFirstName("Иван").withLastName("Петров");
+
+        first.handoff.acquired(new int[]{partition});
+        first.engine.moveTo(chatId, ConversationStep.REG_PHONE, draft);
+
+        first.handoff.beforeRelease(new int[]{partition});
+        assertThat(first.engine.get(chatId)).isNull();
+
+        second.handoff.acquired(new int[]{partition});
+        assertThat(second.engine.get(chatId)).isEqualTo(new Conversation(ConversationStep.REG_PHONE, draft));
+    }
+
+    @Test
+    void changesOfLostPartitionAreDiscarded() {
+        Node first = new Node();
+        Node second = new Node();
+        long chatId = 42;
+        int partition = first.queue.partitionOf(chatId);
+        ConversationDraft draft = ConversationDraft.of("user");
+
+        first.handoff.acquired(new int[]{partition});
+        first.engine.moveTo(chatId, ConversationStep.REG_FIRST_NAME, draft);
+        first.handoff.beforeRelease(new int[]{partition});
+        second.handoff.acquired(new int[]{partition});
+
+        // Первый узел снова получил партицию, но его аренда истекла раньше, чем он записал изменение
+        first.handoff.acquired(new int[]{partition});
+        first.engine.moveTo(chatId, ConversationStep.REG_LAST_NAME, draft.withFirstName("Иван"));
+        first.handoff.lost(new int[]{partition});
+
+        assertThat(first.engine.get(chatId)).isNull();
+        assertThat(jdbcTemplate.queryForObject("SELECT step FROM conversation_states WHERE chat_id = ?",
+                String.class, chatId)).isEqualTo(ConversationStep.REG_FIRST_NAME.name());
+    }
+
+    @Test
+    void leasesNotifyListenersOnRebalance() {
+        List<String> events = new ArrayList<>();
+        PartitionLeases first = leases("a", events);
+        PartitionLeases second = leases("b", events);
+        first.initialize();
+
+        assertThat(first.rebalance()).containsExactly(0, 1, 2, 3, 4, 5, 6, 7);
+        // Второй узел зарегистрировался, но свободных партиций еще нет
+        assertThat(second.rebalance()).isEmpty();
+        assertThat(first.rebalance()).containsExactly(0, 1, 2, 3);
+        assertThat(second.rebalance()).containsExactly(4, 5, 6, 7);
+        first.releaseAll();
+
+        assertThat(events).containsExactly(
+                "a acquired [0, 1, 2, 3, 4, 5, 6, 7]",
+                "a beforeRelease [4, 5, 6, 7]",
+                "b acquired [4, 5, 6, 7]",
+                "a beforeRelease [0, 1, 2, 3]");
+    }
+
+    private PartitionLeases leases(String nodeId, List<String> events) {
+        return new PartitionLeases(jdbcTemplate, PARTITIONS, Duration.ofSeconds(10), nodeId, List.of(
+                new PartitionListener() {
+                    @Override
+                    public void beforeRelease(int[] partitions) {
+                        events.add(nodeId + " beforeRelease " + Arrays.toString(partitions));
+                    }
+
+                    @Override
+                    public void lost(int[] partitions) {
+                        events.add(nodeId + " lost " + Arrays.toString(partitions));
+                    }
+
+                    @Override
+                    public void acquired(int[] partitions) {
+                        events.add(nodeId + " acquired " + Arrays.toString(partitions));
+                    }
+                }));
+    }
+
+    // Один worker-узел: свое хранилище и движок поверх общей БД
+    private class Node {
+
+        final UpdateQueue queue = new UpdateQueue(jdbcTemplate, new ObjectMapper(), meterRegistry, PARTITIONS);
+        final JdbcConversationStore store =
+                new JdbcConversationStore(jdbcTemplate, meterRegistry, 500, Duration.ofSeconds(10), "worker");
+        final ConversationEngine engine;
+        final ConversationHandoff handoff;
+
+        Node() {
+            store.restore();
+            stores.add(store);
+            engine = new ConversationEngine(store, timingWheel, updateDispatcher, new ConversationTimeoutListener() {
+                @Override
+                public void onReminder(long chatId, Conversation conversation) {
+                }
+
+                @Override
+                public void onAutoCancel(long chatId, Conversation conversation) {
+                }
+            }, meterRegistry, Duration.ofMinutes(30), 1000, Duration.ofMinutes(10), Duration.ofMinutes(20));
+            handoff = new ConversationHandoff(engine, store, queue);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.safoev.bot.conversation.store;
+
+import com.safoev.bot.conversation.Conversation;
+import com.safoev.bot.conversation.ConversationDraft;
+import com.safoev.bot.conversation.ConversationEntry;
+import com.safoev.bot.conversation.ConversationStep;
+import com.safoev.bot.conversation.ConversationStore;
+import com.safoev.support.EmbeddedPostgres;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Перезапуск узла с постоянными хранилищами: все диалоги на месте.
+// Заодно печатает скорость записи, чтения и восстановления (heap - для сравнения, он перезапуск не переживает)
+class ConversationStoreRecoveryTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationStoreRecoveryTest.class);
+
+    private static final int DIALOGS = 50_000;
+    private static final long LAST_ACCESS = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void heapLosesDialogsOnRestart() {
+        HeapConversationStore store = new HeapConversationStore();
+        double writes = write(store);
+        double reads = read(store);
+
+        ConversationStore restarted = new HeapConversationStore();
+        report("heap", writes, reads, 0, restarted.size());
+        assertThat(restarted.size()).isZero();
+    }
+
+    @Test
+    void mmapRestoresDialogs() throws Exception {
+        Path file = dir.resolve("conversations.dat");
+        MappedFileConversationStore store = new MappedFileConversationStore(file, 1024, DIALOGS);
+        double writes = write(store);
+        double reads = read(store);
+        store.shutdown();
+
+        long started = System.nanoTime();
+        MappedFileConversationStore restarted = new MappedFileConversationStore(file, 1024, DIALOGS);
+        report("mmap", writes, reads, System.nanoTime() - started, restarted.size());
+        assertRestored(restarted);
+    }
+
+    @Test
+    void jdbcRestoresDialogs() throws Exception {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(EmbeddedPostgres.migratedDataSource());
+        jdbcTemplate.update("DELETE FROM conversation_states");
+
+        JdbcConversationStore store = new JdbcConversationStore(jdbcTemplate, new SimpleMeterRegistry(), 500, Duration.ofMillis(200), "standalone");
+        store.restore();
+        // Запись считается завершенной, когда последняя пачка легла в БД
+        long started = System.nanoTime();
+        fill(store);
+        store.shutdown();
+        double writes = DIALOGS / ((System.nanoTime() - started) / 1e9);
+        double reads = read(store);
+
+        started = System.nanoTime();
+        JdbcConversationStore restarted = new JdbcConversationStore(jdbcTemplate, new SimpleMeterRegistry(), 500, Duration.ofMillis(200), "standalone");
+        restarted.restore();
+        report("jdbc", writes, reads, System.nanoTime() - started, restarted.size());
+        assertRestored(restarted);
+        restarted.shutdown();
+    }
+
+    private static double write(ConversationStore store) {
+        long started = System.nanoTime();
+        fill(store);
+        return DIALOGS / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private static void fill(ConversationStore store) {
+        for (long chatId = 0; chatId < DIALOGS; chatId++) {
+            store.put(chatId, entry(chatId));
+        }
+    }
+
+    private static double read(ConversationStore store) {
+        int rounds = 20;
+        long found = 0;
+        long started = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (long chatId = 0; chatId < DIALOGS; chatId++) {
+                if (store.get(chatId) != null) {
+                    found++;
+                }
+            }
+        }
+        assertThat(found).isEqualTo((long) rounds * DIALOGS);
+        return found / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private static void assertRestored(ConversationStore store) {
+        assertThat(store.size()).isEqualTo(DIALOGS);
+        for (long chatId = 0; chatId < DIALOGS; chatId += 997) {
+            ConversationEntry restored = store.get(chatId);
+            assertThat(restored.getConversation()).isEqualTo(entry(chatId).getConversation());
+            assertThat(restored.getLastAccessMillis()).isEqualTo(LAST_ACCESS + chatId);
+        }
+    }
+
+    private static ConversationEntry entry(long chatId) {
+        ConversationDraft draft = ConversationDraft.of("user" + chatId)
+                .withFirstName("Иван")
+                .withLastName("Петров")
+                .withPhone("+7999" + (1_000_000 + chatId));
+        return new ConversationEntry(new Conversation(ConversationStep.ORDER_PHONE, draft), LAST_ACCESS + chatId);
+    }
+
+    private static void report(String store, double writes, double reads, long restoreNanos, int restored) {
+        log.info("{}: запись {}/с, чтение {}/с, восстановлено {} диалогов за {} мс",
+                store, Math.round(writes), Math.round(reads), restored, restoreNanos / 1_000_000);
+    }
+}
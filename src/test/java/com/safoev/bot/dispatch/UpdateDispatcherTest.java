@@ -0,0 +1,118 @@
+package com.safoev.bot.dispatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Проверка полос: порядок внутри чата. Рост пропускной способности с числом потоков меряется
+// по настенным часам и на загруженной машине нестабилен, поэтому запускается отдельно:
+// BOT_CLUSTER_BENCHMARK=true ./gradlew test --tests UpdateDispatcherTest
+class UpdateDispatcherTest {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateDispatcherTest.class);
+
+    private static final int CHATS = 200;
+    private static final int UPDATES_PER_CHAT = 20;
+
+    @Test
+    void keepsOrderWithinChat() throws InterruptedException {
+        UpdateDispatcher dispatcher = new UpdateDispatcher(new SimpleMeterRegistry(), 8, 10_000);
+        Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+        Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(CHATS * UPDATES_PER_CHAT);
+
+        for (int i = 0; i < UPDATES_PER_CHAT; i++) {
+            for (long chatId = 0; chatId < CHATS; chatId++) {
+                long chat = chatId;
+                int sequence = i;
+                dispatcher.submit(chat, () -> {
+                    // В одной полосе одновременно работает не больше одного потока
+                    if (running.computeIfAbsent(chat, c -> new AtomicInteger()).incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    seen.computeIfAbsent(chat, c -> new ArrayList<>()).add(sequence);
+                    running.get(chat).decrementAndGet();
+                    done.countDown();
+                });
+            }
+        }
+
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(overlaps).hasValue(0);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < UPDATES_PER_CHAT; i++) {
+            expected.add(i);
+        }
+        seen.values().forEach(sequence -> assertThat(sequence).isEqualTo(expected));
+        dispatcher.shutdown();
+    }
+
+    // Обработчик, ждущий ввода-вывода (БД, Telegram API): пропускная способность растет с числом потоков
+    @Test
+    @EnabledIfEnvironmentVariable(named = "BOT_CLUSTER_BENCHMARK", matches = "true")
+    void throughputScalesWithThreadsForBlockingHandlers() throws InterruptedException {
+        double single = measure(1, () -> LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2)), 500);
+        double parallel = measure(16, () -> LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2)), 500);
+        log.info("blocking 2ms: 1 поток {} обн/с, 16 потоков {} обн/с", Math.round(single), Math.round(parallel));
+
+        assertThat(parallel).isGreaterThan(single * 6);
+    }
+
+    // Обработчик, занятый вычислениями: рост ограничен числом ядер
+    @Test
+    @EnabledIfEnvironmentVariable(named = "BOT_CLUSTER_BENCHMARK", matches = "true")
+    void throughputScalesWithCoresForCpuBoundHandlers() throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        Assumptions.assumeTrue(cores >= 2, "нужно хотя бы 2 ядра");
+
+        double single = measure(1, UpdateDispatcherTest::burnCpu, 2000);
+        double parallel = measure(cores, UpdateDispatcherTest::burnCpu, 2000);
+        log.info("cpu-bound: 1 поток {} обн/с, {} потоков {} обн/с", Math.round(single), cores, Math.round(parallel));
+
+        assertThat(parallel).isGreaterThan(single * Math.min(cores, 4) * 0.5);
+    }
+
+    // Обновлений в секунду: каждое обновление в своем чате, чтобы упираться в пул, а не в полосы
+    private static double measure(int threads, Runnable handler, int updates) throws InterruptedException {
+        UpdateDispatcher dispatcher = new UpdateDispatcher(new SimpleMeterRegistry(), threads, updates);
+        CountDownLatch done = new CountDownLatch(updates);
+        long started = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            dispatcher.submit(i, () -> {
+                handler.run();
+                done.countDown();
+            });
+        }
+        assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+        double perSecond = updates / ((System.nanoTime() - started) / 1e9);
+        assertThat(dispatcher.drain(Duration.ofSeconds(5))).isTrue();
+        dispatcher.shutdown();
+        return perSecond;
+    }
+
+    private static volatile long sink;
+
+    private static void burnCpu() {
+        long x = 0;
+        for (int i = 0; i < 200_000; i++) {
+            x += (x ^ i) * 31;
+        }
+        sink = x;
+    }
+}
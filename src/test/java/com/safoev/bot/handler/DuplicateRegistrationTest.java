@@ -0,0 +1,59 @@
+package com.safoev.bot.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.UpdateConsumer;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.support.IntegrationTest;
+import com.safoev.support.TelegramUpdates;
+import com.safoev.user.domain.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Регистрация выполняется в транзакции обновления: отказ из-за занятого телефона
+// не должен откатывать ее вместе с ответом пользователю
+class DuplicateRegistrationTest extends IntegrationTest {
+
+    @Autowired
+    private UpdateConsumer updateConsumer;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private UserService userService;
+
+    private final CallbackCodec callbackCodec = new CallbackCodec();
+    private TelegramUpdates updates;
+
+    @BeforeEach
+    void setUp() {
+        updates = new TelegramUpdates(updateConsumer, objectMapper, telegramClient);
+    }
+
+    @Test
+    void duplicatePhoneIsReported() throws Exception {
+        long first = ThreadLocalRandom.current().nextLong(1, 1L << 40);
+        long second = first + 1;
+        String phone = "+7999" + ThreadLocalRandom.current().nextInt(1_000_000, 10_000_000);
+
+        register(first, phone);
+        assertThat(userService.existsByTelegramId(first)).isTrue();
+
+        register(second, phone);
+        assertThat(updates.awaitSent(second, text -> text.contains("Этот номер телефона уже используется")))
+                .anyMatch(text -> text.contains("❌ Ошибка: Этот номер телефона уже используется"))
+                .anyMatch(text -> text.contains("❌ Регистрация отменена."));
+        assertThat(userService.existsByTelegramId(second)).isFalse();
+    }
+
+    private void register(long chatId, String phone) throws Exception {
+        updates.callback(chatId, callbackCodec.encode(CallbackAction.REGISTRATION));
+        updates.message(chatId, "Иван");
+        updates.message(chatId, "-");
+        updates.message(chatId, phone);
+    }
+}
@@ -0,0 +1,72 @@
+package com.safoev.bot.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.UpdateConsumer;
+import com.safoev.bot.callback.CallbackAction;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
+import com.safoev.order.domain.dto.response.OrderResponseDto;
+import com.safoev.order.domain.exception.OrderNotFoundException;
+import com.safoev.order.domain.service.OrderService;
+import com.safoev.support.IntegrationTest;
+import com.safoev.support.TelegramUpdates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Карточка заказа по id из кнопки: id идут подряд, поэтому показывается только заказ своего чата
+class OrderDetailsAccessTest extends IntegrationTest {
+
+    private static final String PHONE = "+79990001122";
+    private static final String DETAILS = "Ремонт ванной, ключи у консьержа";
+
+    @Autowired
+    private UpdateConsumer updateConsumer;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private OrderService orderService;
+
+    private final CallbackCodec callbackCodec = new CallbackCodec();
+    private TelegramUpdates updates;
+
+    @BeforeEach
+    void setUp() {
+        updates = new TelegramUpdates(updateConsumer, objectMapper, telegramClient);
+    }
+
+    @Test
+    void forgedCallbackDoesNotShowForeignOrder() throws Exception {
+        long ownerChat = ThreadLocalRandom.current().nextLong(1, 1L << 40);
+        long otherChat = ownerChat + 1;
+        OrderResponseDto order = createOrder(ownerChat);
+        String viewOrder = callbackCodec.encode(CallbackAction.VIEW_ORDER, order.getId());
+
+        // Владелец смотрит первым: карточка уже в кэше, проверка владельца не должна его обходить
+        updates.callback(ownerChat, viewOrder);
+        // Телефон есть только в карточке; подтверждение создания в тот же чат его не содержит
+        assertThat(updates.awaitSent(ownerChat, text -> text.contains(PHONE))).anyMatch(text -> text.contains(DETAILS));
+
+        updates.callback(otherChat, viewOrder);
+        assertThat(updates.awaitSent(otherChat, text -> text.contains("Заказ не найден")))
+                .anyMatch(text -> text.contains("❌ Заказ не найден!"))
+                .noneMatch(text -> text.contains(PHONE) || text.contains(DETAILS) || text.contains(order.getOrderNumber()));
+
+        assertThatThrownBy(() -> orderService.getOrderDetails(otherChat, order.getId()))
+                .isInstanceOf(OrderNotFoundException.class);
+        assertThat(orderService.getOrderDetails(ownerChat, order.getId()).getCustomerPhone()).isEqualTo(PHONE);
+    }
+
+    private OrderResponseDto createOrder(long chatId) {
+        OrderCreateRequestDto request = new OrderCreateRequestDto();
+        request.setCustomerName("Иван");
+        request.setCustomerPhone(PHONE);
+        request.setOrderDetails(DETAILS);
+        return orderService.createOrder(chatId, null, "user" + chatId, request, "details-test-" + chatId);
+    }
+}
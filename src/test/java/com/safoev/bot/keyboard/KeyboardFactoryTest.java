@@ -0,0 +1,66 @@
+package com.safoev.bot.keyboard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.callback.CallbackCodec;
+import com.safoev.order.domain.dto.OrderCursor;
+import com.safoev.order.domain.dto.OrderPage;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeyboardFactoryTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KeyboardFactory keyboardFactory = new KeyboardFactory(new CallbackCodec(), objectMapper);
+
+    @Test
+    void sharedKeyboardsCannotBeModified() {
+        InlineKeyboardMarkup menu = keyboardFactory.createMainMenuForAuthorized();
+        InlineKeyboardRow row = menu.getKeyboard().get(0);
+        InlineKeyboardButton extra = InlineKeyboardButton.builder().text("x").callbackData("x").build();
+
+        assertThatThrownBy(() -> menu.getKeyboard().add(new InlineKeyboardRow(extra)))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> menu.setKeyboard(List.of()))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> row.add(extra)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> row.set(0, extra)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(row::clear).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> row.iterator().remove()).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> row.subList(0, 1).set(0, extra)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void orderKeyboardsShareOnlyFrozenRows() {
+        InlineKeyboardMarkup first = keyboardFactory.createConfirmCancelKeyboard(1);
+        InlineKeyboardMarkup second = keyboardFactory.createConfirmCancelKeyboard(2);
+
+        assertThat(first.getKeyboard().get(1)).isSameAs(second.getKeyboard().get(1));
+        assertThatThrownBy(() -> first.getKeyboard().get(1).remove(0)).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(first.getKeyboard().get(0).get(0).getCallbackData())
+                .isNotEqualTo(second.getKeyboard().get(0).get(0).getCallbackData());
+    }
+
+    @Test
+    void jsonMatchesPlainKeyboards() throws Exception {
+        InlineKeyboardMarkup menu = keyboardFactory.createMainMenuForUnauthorized();
+        InlineKeyboardMarkup plain = new InlineKeyboardMarkup(menu.getKeyboard().stream()
+                .map(InlineKeyboardRow::new)
+                .toList());
+
+        assertThat(keyboardFactory.toJson(menu)).isEqualTo(objectMapper.writeValueAsString(plain));
+        assertThat(keyboardFactory.fromJson(keyboardFactory.toJson(menu))).isSameAs(menu);
+
+        OrderCursor cursor = new OrderCursor(false, LocalDateTime.of(2026, 1, 2, 3, 4, 5), 77, 6);
+        InlineKeyboardMarkup page = keyboardFactory.createOrdersPageKeyboard(
+                OrderPage.builder().items(List.of()).newer(cursor).older(cursor).build());
+        assertThat(keyboardFactory.fromJson(keyboardFactory.toJson(page))).isEqualTo(page);
+    }
+}
@@ -0,0 +1,86 @@
+package com.safoev.bot.outbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class OutboundDispatcherTest {
+
+    private static final long CHAT_ID = 42;
+    // 5 сообщений в секунду, burst 3: четвертое подряд ждет ~200 мс
+    private static final double CHAT_PER_SECOND = 5;
+    private static final double CHAT_BURST = 3;
+
+    private final TelegramClient telegramClient = mock(TelegramClient.class);
+    private final OutboundDispatcher dispatcher = new OutboundDispatcher(telegramClient, new SimpleMeterRegistry(),
+            1000, CHAT_PER_SECOND, CHAT_BURST, 20, 3, 2);
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void chatLimitSurvivesEmptyQueue() throws Exception {
+        stubTelegram();
+        // Весь burst уходит сразу, очередь чата пустеет и удаляется
+        long started = System.nanoTime();
+        sendAll(messages(3));
+        assertThat(elapsedMillis(started)).isLessThan(150);
+
+        // Новая очередь того же чата не получает свежий burst
+        started = System.nanoTime();
+        sendAll(messages(1));
+        assertThat(elapsedMillis(started)).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void callbackAnswersDoNotSpendChatLimit() throws Exception {
+        stubTelegram();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(dispatcher.submit(CHAT_ID, AnswerCallbackQuery.builder().callbackQueryId("q" + i).build(),
+                    OutboundPriority.INTERACTIVE));
+        }
+        futures.addAll(messages(3));
+
+        long started = System.nanoTime();
+        sendAll(futures);
+        assertThat(elapsedMillis(started)).isLessThan(150);
+    }
+
+    private List<CompletableFuture<?>> messages(int count) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(dispatcher.submit(CHAT_ID, SendMessage.builder().chatId(CHAT_ID).text("m" + i).build(),
+                    OutboundPriority.INTERACTIVE));
+        }
+        return futures;
+    }
+
+    private static void sendAll(List<CompletableFuture<?>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+    }
+
+    private void stubTelegram() throws Exception {
+        doReturn(null).when(telegramClient).execute(any(BotApiMethod.class));
+    }
+
+    private static long elapsedMillis(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+}
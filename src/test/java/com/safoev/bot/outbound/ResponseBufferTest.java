@@ -0,0 +1,65 @@
+package com.safoev.bot.outbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResponseBufferTest {
+
+    private static final long CHAT_ID = 7;
+
+    private final OutboundDispatcher outboundDispatcher = mock(OutboundDispatcher.class);
+    private final ResponseBuffer responseBuffer = new ResponseBuffer(outboundDispatcher, new SimpleMeterRegistry());
+
+    @Test
+    void flushesMergedMessagesAfterNormalCompletion() {
+        when(outboundDispatcher.submit(anyLong(), any(SendMessage.class), any()))
+                .thenReturn(CompletableFuture.completedFuture(new Message()));
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[2];
+        responseBuffer.collect(() -> {
+            futures[0] = responseBuffer.submit(CHAT_ID, message("первое"), OutboundPriority.INTERACTIVE);
+            futures[1] = responseBuffer.submit(CHAT_ID, message("второе"), OutboundPriority.INTERACTIVE);
+        });
+
+        verify(outboundDispatcher, times(1)).submit(anyLong(), any(SendMessage.class), any());
+        assertThat(futures[0]).isCompleted();
+        assertThat(futures[1]).isCompleted();
+    }
+
+    @Test
+    void dropsBufferWhenHandlingFails() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[1];
+        assertThatThrownBy(() -> responseBuffer.collect(() -> {
+            futures[0] = responseBuffer.submit(CHAT_ID, message("заказ отменен"), OutboundPriority.INTERACTIVE);
+            // Например, откат транзакции при фиксации
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        verify(outboundDispatcher, never()).submit(anyLong(), any(SendMessage.class), any());
+        assertThat(futures[0]).isCancelled();
+
+        // Следующая обработка в том же потоке начинается с пустого буфера
+        when(outboundDispatcher.submit(anyLong(), any(SendMessage.class), any()))
+                .thenReturn(CompletableFuture.completedFuture(new Message()));
+        responseBuffer.collect(() -> responseBuffer.submit(CHAT_ID, message("ok"), OutboundPriority.INTERACTIVE));
+        verify(outboundDispatcher, times(1)).submit(anyLong(), any(SendMessage.class), any());
+    }
+
+    private static SendMessage message(String text) {
+        return SendMessage.builder().chatId(CHAT_ID).text(text).build();
+    }
+}
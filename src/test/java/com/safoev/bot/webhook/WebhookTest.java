@@ -0,0 +1,114 @@
+package com.safoev.bot.webhook;
+
+import com.safoev.TelegramBotConfig;
+import com.safoev.bot.UpdateConsumer;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class WebhookTest {
+
+    private static final String SECRET = "s3cret-token";
+    private static final String UPDATE = "{\"update_id\": 1}";
+
+    // Заглушка Bot API: запоминает тела запросов и отвечает успехом
+    private HttpServer botApi;
+    private final List<String> botApiRequests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startBotApi() throws IOException {
+        botApi = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        botApi.createContext("/", exchange -> {
+            botApiRequests.add(exchange.getRequestURI().getPath() + " "
+                    + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] response = "{\"ok\":true,\"result\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        });
+        botApi.start();
+    }
+
+    @AfterEach
+    void stopBotApi() {
+        botApi.stop(0);
+    }
+
+    private ApplicationContextRunner webhookContext() {
+        return new ApplicationContextRunner()
+                .withUserConfiguration(TelegramBotConfig.class, WebhookController.class, WebhookRegistrar.class)
+                .withBean(UpdateConsumer.class, () -> mock(UpdateConsumer.class))
+                .withPropertyValues(
+                        "telegram.bot.mode=webhook",
+                        "telegram.bot.token=123:test",
+                        "telegram.bot.api-url=http://127.0.0.1:" + botApi.getAddress().getPort(),
+                        "telegram.bot.webhook.url=https://bot.example.com/telegram/webhook");
+    }
+
+    @Test
+    void refusesToStartWithoutSecret() {
+        webhookContext()
+                .withPropertyValues("telegram.bot.webhook.secret-token=")
+                .run(context -> assertThat(context).hasFailed()
+                        .getFailure().rootCause().hasMessageContaining("secret-token"));
+    }
+
+    @Test
+    void registersWebhookWithSecret() {
+        webhookContext()
+                .withPropertyValues("telegram.bot.webhook.secret-token=" + SECRET)
+                .run(context -> {
+                    assertThat(context).hasNotFailed();
+                    context.getBean(WebhookRegistrar.class).registerWebhook();
+                });
+
+        assertThat(botApiRequests).hasSize(1);
+        String request = URLDecoder.decode(botApiRequests.get(0), StandardCharsets.UTF_8);
+        assertThat(request).contains("/setWebhook").contains(SECRET);
+    }
+
+    @Test
+    void acceptsOnlyRequestsWithSecret() throws Exception {
+        UpdateConsumer updateConsumer = mock(UpdateConsumer.class);
+        when(updateConsumer.offer(any())).thenReturn(true);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new WebhookController(updateConsumer, SECRET))
+                .addPlaceholderValue("telegram.bot.webhook.path", "/telegram/webhook")
+                .build();
+
+        mvc.perform(post("/telegram/webhook").contentType(MediaType.APPLICATION_JSON).content(UPDATE))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(post("/telegram/webhook").contentType(MediaType.APPLICATION_JSON).content(UPDATE)
+                        .header(WebhookController.SECRET_TOKEN_HEADER, "wrong"))
+                .andExpect(status().isUnauthorized());
+        verify(updateConsumer, never()).offer(any());
+
+        mvc.perform(post("/telegram/webhook").contentType(MediaType.APPLICATION_JSON).content(UPDATE)
+                        .header(WebhookController.SECRET_TOKEN_HEADER, SECRET))
+                .andExpect(status().isOk());
+        verify(updateConsumer).offer(any());
+    }
+}
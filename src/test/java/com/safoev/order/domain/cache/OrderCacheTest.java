@@ -0,0 +1,264 @@
+package com.safoev.order.domain.cache;
+
+import com.safoev.cache.LocalCacheInvalidationBus;
+import com.safoev.cache.PostgresCacheInvalidationBus;
+import com.safoev.order.domain.cache.OrderCache.PageOwner;
+import com.safoev.order.domain.dto.OrderPage;
+import com.safoev.order.domain.dto.response.OrderDetailDto;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import com.safoev.order.domain.enums.OrderStatus;
+import com.safoev.support.EmbeddedPostgres;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// Устаревшие чтения: сброс по владельцу, порядок относительно фиксации, сброс на другом узле
+class OrderCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<PostgresCacheInvalidationBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void stopBuses() throws InterruptedException {
+        for (PostgresCacheInvalidationBus bus : buses) {
+            bus.stop();
+        }
+    }
+
+    // Изменение наружного экземпляра не портит кэш
+    @Test
+    void returnsCopies() {
+        OrderCache cache = localCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        OrderDetailDto loaded = cache.getDetails("A-1", () -> load(loads, details(1, "A-1", OrderStatus.NEW))).orElseThrow();
+        loaded.setStatus(OrderStatus.CANCELLED);
+        OrderDetailDto cached = cache.getDetails("A-1", () -> load(loads, details(1, "A-1", OrderStatus.NEW))).orElseThrow();
+        cached.setCustomerName("Другой");
+        assertThat(cache.getDetails("A-1", () -> load(loads, null)).orElseThrow())
+                .extracting(OrderDetailDto::getStatus, OrderDetailDto::getCustomerName)
+                .containsExactly(OrderStatus.NEW, "Иван");
+        assertThat(loads).hasValue(1);
+
+        PageOwner owner = new PageOwner(1L, "ivan");
+        OrderPage page = cache.getPage(owner, null, false, 5, () -> page(1, OrderStatus.NEW));
+        page.getItems().get(0).setStatus(OrderStatus.CANCELLED);
+        page.getItems().clear();
+        OrderPage hit = cache.getPage(owner, null, false, 5, () -> page(99, OrderStatus.NEW));
+        assertThat(hit.getItems()).extracting(OrderListItemDto::getId, OrderListItemDto::getStatus)
+                .containsExactly(tuple(1L, OrderStatus.NEW));
+    }
+
+    // Сбрасываются страницы всех владельцев с тем же telegramId или username, остальные остаются
+    @Test
+    void invalidatesPagesOfMatchingOwnersOnly() {
+        OrderCache cache = localCache();
+        PageOwner registered = new PageOwner(1L, "ivan");
+        PageOwner renamed = new PageOwner(1L, "ivan_new");
+        PageOwner guest = new PageOwner(null, "ivan");
+        PageOwner other = new PageOwner(2L, "petr");
+        for (PageOwner owner : List.of(registered, renamed, guest, other)) {
+            cache.getPage(owner, null, false, 5, () -> page(1, OrderStatus.NEW));
+        }
+
+        // Заказ гостя по username: его список и список зарегистрированного с тем же username
+        cache.orderChanged(10, "A-10", null, "ivan");
+        assertThat(cached(cache, registered)).isFalse();
+        assertThat(cached(cache, guest)).isFalse();
+        assertThat(cached(cache, renamed)).isTrue();
+        assertThat(cached(cache, other)).isTrue();
+
+        // Заказ пользователя 1 под новым username: все его списки
+        cache.getPage(registered, null, false, 5, () -> page(1, OrderStatus.NEW));
+        cache.orderChanged(11, "A-11", 1L, "ivan_new");
+        assertThat(cached(cache, registered)).isFalse();
+        assertThat(cached(cache, renamed)).isFalse();
+        assertThat(cached(cache, other)).isTrue();
+
+        // Владелец, вытесненный и снова закэшированный, по-прежнему находится сбросом
+        for (int round = 0; round < 100; round++) {
+            cache.getPage(registered, null, false, 5, () -> page(1, OrderStatus.NEW));
+            cache.orderChanged(12, "A-12", 1L, null);
+            assertThat(cached(cache, registered)).isFalse();
+        }
+        assertThat(cached(cache, other)).isTrue();
+    }
+
+    // Сброс пришел, пока шла загрузка: прочитанное до изменения отдается, но не кэшируется
+    @Test
+    void loadRacingWithInvalidationIsNotCached() {
+        OrderCache cache = localCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        Optional<OrderDetailDto> stale = cache.getDetails("A-1", () -> {
+            Optional<OrderDetailDto> old = load(loads, details(1, "A-1", OrderStatus.NEW));
+            cache.orderChanged(1, "A-1", 1L, "ivan");
+            return old;
+        });
+        assertThat(stale.orElseThrow().getStatus()).isEqualTo(OrderStatus.NEW);
+        assertThat(cache.getDetails("A-1", () -> load(loads, details(1, "A-1", OrderStatus.CANCELLED))).orElseThrow()
+                .getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(loads).hasValue(2);
+
+        PageOwner owner = new PageOwner(1L, "ivan");
+        cache.getPage(owner, null, false, 5, () -> {
+            OrderPage old = page(1, OrderStatus.NEW);
+            cache.orderChanged(1, "A-1", null, "ivan");
+            return old;
+        });
+        assertThat(cached(cache, owner)).isFalse();
+    }
+
+    // Транзакция, изменившая заказ, видит свои данные, но не кладет их в кэш:
+    // после отката другие читают зафиксированное; до фиксации сброса нет
+    @Test
+    void uncommittedChangesDoNotLeak() {
+        OrderCache cache = localCache();
+        TransactionTemplate transactions = new TransactionTemplate(
+                new DataSourceTransactionManager(EmbeddedPostgres.migratedDataSource()));
+        Supplier<Optional<OrderDetailDto>> committed = () -> Optional.of(details(1, "A-1", OrderStatus.NEW));
+        cache.getDetails("A-1", committed);
+
+        transactions.executeWithoutResult(status -> {
+            cache.orderChanged(1, "A-1", 1L, "ivan");
+            assertThat(cache.getDetails("A-1", () -> Optional.of(details(1, "A-1", OrderStatus.CANCELLED)))
+                    .orElseThrow().getStatus()).isEqualTo(OrderStatus.CANCELLED);
+            // Сброс еще не выполнен: другие потоки до фиксации читают зафиксированное
+            assertThat(CompletableFuture.supplyAsync(() -> cache.getDetails("A-1", Optional::empty)).join()
+                    .orElseThrow().getStatus()).isEqualTo(OrderStatus.NEW);
+            status.setRollbackOnly();
+        });
+
+        assertThat(cache.getDetails("A-1", Optional::empty).orElseThrow().getStatus())
+                .isEqualTo(OrderStatus.NEW);
+    }
+
+    // Узел B держит список в кэше; заказ меняется на узле A. Пока A не зафиксировал,
+    // B читает старое и кэширует его - сброс приходит после фиксации и снимает и это значение
+    @Test
+    void changeOnAnotherNodeIsSeenAfterCommit() throws InterruptedException {
+        DataSource dataSource = EmbeddedPostgres.migratedDataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Integer listenersBefore = listeners(jdbcTemplate);
+        OrderCache a = postgresCache(dataSource);
+        OrderCache b = postgresCache(dataSource);
+        awaitListeners(jdbcTemplate, listenersBefore + 2);
+
+        String number = "X-" + ThreadLocalRandom.current().nextInt(1_000_000);
+        Map<String, OrderStatus> table = new ConcurrentHashMap<>(Map.of(number, OrderStatus.NEW));
+        Supplier<Optional<OrderDetailDto>> loader = () -> Optional.of(details(1, number, table.get(number)));
+        PageOwner owner = new PageOwner(7L, "ivan");
+        Supplier<OrderPage> pageLoader = () -> page(1, table.get(number));
+        b.getPage(owner, null, false, 5, pageLoader);
+
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status -> {
+            a.orderChanged(1, number, null, "ivan");
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    table.put(number, OrderStatus.CANCELLED);
+                }
+            });
+            sleep(300);
+            // Читает другой поток узла B: эта транзакция кэш не использует
+            assertThat(CompletableFuture.supplyAsync(() -> b.getDetails(number, loader)).join()
+                    .orElseThrow().getStatus()).isEqualTo(OrderStatus.NEW);
+            assertThat(CompletableFuture.supplyAsync(() -> b.getDetails(number, Optional::empty)).join()
+                    .orElseThrow().getStatus()).isEqualTo(OrderStatus.NEW);
+        });
+
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (b.getDetails(number, loader).orElseThrow().getStatus() != OrderStatus.CANCELLED
+                && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(b.getDetails(number, loader).orElseThrow().getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(b.getPage(owner, null, false, 5, pageLoader).getItems().get(0).getStatus())
+                .isEqualTo(OrderStatus.CANCELLED);
+    }
+
+    private static boolean cached(OrderCache cache, PageOwner owner) {
+        AtomicInteger loads = new AtomicInteger();
+        cache.getPage(owner, null, false, 5, () -> {
+            loads.incrementAndGet();
+            return page(1, OrderStatus.NEW);
+        });
+        return loads.get() == 0;
+    }
+
+    private static OrderCache localCache() {
+        return new OrderCache(new LocalCacheInvalidationBus(), new SimpleMeterRegistry(),
+                1000, Duration.ofMinutes(10), 1000, Duration.ofMinutes(2));
+    }
+
+    private OrderCache postgresCache(DataSource dataSource) {
+        PostgresCacheInvalidationBus bus = new PostgresCacheInvalidationBus(dataSource, new JdbcTemplate(dataSource));
+        buses.add(bus);
+        OrderCache cache = new OrderCache(bus, new SimpleMeterRegistry(),
+                1000, Duration.ofMinutes(10), 1000, Duration.ofMinutes(2));
+        bus.start();
+        return cache;
+    }
+
+    private static Optional<OrderDetailDto> load(AtomicInteger loads, OrderDetailDto details) {
+        loads.incrementAndGet();
+        return Optional.ofNullable(details);
+    }
+
+    private static OrderDetailDto details(long id, String number, OrderStatus status) {
+        return OrderDetailDto.builder()
+                .id(id)
+                .orderNumber(number)
+                .customerName("Иван")
+                .status(status)
+                .build();
+    }
+
+    private static OrderPage page(long id, OrderStatus status) {
+        List<OrderListItemDto> items = new ArrayList<>();
+        items.add(OrderListItemDto.builder().id(id).orderNumber("A-" + id).status(status).build());
+        return OrderPage.builder().items(items).firstPosition(1).build();
+    }
+
+    private static Integer listeners(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_stat_activity WHERE query LIKE 'LISTEN %'", Integer.class);
+    }
+
+    private static void awaitListeners(JdbcTemplate jdbcTemplate, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (listeners(jdbcTemplate) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(listeners(jdbcTemplate)).isGreaterThanOrEqualTo(expected);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
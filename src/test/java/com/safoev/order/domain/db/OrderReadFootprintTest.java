@@ -0,0 +1,154 @@
+package com.safoev.order.domain.db;
+
+import com.safoev.order.domain.dto.response.OrderDetailDto;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import com.safoev.support.IntegrationTest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// До и после перехода на проекции: строки и байты, которые отдает БД, и память на одно чтение.
+// "Сущности" - прежний путь (OrderEntity в read-only транзакции, обрезка описания в Java),
+// "проекция" - OrderViewRepository. Описание заказа - 2000 символов, как максимум колонки
+class OrderReadFootprintTest extends IntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderReadFootprintTest.class);
+
+    private static final int PAGE_ROWS = 6;
+    private static final int ORDERS = 50;
+    private static final int ITERATIONS = 2_000;
+
+    private static final String ENTITY_FIRST_PAGE = "SELECT o.* FROM orders o JOIN users u ON u.id = o.user_id " +
+            "WHERE u.telegram_id = ? ORDER BY o.created_at DESC, o.id DESC LIMIT ?";
+    private static final String ENTITY_DETAIL = "SELECT * FROM orders WHERE order_number = ?";
+
+    @Autowired
+    private OrderViewRepository orderViewRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long telegramId;
+    private String orderNumber;
+
+    @BeforeEach
+    void seed() {
+        // id вне диапазона последовательностей, чтобы не пересечься с заказами других тестов
+        long userId = ThreadLocalRandom.current().nextLong(9_000_000_000L, 9_100_000_000L);
+        telegramId = userId;
+        jdbcTemplate.update("INSERT INTO users (id, telegram_id, first_name, registered_at) VALUES (?, ?, 'Иван', now())",
+                userId, telegramId);
+        jdbcTemplate.update("INSERT INTO orders (id, order_number, chat_id, user_id, customer_name, customer_phone, " +
+                        "order_details, status, created_at) " +
+                        "SELECT ? * 100 + g, 'FOOT-' || (? * 100 + g), ?, ?, 'Иван Петров', '+79991234567', " +
+                        "repeat('Генеральная уборка квартиры. ', 70)::varchar(2000), 'NEW', now() - g * interval '1 minute' " +
+                        "FROM generate_series(1, ?) g",
+                userId, userId, telegramId, userId, ORDERS);
+        orderNumber = "FOOT-" + (userId * 100 + 1);
+    }
+
+    @Test
+    void projectionsTransferAndAllocateLess() {
+        Footprint entityPage = measure(ENTITY_FIRST_PAGE, List.of(telegramId, PAGE_ROWS), this::entityFirstPage);
+        Footprint projectionPage = measure(OrderViewRepository.FIRST_PAGE,
+                List.of(telegramId, PAGE_ROWS, "", PAGE_ROWS),
+                () -> orderViewRepository.findFirstPage(telegramId, null, PAGE_ROWS).rows());
+        Footprint entityDetail = measure(ENTITY_DETAIL, List.of(orderNumber), this::entityDetail);
+        Footprint projectionDetail = measure(OrderViewRepository.DETAIL_BY_NUMBER, List.of(orderNumber),
+                () -> orderViewRepository.findDetailByOrderNumber(orderNumber).orElseThrow());
+
+        Map<String, Footprint> results = new LinkedHashMap<>();
+        results.put("страница, сущности", entityPage);
+        results.put("страница, проекция", projectionPage);
+        results.put("карточка, сущности", entityDetail);
+        results.put("карточка, проекция", projectionDetail);
+        results.forEach((name, f) -> log.info("{}: {} строк, {} байт из БД, {} байт в куче на чтение, {} мкс",
+                name, f.rows(), f.bytes(), f.allocatedPerRead(), Math.round(f.micros())));
+
+        assertThat(projectionPage.rows()).isEqualTo(entityPage.rows());
+        assertThat(projectionPage.bytes()).isLessThan(entityPage.bytes() / 5);
+        assertThat(projectionPage.allocatedPerRead()).isLessThan(entityPage.allocatedPerRead());
+        assertThat(projectionDetail.bytes()).isLessThanOrEqualTo(entityDetail.bytes());
+        assertThat(projectionDetail.allocatedPerRead()).isLessThan(entityDetail.allocatedPerRead());
+    }
+
+    // Как было: страница сущностей, обрезка описания после загрузки
+    private List<OrderListItemDto> entityFirstPage() {
+        return transactionTemplate.execute(status -> {
+            @SuppressWarnings("unchecked")
+            List<OrderEntity> rows = entityManager.createNativeQuery(ENTITY_FIRST_PAGE, OrderEntity.class)
+                    .setParameter(1, telegramId)
+                    .setParameter(2, PAGE_ROWS)
+                    .getResultList();
+            return rows.stream().map(order -> OrderListItemDto.builder()
+                    .id(order.getId())
+                    .orderNumber(order.getOrderNumber())
+                    .orderDetails(order.getOrderDetails().length() <= OrderViewRepository.LIST_DETAILS_LENGTH
+                            ? order.getOrderDetails()
+                            : order.getOrderDetails().substring(0, OrderViewRepository.LIST_DETAILS_LENGTH - 3) + "...")
+                    .status(order.getStatus())
+                    .createdAt(order.getCreatedAt())
+                    .build()).toList();
+        });
+    }
+
+    private OrderDetailDto entityDetail() {
+        return transactionTemplate.execute(status -> orderRepository.findByOrderNumber(orderNumber)
+                .map(order -> OrderDetailDto.builder()
+                        .id(order.getId())
+                        .orderNumber(order.getOrderNumber())
+                        .telegramUsername(order.getTelegramUsername())
+                        .customerName(order.getCustomerName())
+                        .customerPhone(order.getCustomerPhone())
+                        .orderDetails(order.getOrderDetails())
+                        .status(order.getStatus())
+                        .createdAt(order.getCreatedAt())
+                        .build())
+                .orElseThrow());
+    }
+
+    // Строки и байты - по самой БД (строки результата в текстовом виде, как их передает драйвер),
+    // память - выделения потока за чтение
+    private Footprint measure(String sql, List<Object> args, Supplier<?> read) {
+        Map<String, Object> size = jdbcTemplate.queryForMap(
+                "SELECT count(*) AS rows, coalesce(sum(octet_length(r::text)), 0) AS bytes FROM (" + sql + ") r",
+                args.toArray());
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            read.get();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long started = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            read.get();
+        }
+        long elapsed = System.nanoTime() - started;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return new Footprint(((Number) size.get("rows")).intValue(), ((Number) size.get("bytes")).longValue(),
+                allocated / ITERATIONS, elapsed / 1e3 / ITERATIONS);
+    }
+
+    private record Footprint(int rows, long bytes, long allocatedPerRead, double micros) {
+    }
+}
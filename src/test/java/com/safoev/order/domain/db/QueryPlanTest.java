@@ -0,0 +1,130 @@
+package com.safoev.order.domain.db;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.support.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Планы запросов, выполняемых при обработке обновлений, на заполненной базе:
+// ни один не читает orders или users целиком. Отдельная база, чтобы не мешать остальным тестам.
+// Заполнение сотен тысяч строк долгое, поэтому только по запросу:
+// BOT_CLUSTER_BENCHMARK=true ./gradlew test --tests QueryPlanTest
+@EnabledIfEnvironmentVariable(named = "BOT_CLUSTER_BENCHMARK", matches = "true")
+class QueryPlanTest {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryPlanTest.class);
+
+    private static final String DATABASE = "query_plans";
+    private static final int USERS = 20_000;
+    private static final int ORDERS = 400_000;
+    private static final Set<String> LARGE_TABLES = Set.of("orders", "users");
+
+    private static JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void seed() {
+        JdbcTemplate admin = new JdbcTemplate(EmbeddedPostgres.migratedDataSource());
+        admin.execute("DROP DATABASE IF EXISTS " + DATABASE);
+        admin.execute("CREATE DATABASE " + DATABASE);
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                EmbeddedPostgres.jdbcUrl().replace("/postgres?", "/" + DATABASE + "?"), "postgres", "postgres");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        long started = System.nanoTime();
+        jdbcTemplate.update("INSERT INTO users (id, telegram_id, first_name, phone, telegram_user_name, registered_at) " +
+                "SELECT g, 1000000 + g, 'User', '+7999' || lpad(g::text, 7, '0'), 'user' || g, now() " +
+                "FROM generate_series(1, ?) g", USERS);
+        // Половина заказов - зарегистрированных пользователей, половина - по username до регистрации
+        jdbcTemplate.update("INSERT INTO orders (id, order_number, idempotency_key, chat_id, user_id, telegram_username, " +
+                "customer_name, customer_phone, order_details, status, created_at) " +
+                "SELECT g, 'ORD-' || lpad(g::text, 13, '0') || '0', 'update:' || g, " +
+                "CASE WHEN g % 2 = 0 THEN 1000000 + g % ? + 1 END, " +
+                "CASE WHEN g % 2 = 0 THEN g % ? + 1 END, " +
+                "CASE WHEN g % 2 = 0 THEN 'user' || (g % ? + 1) ELSE 'guest' || (g % ?) END, " +
+                "'Иван', '+79991234567', repeat('Уборка квартиры ', 20), " +
+                "(ARRAY['NEW', 'IN_PROGRESS', 'COMPLETED', 'CANCELLED'])[g % 4 + 1], " +
+                "now() - g * interval '1 minute' FROM generate_series(1, ?) g",
+                USERS, USERS, USERS, USERS, ORDERS);
+        jdbcTemplate.execute("ANALYZE");
+        log.info("Заполнено: {} пользователей, {} заказов за {} мс",
+                USERS, ORDERS, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Test
+    void hotQueriesUseIndexes() throws Exception {
+        long telegramId = 1_000_042;
+        Timestamp cursor = Timestamp.valueOf(LocalDateTime.now().minusDays(30));
+        Map<String, Plan> plans = new LinkedHashMap<>();
+
+        plans.put("первая страница", explain(OrderViewRepository.FIRST_PAGE, telegramId, 6, "guest42", 6));
+        plans.put("первая страница по username", explain(OrderViewRepository.FIRST_PAGE, 999L, 6, "guest42", 6));
+        plans.put("старше по telegram_id", explain(OrderViewRepository.OLDER_BY_TELEGRAM_ID, telegramId, cursor, 1_000_000L, 6));
+        plans.put("новее по telegram_id", explain(OrderViewRepository.NEWER_BY_TELEGRAM_ID, telegramId, cursor, 1_000_000L, 6));
+        plans.put("старше по username", explain(OrderViewRepository.OLDER_BY_USERNAME, "guest42", cursor, 1_000_000L, 6));
+        plans.put("новее по username", explain(OrderViewRepository.NEWER_BY_USERNAME, "guest42", cursor, 1_000_000L, 6));
+        plans.put("карточка по номеру", explain(OrderViewRepository.DETAIL_BY_NUMBER, "ORD-00000000012340"));
+        plans.put("карточка по id", explain(OrderViewRepository.DETAIL_BY_ID, 1234L));
+        plans.put("ключи идемпотентности", explain("SELECT * FROM orders WHERE idempotency_key IN (?, ?)",
+                "update:100", "update:101"));
+        plans.put("пользователь по telegram_id", explain("SELECT * FROM users WHERE telegram_id = ?", telegramId));
+        plans.put("отмена заказа", explain(nativeQuery(OrderRepository.class, "cancelIfNew")
+                .replace(":orderId", "1234").replace(":chatId", String.valueOf(telegramId))));
+        plans.put("счетчики чата", explain(nativeQuery(UserOrderStatsRepository.class, "countOrdersByStatus")
+                .replace(":chatId", String.valueOf(telegramId))));
+
+        plans.forEach((name, plan) -> log.info("{}: {}", name, plan.nodes()));
+        plans.forEach((name, plan) -> assertThat(plan.seqScans()).as(name).isEmpty());
+    }
+
+    private Plan explain(String sql, Object... args) throws Exception {
+        String json = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class, args);
+        Plan plan = new Plan(new ArrayList<>(), new ArrayList<>());
+        collect(objectMapper.readTree(json).get(0).get("Plan"), plan);
+        return plan;
+    }
+
+    private static void collect(JsonNode node, Plan plan) {
+        String type = node.get("Node Type").asText();
+        String relation = node.path("Relation Name").asText("");
+        String index = node.path("Index Name").asText("");
+        plan.nodes().add(type + (index.isEmpty() ? relation.isEmpty() ? "" : " " + relation : " " + index));
+        if (type.equals("Seq Scan") && LARGE_TABLES.contains(relation)) {
+            plan.seqScans().add(relation);
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collect(child, plan);
+        }
+    }
+
+    private static String nativeQuery(Class<?> repository, String method) {
+        for (var candidate : repository.getMethods()) {
+            if (candidate.getName().equals(method)) {
+                return candidate.getAnnotation(Query.class).value();
+            }
+        }
+        throw new IllegalArgumentException(method);
+    }
+
+    private record Plan(List<String> nodes, List<String> seqScans) {
+    }
+}
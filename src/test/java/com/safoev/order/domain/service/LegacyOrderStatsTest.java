@@ -0,0 +1,45 @@
+package com.safoev.order.domain.service;
+
+import com.safoev.order.domain.db.UserOrderStatsRepository;
+import com.safoev.order.domain.dto.OrderStatistics;
+import com.safoev.order.domain.enums.OrderStatus;
+import com.safoev.support.IntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Заказ без chat_id (записан до появления колонки) считается в счетчиках чата владельца
+class LegacyOrderStatsTest extends IntegrationTest {
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private UserOrderStatsService userOrderStatsService;
+    @Autowired
+    private UserOrderStatsRepository statsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void statusChangeOfLegacyOrderUpdatesOwnerCounters() {
+        long chatId = ThreadLocalRandom.current().nextLong(1L << 40, 1L << 50);
+        String orderNumber = "ORD-LEGACY-" + chatId;
+        Long userId = jdbcTemplate.queryForObject("INSERT INTO users (id, telegram_id, first_name, registered_at) " +
+                "VALUES (nextval('users_seq'), ?, 'Иван', now()) RETURNING id", Long.class, chatId);
+        jdbcTemplate.update("INSERT INTO orders (id, order_number, user_id, customer_name, customer_phone, " +
+                "order_details, status, created_at) VALUES (nextval('orders_seq'), ?, ?, 'Иван', '+79991234567', " +
+                "'Уборка', 'NEW', now())", orderNumber, userId);
+        jdbcTemplate.update("INSERT INTO user_order_stats (chat_id, new_count, updated_at) VALUES (?, 1, now())", chatId);
+
+        orderService.updateOrderStatus(orderNumber, OrderStatus.IN_PROGRESS);
+
+        OrderStatistics statistics = userOrderStatsService.getStatistics(chatId);
+        assertThat(statistics.getTotalOrders()).isEqualTo(1);
+        assertThat(statistics.getActiveOrders()).isZero();
+        assertThat(statsRepository.findDriftedChatIds()).doesNotContain(chatId);
+    }
+}
@@ -0,0 +1,63 @@
+package com.safoev.order.domain.service;
+
+import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
+import com.safoev.order.domain.dto.response.OrderResponseDto;
+import com.safoev.order.domain.enums.OrderStatus;
+import com.safoev.support.IntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderCancelTest extends IntegrationTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private UserOrderStatsService userOrderStatsService;
+
+    @Test
+    void onlyOwnerCancelsNewOrder() {
+        long ownerChat = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        long otherChat = ownerChat - 1;
+        OrderResponseDto order = createOrder(ownerChat);
+
+        // Подделанный callback из чужого чата
+        assertThat(orderService.cancelOrder(otherChat, order.getId())).isFalse();
+        assertThat(orderService.getOrderDetails(ownerChat, order.getId()).getStatus()).isEqualTo(OrderStatus.NEW);
+
+        assertThat(orderService.cancelOrder(ownerChat, order.getId())).isTrue();
+        assertThat(orderService.getOrderDetails(ownerChat, order.getId()).getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(userOrderStatsService.getStatistics(ownerChat).getActiveOrders()).isZero();
+
+        // Повторное нажатие кнопки счетчики не трогает
+        assertThat(orderService.cancelOrder(ownerChat, order.getId())).isFalse();
+        assertThat(userOrderStatsService.getStatistics(ownerChat).getTotalOrders()).isEqualTo(1);
+    }
+
+    @Test
+    void orderInProgressIsNotCancelled() {
+        long chatId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        OrderResponseDto order = createOrder(chatId);
+        orderService.updateOrderStatus(order.getOrderNumber(), OrderStatus.IN_PROGRESS);
+
+        assertThat(orderService.cancelOrder(chatId, order.getId())).isFalse();
+        assertThat(orderService.getOrderDetails(chatId, order.getId()).getStatus()).isEqualTo(OrderStatus.IN_PROGRESS);
+    }
+
+    @Test
+    void missingOrderIsNotCancelled() {
+        assertThat(orderService.cancelOrder(1, Long.MAX_VALUE)).isFalse();
+    }
+
+    private OrderResponseDto createOrder(long chatId) {
+        OrderCreateRequestDto request = new OrderCreateRequestDto();
+        request.setCustomerName("Иван");
+        request.setCustomerPhone("+79991234567");
+        request.setOrderDetails("Уборка");
+        return orderService.createOrder(chatId, null, "user" + chatId, request, "cancel-test-" + chatId);
+    }
+}
@@ -0,0 +1,148 @@
+package com.safoev.order.domain.service;
+
+import com.safoev.order.domain.cache.OrderCache;
+import com.safoev.order.domain.db.OrderRepository;
+import com.safoev.order.domain.db.OrderViewRepository;
+import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
+import com.safoev.order.domain.dto.response.OrderResponseDto;
+import com.safoev.support.IntegrationTest;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Групповая запись заказов. Нагрузочный прогон (по несколько секунд на уровень параллельности)
+// запускается отдельно: BOT_CLUSTER_BENCHMARK=true ./gradlew test --tests OrderIngestionTest
+class OrderIngestionTest extends IntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderIngestionTest.class);
+
+    private static final Duration RUN = Duration.ofSeconds(3);
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OrderViewRepository orderViewRepository;
+    @Autowired
+    private OrderCache orderCache;
+    @Autowired
+    private OrderIngestion orderIngestion;
+    @Autowired
+    private UserOrderStatsService userOrderStatsService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Под нагрузкой, как при обработке обновлений: каждый вызывающий ждет коммита своей пачки,
+    // держа соединение своей транзакции. До числа потоков обработки (dispatcher.threads = 16)
+    // пул не исчерпывается и заказы не падают по таймауту
+    @Test
+    @EnabledIfEnvironmentVariable(named = "BOT_CLUSTER_BENCHMARK", matches = "true")
+    void ordersPerSecondAtSeveralConcurrencyLevels() throws Exception {
+        assertThat(dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize()).isGreaterThanOrEqualTo(16 + 6);
+
+        for (int threads : new int[]{1, 4, 16}) {
+            DistributionSummary batches = meterRegistry.get("bot.orders.ingest.batch").summary();
+            long batchesBefore = batches.count();
+            double ordersBefore = batches.totalAmount();
+            AtomicInteger created = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            long deadline = System.nanoTime() + RUN.toNanos();
+            long started = System.nanoTime();
+
+            List<Thread> callers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long chatId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+                Thread caller = new Thread(() -> {
+                    int i = 0;
+                    while (System.nanoTime() < deadline) {
+                        int sequence = i++;
+                        try {
+                            transactionTemplate.executeWithoutResult(status -> {
+                                // Соединение занято, как записью в processed_updates при обработке обновления
+                                jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+                                orderService.createOrder(chatId, null, "load" + chatId, request(sequence),
+                                        "load-" + chatId + "-" + sequence);
+                            });
+                            created.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+                callers.add(caller);
+                caller.start();
+            }
+            for (Thread caller : callers) {
+                caller.join();
+            }
+
+            double seconds = (System.nanoTime() - started) / 1e9;
+            long commits = batches.count() - batchesBefore;
+            log.info("{} потоков: {} заказов/с, в среднем {} заказов на коммит, ошибок {}",
+                    threads, Math.round(created.get() / seconds),
+                    String.format("%.1f", (batches.totalAmount() - ordersBefore) / Math.max(1, commits)), failed.get());
+            assertThat(failed).hasValue(0);
+            assertThat(created.get()).isPositive();
+        }
+    }
+
+    // Ответ не дождались, но заказ уже зафиксирован: вызывающий получает заказ, а не ошибку
+    @Test
+    void timeoutFallsBackToIdempotencyKey() {
+        long chatId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        String key = "timeout-" + chatId;
+        OrderResponseDto created = orderService.createOrder(chatId, null, "timeout" + chatId, request(0), key);
+
+        OrderService impatient = new OrderService(orderRepository, orderViewRepository, orderCache,
+                orderIngestion, userOrderStatsService, Duration.ofNanos(1));
+        OrderResponseDto repeated = impatient.createOrder(chatId, null, "timeout" + chatId, request(0), key);
+
+        assertThat(repeated.getOrderNumber()).isEqualTo(created.getOrderNumber());
+    }
+
+    // Подтверждение фиксируется вместе с заказом и не дублируется при повторе по ключу
+    @Test
+    void confirmationIsWrittenWithOrder() {
+        long chatId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        String key = "confirm-" + chatId;
+        OrderResponseDto created = orderService.createOrder(chatId, null, "confirm" + chatId, request(0), key);
+        orderService.createOrder(chatId, null, "confirm" + chatId, request(0), key);
+
+        List<String> texts = jdbcTemplate.queryForList(
+                "SELECT text FROM outbox_messages WHERE chat_id = ?", String.class, chatId);
+        assertThat(texts).singleElement().asString()
+                .contains("✅ Заказ успешно создан!")
+                .contains(created.getOrderNumber());
+    }
+
+    private static OrderCreateRequestDto request(int sequence) {
+        OrderCreateRequestDto request = new OrderCreateRequestDto();
+        request.setCustomerName("Иван");
+        request.setCustomerPhone("+79991234567");
+        request.setOrderDetails("Уборка " + sequence);
+        return request;
+    }
+}
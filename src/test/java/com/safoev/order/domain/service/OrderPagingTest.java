@@ -0,0 +1,66 @@
+package com.safoev.order.domain.service;
+
+import com.safoev.order.domain.dto.OrderPage;
+import com.safoev.order.domain.dto.request.OrderCreateRequestDto;
+import com.safoev.order.domain.dto.response.OrderListItemDto;
+import com.safoev.support.IntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Номера заказов в списке продолжаются между страницами в обе стороны
+class OrderPagingTest extends IntegrationTest {
+
+    private static final int PAGE_SIZE = 5;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Test
+    void positionsContinueAcrossPages() {
+        long chatId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        String username = "paging" + chatId;
+        List<Long> newestFirst = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            newestFirst.add(0, createOrder(chatId, username, i));
+        }
+
+        OrderPage first = orderService.getFirstOrdersPage(null, username, PAGE_SIZE);
+        assertPage(first, 1, newestFirst);
+        assertThat(first.getNewer()).isNull();
+
+        OrderPage second = orderService.getOrdersPage(null, username, first.getOlder(), true, PAGE_SIZE);
+        assertPage(second, 6, newestFirst);
+
+        OrderPage last = orderService.getOrdersPage(null, username, second.getOlder(), true, PAGE_SIZE);
+        assertPage(last, 11, newestFirst);
+        assertThat(last.getOlder()).isNull();
+
+        OrderPage back = orderService.getOrdersPage(null, username, last.getNewer(), false, PAGE_SIZE);
+        assertPage(back, 6, newestFirst);
+
+        OrderPage top = orderService.getOrdersPage(null, username, back.getNewer(), false, PAGE_SIZE);
+        assertPage(top, 1, newestFirst);
+        assertThat(top.getNewer()).isNull();
+    }
+
+    private static void assertPage(OrderPage page, int firstPosition, List<Long> newestFirst) {
+        assertThat(page.getFirstPosition()).isEqualTo(firstPosition);
+        List<Long> ids = page.getItems().stream().map(OrderListItemDto::getId).toList();
+        int from = firstPosition - 1;
+        assertThat(ids).isEqualTo(newestFirst.subList(from, Math.min(from + PAGE_SIZE, newestFirst.size())));
+    }
+
+    private long createOrder(long chatId, String username, int i) {
+        OrderCreateRequestDto request = new OrderCreateRequestDto();
+        request.setCustomerName("Иван");
+        request.setCustomerPhone("+79991234567");
+        request.setOrderDetails("Уборка " + i);
+        return orderService.createOrder(chatId, null, username, request, "paging-test-" + chatId + "-" + i).getId();
+    }
+}
@@ -0,0 +1,102 @@
+package com.safoev.order.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderNumberGeneratorTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderNumberGeneratorTest.class);
+
+    private static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+    private static final long NOW = 1_760_000_000_000L;
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 100_000;
+
+    @Test
+    void workerRequiresNodeId() {
+        assertThatThrownBy(() -> new OrderNumberGenerator(null, "worker"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("telegram.bot.orders.number-node-id");
+        assertThatThrownBy(() -> new OrderNumberGenerator(1024L, "worker"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(nodeOf(new OrderNumberGenerator(null, "standalone").next())).isZero();
+        assertThat(nodeOf(new OrderNumberGenerator(7L, "worker").next())).isEqualTo(7);
+    }
+
+    // Часы идут медленнее выдачи (20 000 номеров на миллисекунду при счетчике на 4096)
+    // и каждые 100 000 вызовов откатываются на 50 мс; два узла, по 4 потока на каждом
+    @Test
+    void numbersStayUniqueUnderContentionClockStepBackAndSequenceOverflow() throws InterruptedException {
+        AtomicLong calls = new AtomicLong();
+        OrderNumberGenerator[] nodes = {new OrderNumberGenerator(1L, "worker"), new OrderNumberGenerator(2L, "worker")};
+        long[][] issued = new long[THREADS][PER_THREAD];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            OrderNumberGenerator generator = nodes[t % nodes.length];
+            long[] out = issued[t];
+            Thread thread = new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < PER_THREAD; i++) {
+                    long call = calls.incrementAndGet();
+                    long clock = NOW + call / 20_000 - (call / 100_000 % 2 == 1 ? 50 : 0);
+                    String number = generator.next(clock);
+                    assertThat(OrderNumberGenerator.normalize(number)).isEqualTo(number);
+                    out[i] = decode(number);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.info("{} номеров в {} потоках за {} мс", (long) THREADS * PER_THREAD, THREADS,
+                (System.nanoTime() - started) / 1_000_000);
+
+        // Внутри потока номера строго растут: откат часов не возвращает время назад
+        for (long[] out : issued) {
+            for (int i = 1; i < out.length; i++) {
+                assertThat(out[i]).isGreaterThan(out[i - 1]);
+            }
+        }
+        long[] all = Arrays.stream(issued).flatMapToLong(Arrays::stream).sorted().toArray();
+        for (int i = 1; i < all.length; i++) {
+            assertThat(all[i]).as("повтор номера").isNotEqualTo(all[i - 1]);
+        }
+    }
+
+    private static long decode(String number) {
+        long value = 0;
+        for (int i = OrderNumberGenerator.PREFIX.length(); i < number.length() - 1; i++) {
+            value = value << 5 | ALPHABET.indexOf(number.charAt(i));
+        }
+        return value;
+    }
+
+    private static long nodeOf(String number) {
+        return decode(number) >>> 12 & 1023;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
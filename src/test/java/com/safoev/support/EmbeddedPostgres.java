@@ -0,0 +1,47 @@
+package com.safoev.support;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Один встроенный PostgreSQL на все тесты JVM (останавливается вместе с ней);
+// схему создают миграции Flyway при старте контекста
+public final class EmbeddedPostgres {
+
+    private static io.zonky.test.db.postgres.embedded.EmbeddedPostgres postgres;
+
+    private EmbeddedPostgres() {
+    }
+
+    public static synchronized io.zonky.test.db.postgres.embedded.EmbeddedPostgres get() {
+        if (postgres == null) {
+            try {
+                postgres = io.zonky.test.db.postgres.embedded.EmbeddedPostgres.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось запустить встроенный PostgreSQL", e);
+            }
+        }
+        return postgres;
+    }
+
+    public static String jdbcUrl() {
+        return get().getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true";
+    }
+
+    // Для тестов без контекста Spring: схема накатывается теми же миграциями
+    public static DataSource migratedDataSource() {
+        DataSource dataSource = new DriverManagerDataSource(jdbcUrl(), "postgres", "postgres");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        return dataSource;
+    }
+
+    public static void register(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", EmbeddedPostgres::jdbcUrl);
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+}
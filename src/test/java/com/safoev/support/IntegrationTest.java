@@ -0,0 +1,27 @@
+package com.safoev.support;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+// Приложение целиком на встроенном PostgreSQL, без приема обновлений; Bot API заменен заглушкой
+@SpringBootTest(properties = {
+        "telegram.bot.mode=none",
+        "telegram.bot.token=123:test",
+        "telegram.bot.username=test_bot",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"
+})
+public abstract class IntegrationTest {
+
+    @MockitoBean
+    protected TelegramClient telegramClient;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        EmbeddedPostgres.register(registry);
+    }
+}
@@ -0,0 +1,114 @@
+package com.safoev.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safoev.bot.UpdateConsumer;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Обновления в том виде, в каком их присылает Bot API, проходят через UpdateConsumer целиком;
+// отправленное видно по вызовам заглушки TelegramClient
+public class TelegramUpdates {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final UpdateConsumer updateConsumer;
+    private final ObjectMapper objectMapper;
+    private final TelegramClient telegramClient;
+    private int nextUpdateId = ThreadLocalRandom.current().nextInt(100_000_000, 2_000_000_000);
+    private long lastChatId;
+    private String lastJson;
+
+    public TelegramUpdates(UpdateConsumer updateConsumer, ObjectMapper objectMapper, TelegramClient telegramClient) {
+        this.updateConsumer = updateConsumer;
+        this.objectMapper = objectMapper;
+        this.telegramClient = telegramClient;
+    }
+
+    public void message(long chatId, String text) throws Exception {
+        int updateId = nextUpdateId++;
+        process(chatId, "{\"update_id\":" + updateId + ",\"message\":{\"message_id\":" + updateId
+                + ",\"date\":1700000000,\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}," + from(chatId)
+                + ",\"text\":\"" + text + "\"}}");
+    }
+
+    // data - как есть, в том числе подделанные или устаревшие
+    public void callback(long chatId, String data) throws Exception {
+        int updateId = nextUpdateId++;
+        process(chatId, "{\"update_id\":" + updateId + ",\"callback_query\":{\"id\":\"cb" + updateId + "\","
+                + from(chatId) + ",\"chat_instance\":\"1\",\"data\":\"" + data + "\","
+                + "\"message\":{\"message_id\":1,\"date\":1700000000,"
+                + "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}}}}");
+    }
+
+    // Повторная доставка последнего обновления (тот же update_id), как после сбоя подтверждения
+    public void redeliver() throws Exception {
+        process(lastChatId, lastJson);
+    }
+
+    // id callback-запросов, на которые бот ответил, по порядку
+    public List<String> answeredCallbacks() {
+        List<String> ids = new ArrayList<>();
+        for (Invocation invocation : Mockito.mockingDetails(telegramClient).getInvocations()) {
+            Object method = invocation.getArguments().length == 1 ? invocation.getArgument(0) : null;
+            if (method instanceof AnswerCallbackQuery answer) {
+                ids.add(answer.getCallbackQueryId());
+            }
+        }
+        return ids;
+    }
+
+    // Тексты, отправленные в чат (новые сообщения и правки), по порядку
+    public List<String> sentTexts(long chatId) {
+        String chat = String.valueOf(chatId);
+        List<String> texts = new ArrayList<>();
+        for (Invocation invocation : Mockito.mockingDetails(telegramClient).getInvocations()) {
+            Object method = invocation.getArguments().length == 1 ? invocation.getArgument(0) : null;
+            if (method instanceof SendMessage send && chat.equals(send.getChatId())) {
+                texts.add(send.getText());
+            } else if (method instanceof EditMessageText edit && chat.equals(edit.getChatId())) {
+                texts.add(edit.getText());
+            }
+        }
+        return texts;
+    }
+
+    // Отправка асинхронная: ждем, пока в чат уйдет подходящий текст
+    public List<String> awaitSent(long chatId, Predicate<String> expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (sentTexts(chatId).stream().noneMatch(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        return sentTexts(chatId);
+    }
+
+    public List<String> awaitAnswered(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (answeredCallbacks().size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        return answeredCallbacks();
+    }
+
+    private void process(long chatId, String json) throws Exception {
+        lastChatId = chatId;
+        lastJson = json;
+        Update update = objectMapper.readValue(json, Update.class);
+        updateConsumer.dispatch(update, chatId).get(30, TimeUnit.SECONDS);
+    }
+
+    private static String from(long chatId) {
+        return "\"from\":{\"id\":" + chatId + ",\"is_bot\":false,\"first_name\":\"Test\",\"username\":\"u" + chatId + "\"}";
+    }
+}
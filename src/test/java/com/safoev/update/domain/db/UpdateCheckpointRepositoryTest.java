@@ -0,0 +1,54 @@
+package com.safoev.update.domain.db;
+
+import com.safoev.support.IntegrationTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Возраст смещения и отметок считается по часам БД
+class UpdateCheckpointRepositoryTest extends IntegrationTest {
+
+    @Autowired
+    private UpdateCheckpointRepository updateCheckpointRepository;
+    @Autowired
+    private ProcessedUpdateRepository processedUpdateRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void staleCheckpointIsIgnored() {
+        String id = "test-" + ThreadLocalRandom.current().nextInt(1_000_000);
+        transactionTemplate.executeWithoutResult(status -> updateCheckpointRepository.upsert(id, 100));
+        transactionTemplate.executeWithoutResult(status -> updateCheckpointRepository.upsert(id, 150));
+        assertThat(updateCheckpointRepository.findFresh(id, 6)).contains(150L);
+
+        jdbcTemplate.update("UPDATE update_checkpoints SET updated_at = now() - interval '7 days' WHERE id = ?", id);
+        assertThat(updateCheckpointRepository.findFresh(id, 6)).isEmpty();
+    }
+
+    @Test
+    void processedUpdatesAreRemovedByAge() {
+        long fresh = ThreadLocalRandom.current().nextLong(1L << 40, 1L << 50);
+        long old = fresh + 1;
+        transactionTemplate.executeWithoutResult(status -> {
+            processedUpdateRepository.insertIfAbsent(fresh, 1);
+            processedUpdateRepository.insertIfAbsent(old, 1);
+        });
+        jdbcTemplate.update("UPDATE processed_updates SET processed_at = now() - interval '25 hours' WHERE update_id = ?", old);
+
+        // Покрытые смещением: старая отметка выше смещения остается
+        transactionTemplate.executeWithoutResult(status -> processedUpdateRepository.deleteCoveredOlderThan(fresh, 24));
+        assertThat(processedUpdateRepository.existsById(old)).isTrue();
+
+        transactionTemplate.executeWithoutResult(status -> processedUpdateRepository.deleteOlderThan(24));
+        assertThat(processedUpdateRepository.existsById(old)).isFalse();
+        assertThat(processedUpdateRepository.existsById(fresh)).isTrue();
+    }
+}
@@ -0,0 +1,156 @@
+package com.safoev.user.domain.service;
+
+import com.safoev.cache.PostgresCacheInvalidationBus;
+import com.safoev.support.EmbeddedPostgres;
+import com.safoev.user.domain.db.UserEntity;
+import com.safoev.user.domain.db.UserRepository;
+import com.safoev.user.domain.dto.request.UserRegisterRequestDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RegisteredUsersFilterTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RegisteredUsersFilterTest.class);
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<PostgresCacheInvalidationBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void stopBuses() throws InterruptedException {
+        for (PostgresCacheInvalidationBus bus : buses) {
+            bus.stop();
+        }
+    }
+
+    // Доля ложных "возможно" на ключах, которых в фильтре нет: при расчетной емкости
+    // и при двукратном переполнении (столько набирается к следующей перестройке)
+    @Test
+    void falsePositiveRateMatchesConfiguration() {
+        for (double target : new double[]{0.01, 0.001}) {
+            for (int capacity : new int[]{10_000, 100_000, 1_000_000}) {
+                LongBloomFilter filter = LongBloomFilter.create(capacity, target);
+                double atCapacity = fill(filter, 0, capacity);
+                double expected = filter.expectedFalsePositiveRate();
+                double overfilled = fill(filter, capacity, capacity);
+                log.info("fpp {}, {} записей: {} (ожидалось {}), после {}: {}, {} КБ", target, capacity,
+                        atCapacity, expected, capacity * 2, overfilled, filter.memoryBytes() / 1024);
+
+                assertThat(atCapacity).isLessThan(target * 1.5);
+                assertThat(Math.abs(atCapacity - expected)).isLessThan(expected * 0.3 + 0.0005);
+            }
+        }
+    }
+
+    // Узел B уже ответил "не зарегистрирован" (фильтр сказал "нет", ответ закэширован),
+    // затем пользователь регистрируется на узле A: B должен увидеть регистрацию без перестройки
+    @Test
+    void registrationOnAnotherNodeIsSeen() throws InterruptedException {
+        DataSource dataSource = EmbeddedPostgres.migratedDataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Map<Long, UserEntity> users = new ConcurrentHashMap<>();
+        Integer listenersBefore = listeners(jdbcTemplate);
+        Node a = new Node(dataSource, users);
+        Node b = new Node(dataSource, users);
+        awaitListeners(jdbcTemplate, listenersBefore + 2);
+
+        long telegramId = ThreadLocalRandom.current().nextLong(1L << 40, 1L << 50);
+        String phone = "+7999" + ThreadLocalRandom.current().nextInt(1_000_000, 10_000_000);
+        assertThat(b.users.existsByTelegramId(telegramId)).isFalse();
+        assertThat(b.filter.mightUsePhone(phone)).isFalse();
+
+        UserRegisterRequestDto request = new UserRegisterRequestDto();
+        request.setFirstName("Иван");
+        request.setPhone(phone);
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource))
+                .executeWithoutResult(status -> a.users.registerUser(telegramId, request));
+
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!b.users.existsByTelegramId(telegramId) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(b.users.existsByTelegramId(telegramId)).isTrue();
+        assertThat(b.filter.mightUsePhone(phone)).isTrue();
+        assertThat(a.filter.mightBeRegistered(telegramId)).isTrue();
+    }
+
+    private static double fill(LongBloomFilter filter, long from, int count) {
+        for (long key = from; key < from + count; key++) {
+            filter.put(key * 7919);
+        }
+        int probes = 1_000_000;
+        int positives = 0;
+        for (long key = 0; key < probes; key++) {
+            // Нечетные ключи не добавлялись
+            if (filter.mightContain((key * 2 + 1) << 40)) {
+                positives++;
+            }
+        }
+        return (double) positives / probes;
+    }
+
+    private static Integer listeners(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_stat_activity WHERE query LIKE 'LISTEN %'", Integer.class);
+    }
+
+    private static void awaitListeners(JdbcTemplate jdbcTemplate, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (listeners(jdbcTemplate) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(listeners(jdbcTemplate)).isGreaterThanOrEqualTo(expected);
+    }
+
+    // Узел: свой фильтр, кэш пользователей и подписка на шину; users - общая "таблица"
+    private class Node {
+
+        final RegisteredUsersFilter filter;
+        final UserService users;
+
+        Node(DataSource dataSource, Map<Long, UserEntity> table) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            PostgresCacheInvalidationBus bus = new PostgresCacheInvalidationBus(dataSource, jdbcTemplate);
+            buses.add(bus);
+
+            UserRepository repository = mock(UserRepository.class);
+            when(repository.findByTelegramId(anyLong())).thenAnswer(i -> Optional.ofNullable(table.get(i.<Long>getArgument(0))));
+            when(repository.existsByTelegramId(anyLong())).thenAnswer(i -> table.containsKey(i.<Long>getArgument(0)));
+            when(repository.existsByPhone(anyString())).thenAnswer(i -> table.values().stream()
+                    .anyMatch(user -> i.getArgument(0).equals(user.getPhone())));
+            when(repository.save(any())).thenAnswer(i -> {
+                UserEntity user = i.getArgument(0);
+                table.put(user.getTelegramId(), user);
+                return user;
+            });
+
+            filter = new RegisteredUsersFilter(jdbcTemplate, meterRegistry, true, 0.01);
+            filter.rebuild();
+            users = new UserService(repository, filter, bus, meterRegistry, 1000, Duration.ofMinutes(10), Duration.ofMinutes(1));
+            bus.start();
+        }
+    }
+}